@@ -0,0 +1,76 @@
+package org.example.benchmarks;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.example.engine.BookmarkExtractor;
+import org.example.engine.WordReplacer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lettura dei segnalibri di un documento:
+ * {@code bodyWalk} misura {@link WordReplacer#getBookmarksText} su un documento già caricato,
+ * {@code poiLoadAndWalk} anche il caricamento con Apache POI (come {@code WordReplacer.getValueBookmarks}),
+ * {@code stax} la lettura diretta di {@code word/document.xml} con {@link BookmarkExtractor}.
+ * I segnalibri sono nei primi paragrafi, per cui la lettura StAX può fermarsi subito;
+ * con {@code missing} uno dei segnalibri non esiste e il documento va letto tutto.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookmarkBenchmark {
+
+    @Param({"100", "2000"})
+    public int paragraphs;
+
+    @Param({"false", "true"})
+    public boolean missing;
+
+    private Path file;
+    private byte[] bytes;
+    private List<String> names;
+    private XWPFDocument loaded;
+    private BookmarkExtractor extractor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = new SyntheticDocx().paragraphs(paragraphs).table(20, 4).bookmarks(WordReplacer.DEFAULT_BOOKMARKS)
+                .writeTemp();
+        bytes = Files.readAllBytes(file);
+        names = missing ? List.of("indirizzo", "istituzione", "assente") : WordReplacer.DEFAULT_BOOKMARKS;
+        loaded = new XWPFDocument(new ByteArrayInputStream(bytes));
+        extractor = new BookmarkExtractor(names);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        loaded.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Map<String, String> bodyWalk() throws IOException {
+        return WordReplacer.getBookmarksText(loaded, names);
+    }
+
+    @Benchmark
+    public Map<String, String> poiLoadAndWalk() throws IOException {
+        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(bytes))) {
+            return WordReplacer.getBookmarksText(document, names);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> stax() throws IOException {
+        return extractor.extract(file);
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.benchmarks;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.example.engine.CompiledTemplate;
+import org.example.engine.PlaceholderMatcher;
+import org.example.engine.SplicedTemplate;
+import org.example.engine.StreamingFillEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generazione di un documento dal template con i diversi motori:
+ * <ul>
+ *     <li>{@code legacy}: il template viene parsato a ogni documento e ogni run viene confrontato con tutte le chiavi,
+ *     come faceva {@code WordReplacer.replaceTextInRuns}/{@code replaceTextInTables} prima del template compilato;</li>
+ *     <li>{@code compiled}: {@link CompiledTemplate}, con l'analisi dei run fatta una volta sola;</li>
+ *     <li>{@code streaming}: {@link StreamingFillEngine}, che riscrive le parti XML senza Apache POI;</li>
+ *     <li>{@code splice}: {@link SplicedTemplate}, che ricompone i byte delle parti precompilate senza leggere XML.</li>
+ * </ul>
+ * {@link #compile()} misura a parte il costo della compilazione, cioè la ricerca dei segnaposto nei run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FillBenchmark {
+
+    @Param({"100", "1000"})
+    public int paragraphs;
+
+    @Param({"0", "50"})
+    public int tableRows;
+
+    @Param({"5"})
+    public int runsPerParagraph;
+
+    @Param({"0.1", "0.5"})
+    public double placeholderDensity;
+
+    @Param({"legacy", "compiled", "streaming", "splice"})
+    public String engine;
+
+    private Path template;
+    private byte[] templateBytes;
+    private Map<String, String> values;
+    private CompiledTemplate compiled;
+    private StreamingFillEngine streaming;
+    private SplicedTemplate spliced;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticDocx docx = new SyntheticDocx()
+                .paragraphs(paragraphs)
+                .runsPerParagraph(runsPerParagraph)
+                .table(tableRows, 4)
+                .placeholderDensity(placeholderDensity)
+                .keys(20);
+        template = docx.writeTemp();
+        templateBytes = Files.readAllBytes(template);
+        values = docx.values();
+        compiled = CompiledTemplate.compile(template.toString(), PlaceholderMatcher.forKeys(values.keySet()));
+        streaming = new StreamingFillEngine();
+        spliced = SplicedTemplate.compile(template.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        compiled.close();
+        Files.deleteIfExists(template);
+    }
+
+    @Benchmark
+    public int fill() throws IOException {
+        out.reset();
+        switch (engine) {
+            case "legacy" -> legacyFill(templateBytes, values, out);
+            case "compiled" -> compiled.fill(values, out);
+            case "splice" -> spliced.fill(values, out);
+            default -> streaming.fill(template.toString(), values, out);
+        }
+        return out.size();
+    }
+
+    @Benchmark
+    public int compile() throws IOException {
+        try (CompiledTemplate template = CompiledTemplate.compile(this.template.toString(),
+                PlaceholderMatcher.forKeys(values.keySet()))) {
+            return template.getPlaceholders().size();
+        }
+    }
+
+    /**
+     * Algoritmo originale: per ogni run di ogni paragrafo, anche nelle tabelle, cerca e sostituisce ogni chiave.
+     */
+    static void legacyFill(byte[] template, Map<String, String> replace, ByteArrayOutputStream out) throws IOException {
+        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(template))) {
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                legacyReplaceTextInRuns(paragraph, replace);
+            }
+            for (XWPFTable table : document.getTables()) {
+                for (XWPFTableRow row : table.getRows()) {
+                    for (XWPFTableCell cell : row.getTableCells()) {
+                        for (XWPFParagraph paragraph : cell.getParagraphs()) {
+                            legacyReplaceTextInRuns(paragraph, replace);
+                        }
+                    }
+                }
+            }
+            document.write(out);
+        }
+    }
+
+    static void legacyReplaceTextInRuns(XWPFParagraph paragraph, Map<String, String> replace) {
+        for (XWPFRun run : paragraph.getRuns()) {
+            String text = run.getText(0);
+            if (text != null) {
+                for (Map.Entry<String, String> entry : replace.entrySet()) {
+                    if (text.contains(entry.getKey())) {
+                        text = text.replace(entry.getKey(), entry.getValue());
+                    }
+                }
+                run.setText(text, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.benchmarks;
+
+import org.example.engine.PlaceholderMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sostituzione dei segnaposto nel testo dei run di un paragrafo, con molte chiavi:
+ * {@code naive} confronta ogni run con ogni chiave ({@code contains} e {@code replace}, come il vecchio
+ * {@code replaceTextInRuns}), {@code ahoCorasick} usa {@link PlaceholderMatcher#forKeys} in un'unica passata
+ * sulla concatenazione dei run, trovando anche i segnaposto spezzati.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatcherBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int keys;
+
+    @Param({"200"})
+    public int runs;
+
+    @Param({"0.2"})
+    public double placeholderDensity;
+
+    private Map<String, String> values;
+    private PlaceholderMatcher matcher;
+    private String[] segments;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        values = new HashMap<>();
+        List<String> placeholders = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            String key = "{{campo" + i + "}}";
+            placeholders.add(key);
+            values.put(key, "valore " + i);
+        }
+        matcher = PlaceholderMatcher.forKeys(values.keySet());
+
+        Random random = new Random(42);
+        segments = new String[runs];
+        for (int i = 0; i < runs; i++) {
+            segments[i] = random.nextDouble() < placeholderDensity
+                    ? "testo " + placeholders.get(random.nextInt(keys)) + " "
+                    : "testo del run numero " + i + " ";
+        }
+    }
+
+    @Benchmark
+    public String[] naive() {
+        String[] result = new String[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            String text = segments[i];
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (text.contains(entry.getKey())) {
+                    text = text.replace(entry.getKey(), entry.getValue());
+                }
+            }
+            result[i] = text;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String[] ahoCorasick() {
+        return matcher.rewrite(segments, match -> values.get(match.key()));
+    }
+
+    @Benchmark
+    public PlaceholderMatcher buildAutomaton() {
+        return PlaceholderMatcher.forKeys(values.keySet());
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.benchmarks;
+
+import org.example.gui.SchoolIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Ricerca delle scuole durante la digitazione ({@code GUI.filterScuole}):
+ * {@code linearScan} è il filtro originale, che converte in minuscolo e confronta ogni nome a ogni tasto,
+ * {@code indexed} la ricerca con {@link SchoolIndex} e lo stesso limite di risultati della finestra.
+ * {@code buildIndex} misura la costruzione dell'indice, fatta una volta al caricamento.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final int RESULT_LIMIT = 5000;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"li", "galilei", "comprensivo roma 12", "nardo"})
+    public String query;
+
+    private List<String> names;
+    private SchoolIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        names = SyntheticNames.generate(size, 42);
+        index = new SchoolIndex(names);
+    }
+
+    @Benchmark
+    public List<String> linearScan() {
+        String searchTerm = query.toLowerCase();
+        return names.stream()
+                .filter(s -> s.toLowerCase().contains(searchTerm))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> indexed() {
+        return index.search(query, RESULT_LIMIT);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public SchoolIndex buildIndex() {
+        return new SchoolIndex(names);
+    }
+}
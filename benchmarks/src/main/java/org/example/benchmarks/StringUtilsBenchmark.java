@@ -0,0 +1,37 @@
+package org.example.benchmarks;
+
+import org.example.utils.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Funzioni di {@link StringUtils} usate per ogni record: la capitalizzazione dell'indirizzo in
+ * {@code WordReplacer.createReplace} e la protezione dei valori nei file CSV e JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringUtilsBenchmark {
+
+    @Param({"VIA ROMA 1", "PIAZZA DEL MUNICIPIO, 12 - FRAZIONE SANT'ANTONIO ABATE (LOC. \"CASE SPARSE\")"})
+    public String value;
+
+    @Benchmark
+    public String capitalizeFirstLetter() {
+        return StringUtils.capitalizeFirstLetter(value);
+    }
+
+    @Benchmark
+    public String jsonQuote() {
+        return StringUtils.jsonQuote(value);
+    }
+
+    @Benchmark
+    public String csvQuote() {
+        return StringUtils.csvQuote(value);
+    }
+}
@@ -0,0 +1,200 @@
+package org.example.benchmarks;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTBookmark;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generatore di documenti Word sintetici per i benchmark, con dimensioni e densità di segnaposto configurabili.
+ * Il contenuto dipende solo dai parametri e dal seme, quindi ogni esecuzione misura lo stesso documento.
+ * <p>
+ * Ogni run contiene una parola di testo oppure, con probabilità {@link #placeholderDensity(double)}, un segnaposto
+ * scelto tra {@link #keys(int)} chiavi; una parte dei segnaposto ({@link #splitRatio(double)}) viene spezzata su due
+ * run, come fa Word quando il testo viene modificato. I primi paragrafi sono racchiusi nei segnalibri indicati.
+ */
+public class SyntheticDocx {
+
+    private static final String[] WORDS = {
+            "scuola", "istituto", "comprensivo", "via", "roma", "dirigente", "scolastico", "modulo", "anno",
+            "richiesta", "servizio", "contratto", "data", "firma", "allegato", "protocollo"
+    };
+
+    private int paragraphs = 100;
+    private int runsPerParagraph = 5;
+    private int tableRows = 0;
+    private int tableColumns = 4;
+    private double placeholderDensity = 0.1;
+    private double splitRatio = 0.2;
+    private int keys = 2;
+    private List<String> bookmarks = List.of("indirizzo", "istituzione", "dir_gen");
+    private long seed = 42;
+
+    public SyntheticDocx paragraphs(int paragraphs) {
+        this.paragraphs = paragraphs;
+        return this;
+    }
+
+    public SyntheticDocx runsPerParagraph(int runsPerParagraph) {
+        this.runsPerParagraph = Math.max(1, runsPerParagraph);
+        return this;
+    }
+
+    /**
+     * Aggiunge in fondo al documento una tabella con le dimensioni indicate; con 0 righe la tabella non viene creata.
+     */
+    public SyntheticDocx table(int rows, int columns) {
+        this.tableRows = rows;
+        this.tableColumns = Math.max(1, columns);
+        return this;
+    }
+
+    /**
+     * Imposta la frazione dei run che contiene un segnaposto, da 0 a 1.
+     */
+    public SyntheticDocx placeholderDensity(double placeholderDensity) {
+        this.placeholderDensity = placeholderDensity;
+        return this;
+    }
+
+    /**
+     * Imposta la frazione dei segnaposto spezzati su due run, da 0 a 1.
+     */
+    public SyntheticDocx splitRatio(double splitRatio) {
+        this.splitRatio = splitRatio;
+        return this;
+    }
+
+    /**
+     * Imposta il numero di chiavi distinte: le prime due sono {@code {{denominazione}}} e {@code {{indirizzo}}},
+     * le altre {@code {{campo3}}}, {@code {{campo4}}}, ...
+     */
+    public SyntheticDocx keys(int keys) {
+        this.keys = Math.max(1, keys);
+        return this;
+    }
+
+    /**
+     * Imposta i segnalibri, ciascuno attorno a uno dei primi paragrafi.
+     */
+    public SyntheticDocx bookmarks(List<String> bookmarks) {
+        this.bookmarks = List.copyOf(bookmarks);
+        return this;
+    }
+
+    public SyntheticDocx seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Restituisce i segnaposto che il documento può contenere.
+     * @return Le chiavi, comprensive delle parentesi graffe.
+     */
+    public List<String> placeholders() {
+        List<String> placeholders = new ArrayList<>(keys);
+        for (int i = 1; i <= keys; i++) {
+            placeholders.add(i == 1 ? "{{denominazione}}" : i == 2 ? "{{indirizzo}}" : "{{campo" + i + "}}");
+        }
+        return placeholders;
+    }
+
+    /**
+     * Restituisce dei valori di sostituzione per tutti i segnaposto.
+     * @return La tabella dei segnaposto e dei valori.
+     */
+    public Map<String, String> values() {
+        Map<String, String> values = new HashMap<>();
+        for (String placeholder : placeholders()) {
+            values.put(placeholder, "Valore di " + placeholder.substring(2, placeholder.length() - 2));
+        }
+        return values;
+    }
+
+    /**
+     * Scrive il documento sullo stream indicato.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se il documento non può essere scritto.
+     */
+    public void write(OutputStream out) throws IOException {
+        Random random = new Random(seed);
+        List<String> placeholders = placeholders();
+        try (XWPFDocument document = new XWPFDocument()) {
+            for (int p = 0; p < paragraphs; p++) {
+                XWPFParagraph paragraph = document.createParagraph();
+                String bookmark = p < bookmarks.size() ? bookmarks.get(p) : null;
+                if (bookmark != null) {
+                    CTBookmark start = paragraph.getCTP().addNewBookmarkStart();
+                    start.setId(BigInteger.valueOf(p));
+                    start.setName(bookmark);
+                }
+                fillParagraph(paragraph, random, placeholders);
+                if (bookmark != null) {
+                    paragraph.getCTP().addNewBookmarkEnd().setId(BigInteger.valueOf(p));
+                }
+            }
+            if (tableRows > 0) {
+                XWPFTable table = document.createTable(tableRows, tableColumns);
+                for (int r = 0; r < tableRows; r++) {
+                    for (int c = 0; c < tableColumns; c++) {
+                        fillParagraph(table.getRow(r).getCell(c).getParagraphs().get(0), random, placeholders);
+                    }
+                }
+            }
+            document.write(out);
+        }
+    }
+
+    /**
+     * Scrive il documento in un file.
+     * @param path Il percorso del file.
+     * @return Il percorso del file.
+     * @throws IOException Se il documento non può essere scritto.
+     */
+    public Path write(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out);
+        }
+        return path;
+    }
+
+    /**
+     * Scrive il documento in un file temporaneo, cancellato all'uscita dalla JVM.
+     * @return Il percorso del file.
+     * @throws IOException Se il documento non può essere scritto.
+     */
+    public Path writeTemp() throws IOException {
+        Path path = Files.createTempFile("synthetic", ".docx");
+        path.toFile().deleteOnExit();
+        return write(path);
+    }
+
+    private void fillParagraph(XWPFParagraph paragraph, Random random, List<String> placeholders) {
+        CTP ctp = paragraph.getCTP();
+        for (int r = 0; r < runsPerParagraph; r++) {
+            if (random.nextDouble() < placeholderDensity) {
+                String placeholder = placeholders.get(random.nextInt(placeholders.size()));
+                if (random.nextDouble() < splitRatio) {
+                    int cut = 1 + random.nextInt(placeholder.length() - 1);
+                    paragraph.createRun().setText(placeholder.substring(0, cut));
+                    paragraph.createRun().setText(placeholder.substring(cut) + " ");
+                } else {
+                    paragraph.createRun().setText(placeholder + " ");
+                }
+            } else {
+                paragraph.createRun().setText(WORDS[random.nextInt(WORDS.length)] + " ");
+            }
+        }
+        if (ctp.sizeOfRArray() == 0) {
+            paragraph.createRun();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generatore di denominazioni di scuole sintetiche, con la stessa forma di quelle di gst_clienti
+ * (tipo di istituto, intitolazione e comune, con accenti e apostrofi), per i benchmark della ricerca.
+ */
+public final class SyntheticNames {
+
+    private static final String[] TYPES = {
+            "Istituto Comprensivo", "Liceo Scientifico", "Liceo Classico", "I.T.I.S.", "Istituto Tecnico Commerciale",
+            "Scuola Primaria", "Scuola dell'Infanzia", "Circolo Didattico", "I.P.S.I.A.", "Convitto Nazionale"
+    };
+    private static final String[] NAMES = {
+            "Galileo Galilei", "Alessandro Volta", "Dante Alighieri", "Niccolò Machiavelli", "Giacomo Leopardi",
+            "Maria Montessori", "Enrico Fermi", "Guglielmo Marconi", "Leonardo da Vinci", "Giovanni Pascoli",
+            "Luigi Pirandello", "Grazia Deledda", "Italo Calvino", "Rita Levi-Montalcini", "Cesare Beccaria"
+    };
+    private static final String[] TOWNS = {
+            "Roma", "Milano", "Napoli", "Torino", "Palermo", "Genova", "Bologna", "Firenze", "Bari", "Catania",
+            "Forlì", "Cantù", "Sant'Agata", "Nardò", "Aosta", "Cagliari", "Trento", "L'Aquila", "Perugia", "Ancona"
+    };
+
+    private SyntheticNames() {
+    }
+
+    /**
+     * Genera le denominazioni, tutte distinte.
+     * @param count Il numero di denominazioni.
+     * @param seed Il seme del generatore.
+     * @return Le denominazioni.
+     */
+    public static List<String> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(TYPES[random.nextInt(TYPES.length)] + " \"" + NAMES[random.nextInt(NAMES.length)] + "\" - "
+                    + TOWNS[random.nextInt(TOWNS.length)] + " " + (i + 1));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,440 @@
+package org.example;
+
+import org.example.database.BookmarkWriteBack;
+import org.example.database.ClientSnapshot;
+import org.example.database.DatabaseConnection;
+import org.example.database.DatabaseOperation;
+import org.example.engine.*;
+import org.example.engine.zip.ZipArchiveSink;
+import org.example.utils.PhaseTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.example.utils.StringUtils.jsonQuote;
+
+/**
+ * Generazione in blocco da riga di comando, senza interfaccia grafica (ad esempio da cron o da un server di build).
+ * Questa classe non fa riferimento a Swing né ad AWT, così che la JVM non carichi le relative classi.
+ * <p>
+ * Uso: {@code HeadlessMain --template FILE --output DIR (--db | --snapshot FILE | --csv FILE | --jsonl FILE) [opzioni]}
+ * per generare i documenti, oppure {@code HeadlessMain --extract DIR (--sink FILE | --write-back) [--bookmarks a,b,...]}
+ * per estrarre i segnalibri da tutti i documenti di una cartella, scrivendoli su file o aggiornando gst_clienti.
+ * <p>
+ * Al termine stampa sullo standard output una riga JSON con tempi e throughput dell'esecuzione;
+ * i messaggi di avanzamento e gli errori vanno sullo standard error. Il codice di uscita è 0 se tutti i documenti
+ * sono stati generati, 1 se alcuni documenti non sono stati generati e 2 se i parametri non sono validi.
+ */
+public class HeadlessMain {
+
+    private static final String USAGE = """
+            Uso: HeadlessMain --template FILE --output DIR (--db | --snapshot FILE | --csv FILE | --jsonl FILE) [opzioni]
+              --template FILE     template Word (.docx)
+              --output DIR        cartella di destinazione (creata se non esiste); se termina con .zip i documenti
+                                  vengono scritti in un unico archivio, senza file intermedi
+              --level N           compressione dell'archivio: 0 (STORED, il più veloce) - 9 (predefinito: 6)
+              --db                record della tabella gst_clienti (configurazione: proprietà db.* e ssh.*)
+              --snapshot FILE     record dallo snapshot locale di gst_clienti, senza database;
+                                  insieme a --db lo snapshot viene prima creato o aggiornato
+              --csv FILE          record da un file CSV con intestazione
+              --jsonl FILE        record da un file JSON Lines
+              --delimiter C       separatore del CSV (predefinito: riconosciuto dall'intestazione)
+              --pattern P         pattern dei nomi dei file (predefinito: {denominazione}.docx)
+              --threads N         documenti generati in parallelo (predefinito: numero di core)
+              --engine E          poi, streaming oppure splice (predefinito: poi); splice usa il template
+                                  precompilato (FILE.wtpl, creato alla prima esecuzione) e ricade su poi
+                                  se il template non può essere precompilato
+              --full              rigenera tutti i documenti, anche quelli invariati secondo il manifest
+              --stats FILE        scrive le statistiche JSON anche su file
+
+            Uso: HeadlessMain --extract DIR (--sink FILE | --write-back) [--bookmarks a,b,...] [opzioni]
+              --extract DIR       cartella (con sottocartelle) dei documenti da cui estrarre i segnalibri
+              --sink FILE         file dei risultati: JSON Lines se .jsonl, altrimenti CSV
+              --bookmarks a,b     segnalibri da estrarre (predefinito: indirizzo,istituzione,dir_gen;
+                                  "*" per tutti)
+              --write-back        aggiorna gst_clienti con i segnalibri estratti, saltando i record invariati
+              --map b=col,...     colonne da aggiornare per ogni segnalibro (predefinito: indirizzo=indirizzo)
+              --key-bookmark B    segnalibro con la denominazione della scuola (predefinito: il nome del file
+                                  senza estensione, come per i documenti generati con {denominazione}.docx)
+              --chunk N           record aggiornati in ogni transazione (predefinito: 500)
+
+            Uso: HeadlessMain --compile FILE
+              --compile FILE      precompila il template nel file FILE.wtpl usato da --engine splice""";
+
+    private static final int DEFAULT_WRITE_BACK_CHUNK = 500;
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Esegue la generazione con i parametri indicati.
+     * @param args I parametri da riga di comando.
+     * @param out Lo stream su cui scrivere le statistiche JSON.
+     * @param err Lo stream su cui scrivere i messaggi.
+     * @return Il codice di uscita.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        // Impedisce il caricamento accidentale del toolkit grafico da parte delle librerie
+        System.setProperty("java.awt.headless", "true");
+        PhaseTimer timer = new PhaseTimer();
+        long startupMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> Instant.now().toEpochMilli() - start.toEpochMilli())
+                .orElse(-1L);
+
+        String template = null;
+        String output = null;
+        String csv = null;
+        String jsonl = null;
+        String snapshotFile = null;
+        boolean db = false;
+        Character delimiter = null;
+        String stats = null;
+        String extract = null;
+        String compile = null;
+        String sink = null;
+        List<String> bookmarks = WordReplacer.DEFAULT_BOOKMARKS;
+        boolean writeBack = false;
+        Map<String, String> mapping = BookmarkWriteBack.DEFAULT_MAPPING;
+        String keyBookmark = null;
+        int chunk = DEFAULT_WRITE_BACK_CHUNK;
+        Integer threads = null;
+        int level = ZipArchiveSink.DEFAULT_LEVEL;
+        HeadlessBatch batch = new HeadlessBatch();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--template" -> template = value(args, ++i);
+                    case "--output" -> output = value(args, ++i);
+                    case "--db" -> db = true;
+                    case "--csv" -> csv = value(args, ++i);
+                    case "--jsonl" -> jsonl = value(args, ++i);
+                    case "--snapshot" -> snapshotFile = value(args, ++i);
+                    case "--delimiter" -> {
+                        String d = value(args, ++i);
+                        if (d.equals("\\t")) {
+                            d = "\t";
+                        }
+                        if (d.length() != 1) {
+                            throw new IllegalArgumentException("--delimiter richiede un solo carattere");
+                        }
+                        delimiter = d.charAt(0);
+                    }
+                    case "--pattern" -> batch.setFileNamePattern(value(args, ++i));
+                    case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                    case "--engine" -> batch.setEngine(WordReplacer.Engine.valueOf(value(args, ++i).toUpperCase(Locale.ROOT)));
+                    case "--full" -> batch.setIncremental(false);
+                    case "--level" -> {
+                        level = Integer.parseInt(value(args, ++i));
+                        if (level < 0 || level > 9) {
+                            throw new IllegalArgumentException("Livello di compressione non valido: " + level);
+                        }
+                    }
+                    case "--stats" -> stats = value(args, ++i);
+                    case "--extract" -> extract = value(args, ++i);
+                    case "--compile" -> compile = value(args, ++i);
+                    case "--sink" -> sink = value(args, ++i);
+                    case "--bookmarks" -> {
+                        String list = value(args, ++i);
+                        bookmarks = list.equals("*") ? List.of() : Arrays.stream(list.split(","))
+                                .map(String::trim).filter(b -> !b.isEmpty()).toList();
+                    }
+                    case "--write-back" -> writeBack = true;
+                    case "--map" -> mapping = parseMapping(value(args, ++i));
+                    case "--key-bookmark" -> keyBookmark = value(args, ++i);
+                    case "--chunk" -> chunk = Math.max(1, Integer.parseInt(value(args, ++i)));
+                    case "--help", "-h" -> {
+                        out.println(USAGE);
+                        return 0;
+                    }
+                    default -> throw new IllegalArgumentException("Parametro sconosciuto: " + args[i]);
+                }
+            }
+            int sources = (db || snapshotFile != null ? 1 : 0) + (csv != null ? 1 : 0) + (jsonl != null ? 1 : 0);
+            if (compile != null) {
+                if (extract != null || template != null) {
+                    throw new IllegalArgumentException("--compile non può essere usato insieme ad altre operazioni");
+                }
+            } else if (extract != null) {
+                if (sink == null && !writeBack) {
+                    throw new IllegalArgumentException("Indicare il file dei risultati con --sink oppure --write-back");
+                }
+            } else if (template == null || output == null || sources != 1) {
+                throw new IllegalArgumentException("Indicare template, cartella di destinazione e una sola sorgente");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        if (compile != null) {
+            return compile(compile, out, err);
+        }
+        if (threads != null) {
+            batch.setParallelism(threads);
+        }
+        if (extract != null) {
+            if (writeBack && !bookmarks.isEmpty()) {
+                // I segnalibri da scrivere sul database vengono estratti anche se non indicati con --bookmarks
+                Set<String> names = new LinkedHashSet<>(bookmarks);
+                names.addAll(mapping.keySet());
+                if (keyBookmark != null) {
+                    names.add(keyBookmark);
+                }
+                bookmarks = List.copyOf(names);
+            }
+            BookmarkExtractor extractor = new BookmarkExtractor(bookmarks);
+            extractor.setParallelism(threads != null ? threads : extractor.getParallelism());
+            Path sinkPath = sink != null ? Path.of(sink) : null;
+            if (!writeBack) {
+                return extract(extractor, Path.of(extract), sinkPath, null, null, chunk, stats, startupMillis, timer, out, err);
+            }
+            DatabaseConnection database = null;
+            try {
+                database = new DatabaseConnection("gestionale");
+                try (Connection connection = database.getConnection()) {
+                    timer.mark("connessione");
+                    BookmarkWriteBack target = new BookmarkWriteBack(connection, mapping, "denominazione");
+                    return extract(extractor, Path.of(extract), sinkPath, target, keyBookmark, chunk, stats,
+                            startupMillis, timer, out, err);
+                }
+            } catch (Exception e) {
+                err.println("Errore: " + e.getMessage());
+                return 1;
+            } finally {
+                if (database != null) {
+                    try {
+                        database.close();
+                    } catch (Exception e) {
+                        err.println("Chiusura della connessione non riuscita: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        DatabaseConnection database = null;
+        // Connessione presa dal pool per la lettura dei record, restituita al termine della generazione
+        Connection connection = null;
+        try {
+            RecordSource source;
+            if (snapshotFile != null) {
+                Path snapshotPath = Path.of(snapshotFile);
+                ClientSnapshot snapshot = ClientSnapshot.exists(snapshotPath) ? ClientSnapshot.open(snapshotPath) : null;
+                timer.mark("snapshot");
+                if (db) {
+                    database = new DatabaseConnection("gestionale");
+                    connection = database.getConnection();
+                    DatabaseOperation sql = new DatabaseOperation(connection);
+                    timer.mark("connessione");
+                    snapshot = snapshot != null ? snapshot.refresh(sql) : ClientSnapshot.create(sql, snapshotPath);
+                    timer.mark("aggiornamento snapshot");
+                } else if (snapshot == null) {
+                    throw new IOException("Snapshot non trovato: " + snapshotPath);
+                }
+                source = new SnapshotRecordSource(snapshot);
+            } else if (db) {
+                database = new DatabaseConnection("gestionale");
+                connection = database.getConnection();
+                source = new DatabaseRecordSource(new DatabaseOperation(connection));
+                timer.mark("connessione");
+            } else if (csv != null) {
+                source = new CsvRecordSource(Path.of(csv), delimiter);
+            } else {
+                source = new JsonLinesRecordSource(Path.of(jsonl));
+            }
+
+            err.println("Generazione da " + source.describe() + " in " + new File(output).getAbsolutePath() + "...");
+            BatchResult result;
+            if (output.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                try (ZipArchiveSink archive = new ZipArchiveSink(Path.of(output), level)) {
+                    result = batch.run(template, source, archive);
+                }
+            } else {
+                result = batch.run(template, source, output);
+            }
+            timer.mark("generazione");
+
+            for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                err.println("Errore su " + failure.getKey() + ": " + failure.getValue());
+            }
+            err.println(result.getMetrics().summary());
+            String json = toJson(template, source, batch, result, startupMillis, timer);
+            out.println(json);
+            if (stats != null) {
+                Files.writeString(Path.of(stats), json + System.lineSeparator(), StandardCharsets.UTF_8);
+            }
+            return result.getFailures().isEmpty() ? 0 : 1;
+        } catch (Exception e) {
+            err.println("Errore: " + e.getMessage());
+            return 1;
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    err.println("Chiusura della connessione non riuscita: " + e.getMessage());
+                }
+            }
+            if (database != null) {
+                try {
+                    database.close();
+                } catch (Exception e) {
+                    err.println("Chiusura della connessione non riuscita: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Precompila un template e scrive il riepilogo JSON.
+     */
+    private static int compile(String templatePath, PrintStream out, PrintStream err) {
+        try {
+            long start = System.nanoTime();
+            SplicedTemplate template = SplicedTemplate.compile(templatePath);
+            Path path = SplicedTemplate.pathFor(templatePath);
+            template.save(path);
+            err.println("Template precompilato in " + path.toAbsolutePath());
+            out.println("{\"template\":" + jsonQuote(templatePath)
+                    + ",\"compiled\":" + jsonQuote(path.toString())
+                    + ",\"bytes\":" + Files.size(path)
+                    + ",\"placeholders\":" + template.getPlaceholders().size()
+                    + ",\"millis\":" + (System.nanoTime() - start) / 1_000_000 + "}");
+            return 0;
+        } catch (IOException e) {
+            err.println("Errore: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Estrae i segnalibri dai documenti della cartella, li scrive sul file e/o sul database e scrive le statistiche JSON.
+     * I valori da scrivere sul database vengono prima raccolti tutti e poi applicati a blocchi, al termine dell'estrazione.
+     */
+    private static int extract(BookmarkExtractor extractor, Path root, Path sinkPath, BookmarkWriteBack writeBack,
+                               String keyBookmark, int chunk, String stats, long startupMillis, PhaseTimer timer,
+                               PrintStream out, PrintStream err) {
+        try {
+            err.println("Estrazione dei segnalibri da " + root.toAbsolutePath()
+                    + (sinkPath != null ? " in " + sinkPath : "") + "...");
+            BatchResult result;
+            try (BookmarkSink sink = sinkPath != null ? BookmarkSink.forPath(sinkPath, extractor.getBookmarkNames()) : null) {
+                result = extractor.extractAll(root, (document, values) -> {
+                    if (sink != null) {
+                        sink.write(document, values);
+                    }
+                    if (writeBack != null) {
+                        writeBack.add(keyBookmark != null ? values.get(keyBookmark) : BookmarkWriteBack.documentKey(document), values);
+                    }
+                });
+            }
+            timer.mark("estrazione");
+
+            for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                err.println("Errore su " + failure.getKey() + ": " + failure.getValue());
+            }
+            BookmarkWriteBack.Result updates = null;
+            if (writeBack != null) {
+                err.println("Aggiornamento di " + writeBack.size() + " record di gst_clienti...");
+                updates = writeBack.apply(chunk);
+                timer.mark("aggiornamento");
+                err.println(updates);
+            }
+            String json = "{\"source\":" + jsonQuote(root.toString())
+                    + (sinkPath != null ? ",\"sink\":" + jsonQuote(sinkPath.toString()) : "")
+                    + ",\"threads\":" + extractor.getParallelism()
+                    + ",\"documents\":" + result.getTotal()
+                    + ",\"succeeded\":" + result.getSucceeded()
+                    + ",\"failed\":" + result.getFailures().size()
+                    + ",\"elapsedMillis\":" + result.getElapsedNanos() / 1_000_000
+                    + ",\"docsPerSecond\":" + String.format(Locale.ROOT, "%.2f", result.getThroughput())
+                    + (updates != null ? ",\"writeBack\":{\"records\":" + updates.records()
+                            + ",\"updated\":" + updates.updated()
+                            + ",\"unchanged\":" + updates.unchanged()
+                            + ",\"notFound\":" + updates.notFound().size()
+                            + ",\"transactions\":" + updates.transactions() + "}" : "")
+                    + ",\"jvmStartupMillis\":" + startupMillis
+                    + ",\"totalMillis\":" + timer.elapsedMillis() + "}";
+            out.println(json);
+            if (stats != null) {
+                Files.writeString(Path.of(stats), json + System.lineSeparator(), StandardCharsets.UTF_8);
+            }
+            return result.getFailures().isEmpty() ? 0 : 1;
+        } catch (Exception e) {
+            err.println("Errore: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Interpreta l'associazione tra segnalibri e colonne nella forma {@code segnalibro=colonna,...};
+     * un segnalibro senza {@code =colonna} viene scritto sulla colonna con lo stesso nome.
+     */
+    private static Map<String, String> parseMapping(String value) {
+        Map<String, String> mapping = new LinkedHashMap<>();
+        for (String pair : value.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String bookmark = (eq < 0 ? pair : pair.substring(0, eq)).trim();
+            mapping.put(bookmark, eq < 0 ? bookmark : pair.substring(eq + 1).trim());
+        }
+        if (mapping.isEmpty()) {
+            throw new IllegalArgumentException("Associazione tra segnalibri e colonne vuota: " + value);
+        }
+        return mapping;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Valore mancante per " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    /**
+     * Statistiche dell'esecuzione in formato JSON, su una sola riga.
+     */
+    private static String toJson(String template, RecordSource source, HeadlessBatch batch, BatchResult result,
+                                 long startupMillis, PhaseTimer timer) {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"template\":").append(jsonQuote(template));
+        sb.append(",\"source\":").append(jsonQuote(source.describe()));
+        sb.append(",\"engine\":").append(jsonQuote(batch.getEngine().name().toLowerCase(Locale.ROOT)));
+        sb.append(",\"threads\":").append(batch.getParallelism());
+        sb.append(",\"records\":").append(result.getTotal());
+        sb.append(",\"succeeded\":").append(result.getSucceeded());
+        sb.append(",\"skipped\":").append(result.getSkipped());
+        sb.append(",\"failed\":").append(result.getFailures().size());
+        sb.append(",\"elapsedMillis\":").append(result.getElapsedNanos() / 1_000_000);
+        sb.append(",\"docsPerSecond\":").append(String.format(Locale.ROOT, "%.2f", result.getThroughput()));
+        sb.append(",\"jvmStartupMillis\":").append(startupMillis);
+        sb.append(",\"totalMillis\":").append(timer.elapsedMillis());
+        sb.append(",\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : timer.getPhasesMillis().entrySet()) {
+            sb.append(first ? "" : ",").append(jsonQuote(phase.getKey())).append(':').append(phase.getValue());
+            first = false;
+        }
+        sb.append("},\"metrics\":").append(result.getMetrics().toJson());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -1,22 +1,27 @@
 package org.example;
 
-import com.jcraft.jsch.JSchException;
 import org.example.database.DatabaseConnection;
 import org.example.gui.GUI;
+import org.example.utils.PhaseTimer;
 
 import javax.swing.*;
-import java.sql.Connection;
 
 public class Main {
-    public static void main(String[] args) throws JSchException {
-        DatabaseConnection gestionale = new DatabaseConnection("gestionale");
-        Connection conn = gestionale.getConnection();
+    public static void main(String[] args) {
+        // Con dei parametri l'applicazione lavora da riga di comando, senza caricare Swing
+        if (args.length > 0) {
+            HeadlessMain.main(args);
+            return;
+        }
 
+        PhaseTimer timer = new PhaseTimer();
+        DatabaseConnection gestionale = new DatabaseConnection("gestionale");
 
+        // La finestra compare subito: connessione e caricamento dati avvengono in background
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new GUI(conn).setVisible(true);
+                new GUI(gestionale, timer).setVisible(true);
             }
         });
     }
@@ -0,0 +1,246 @@
+package org.example.database;
+
+import org.example.utils.Metrics;
+import org.example.utils.StringUtils;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Aggiornamento della tabella gst_clienti con i valori dei segnalibri letti dai moduli restituiti dalle scuole.
+ * Ogni segnalibro viene associato a una colonna; i valori raccolti vengono confrontati con quelli attuali, letti
+ * a blocchi con {@link DatabaseOperation#selectByKeys}, e solo i record effettivamente cambiati vengono aggiornati
+ * con degli {@code UPDATE} in batch. Ogni blocco è una transazione: se un blocco non va a buon fine viene annullato
+ * per intero e l'aggiornamento si ferma.
+ */
+public class BookmarkWriteBack {
+
+    private static final String TABLE = "gst_clienti";
+    private static final List<String> COLUMNS = List.of(DatabaseOperation.CLIENT_COLUMNS);
+
+    /**
+     * Associazione predefinita tra segnalibri e colonne.
+     */
+    public static final Map<String, String> DEFAULT_MAPPING = Map.of("indirizzo", "indirizzo");
+
+    private final Connection conn;
+    private final Map<String, String> columnsByBookmark;
+    private final String keyColumn;
+    private final Map<String, Map<String, String>> pending = new LinkedHashMap<>();
+
+    /**
+     * Riepilogo di un aggiornamento.
+     *
+     * @param records il numero di record per cui sono stati raccolti dei valori.
+     * @param updated il numero di record aggiornati.
+     * @param unchanged il numero di record già aggiornati, per cui non è stata eseguita alcuna query.
+     * @param notFound le chiavi che non corrispondono ad alcun record.
+     * @param transactions il numero di transazioni eseguite.
+     */
+    public record Result(int records, int updated, int unchanged, List<String> notFound, int transactions) {
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(
+                    "Aggiornati %d record su %d (%d invariati) in %d transazioni", updated, records, unchanged, transactions));
+            if (!notFound.isEmpty()) {
+                sb.append("\nNon trovati (").append(notFound.size()).append("): ").append(String.join(", ", notFound));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Costruttore della classe BookmarkWriteBack.
+     *
+     * @param conn la connessione al database.
+     * @param columnsByBookmark le colonne da aggiornare, indicizzate per nome del segnalibro.
+     * @param keyColumn la colonna che identifica il record di ogni modulo, ad esempio denominazione.
+     * @throws IllegalArgumentException se una colonna non appartiene alla tabella gst_clienti.
+     */
+    public BookmarkWriteBack(Connection conn, Map<String, String> columnsByBookmark, String keyColumn) {
+        for (String column : columnsByBookmark.values()) {
+            checkColumn(column);
+        }
+        this.conn = conn;
+        this.columnsByBookmark = new LinkedHashMap<>(columnsByBookmark);
+        this.keyColumn = checkColumn(keyColumn);
+    }
+
+    /**
+     * Registra i segnalibri letti da un modulo. I segnalibri non associati a una colonna e quelli vuoti o non trovati
+     * vengono ignorati; se la stessa chiave viene registrata più volte prevalgono gli ultimi valori.
+     * Può essere invocato da più thread.
+     *
+     * @param key il valore della colonna chiave del record da aggiornare.
+     * @param bookmarks i segnalibri del modulo e i rispettivi testi.
+     */
+    public synchronized void add(String key, Map<String, String> bookmarks) {
+        if (key == null || key.isBlank()) {
+            return;
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : columnsByBookmark.entrySet()) {
+            String value = bookmarks.get(entry.getKey());
+            if (value != null && !value.isBlank()) {
+                values.put(entry.getValue(), value.trim());
+            }
+        }
+        if (!values.isEmpty()) {
+            pending.computeIfAbsent(key.trim(), k -> new LinkedHashMap<>()).putAll(values);
+        }
+    }
+
+    /**
+     * Restituisce il numero di record per cui sono stati raccolti dei valori.
+     *
+     * @return il numero di record in attesa di aggiornamento.
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Applica i valori raccolti al database.
+     *
+     * @param chunkSize il numero massimo di record per ogni transazione.
+     * @return il riepilogo dell'aggiornamento.
+     * @throws SQLException se un blocco non può essere aggiornato; i blocchi precedenti restano confermati.
+     */
+    public synchronized Result apply(int chunkSize) throws SQLException {
+        DatabaseOperation sql = new DatabaseOperation(conn);
+        List<String> keys = new ArrayList<>(pending.keySet());
+        List<String> notFound = new ArrayList<>();
+        int updated = 0;
+        int unchanged = 0;
+        int transactions = 0;
+        int idIndex = COLUMNS.indexOf("id");
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            for (int from = 0; from < keys.size(); from += chunkSize) {
+                List<String> chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+
+                // Valori attuali del blocco; il confronto delle chiavi segue quello, senza distinzione di maiuscole, di MySQL
+                Map<String, Object[]> current = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                current.putAll(sql.selectByKeys(TABLE, keyColumn, chunk, chunk.size()));
+
+                // Una query preparata per ogni combinazione di colonne da aggiornare
+                Map<List<String>, PreparedStatement> statements = new LinkedHashMap<>();
+                try {
+                    for (String key : chunk) {
+                        Object[] row = current.get(key);
+                        if (row == null && key.indexOf('_') >= 0) {
+                            row = findByFileName(sql, key);
+                        }
+                        if (row == null) {
+                            notFound.add(key);
+                            continue;
+                        }
+                        Map<String, String> changed = new LinkedHashMap<>();
+                        for (Map.Entry<String, String> value : pending.get(key).entrySet()) {
+                            Object old = row[COLUMNS.indexOf(value.getKey())];
+                            if (old == null || !old.toString().equals(value.getValue())) {
+                                changed.put(value.getKey(), value.getValue());
+                            }
+                        }
+                        if (changed.isEmpty()) {
+                            unchanged++;
+                            continue;
+                        }
+
+                        List<String> columns = List.copyOf(changed.keySet());
+                        PreparedStatement stmt = statements.get(columns);
+                        if (stmt == null) {
+                            stmt = conn.prepareStatement(updateQuery(columns));
+                            statements.put(columns, stmt);
+                        }
+                        int i = 1;
+                        for (String value : changed.values()) {
+                            stmt.setString(i++, value);
+                        }
+                        stmt.setObject(i, row[idIndex]);
+                        stmt.addBatch();
+                        updated++;
+                    }
+                    for (Map.Entry<List<String>, PreparedStatement> entry : statements.entrySet()) {
+                        try (Metrics.Sample ignored = Metrics.query(updateQuery(entry.getKey()))) {
+                            entry.getValue().executeBatch();
+                        }
+                    }
+                    try (Metrics.Sample ignored = Metrics.query("COMMIT")) {
+                        conn.commit();
+                    }
+                    transactions++;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    for (PreparedStatement stmt : statements.values()) {
+                        stmt.close();
+                    }
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        pending.clear();
+        return new Result(keys.size(), updated, unchanged, notFound, transactions);
+    }
+
+    /**
+     * Cerca il record di una chiave ricavata dal nome di un file, in cui i caratteri non ammessi nei nomi di file
+     * sono stati sostituiti da '_' (vedi {@link StringUtils#safeFileName(String)}). Ogni '_' viene cercato come un
+     * carattere qualsiasi e tra i record trovati si tiene quello la cui chiave, resa un nome di file, è uguale.
+     *
+     * @return il record, oppure null se nessun record o più di uno corrispondono.
+     */
+    private Object[] findByFileName(DatabaseOperation sql, String key) throws SQLException {
+        String pattern = key.replace("\\", "\\\\").replace("%", "\\%");
+        Object[] found = null;
+        for (Map.Entry<String, Object[]> candidate : sql.selectByPattern(TABLE, keyColumn, pattern).entrySet()) {
+            if (StringUtils.safeFileName(candidate.getKey()).equalsIgnoreCase(key)) {
+                if (found != null) {
+                    return null;
+                }
+                found = candidate.getValue();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Restituisce la chiave predefinita del record di un documento: il nome del file senza cartella ed estensione,
+     * che corrisponde alla denominazione della scuola per i documenti generati con il pattern {@code {denominazione}.docx}.
+     * Se la denominazione contiene caratteri non ammessi nei nomi di file, sostituiti da '_' nel nome del documento,
+     * il record viene cercato confrontando le denominazioni trasformate allo stesso modo.
+     *
+     * @param document il percorso del documento.
+     * @return la chiave del record.
+     */
+    public static String documentKey(String document) {
+        String name = Paths.get(document).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String updateQuery(List<String> columns) {
+        List<String> assignments = new ArrayList<>();
+        for (String column : columns) {
+            assignments.add(column + " = ?");
+        }
+        return "UPDATE " + TABLE + " SET " + String.join(", ", assignments) + " WHERE id = ?";
+    }
+
+    private static String checkColumn(String column) {
+        if (!COLUMNS.contains(column)) {
+            throw new IllegalArgumentException("Colonna non presente in " + TABLE + ": " + column);
+        }
+        return DatabaseOperation.checkIdentifier(column);
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Cursore sui record della tabella gst_clienti, letti uno alla volta da un result set in sola lettura e solo in
+ * avanti. Il driver trasferisce le righe a blocchi della dimensione indicata all'apertura (con MySQL riga per riga),
+ * così che la memoria occupata non dipenda dal numero di record.
+ * <p>
+ * Il cursore tiene aperti la query e il result set fino a {@link #close()}: va usato in un blocco
+ * try-with-resources. Con MySQL, finché il cursore è aperto la connessione non accetta altre query.
+ */
+public final class ClientCursor implements AutoCloseable {
+
+    private final Statement stmt;
+    private final ResultSet rs;
+    private final int[] indexes;
+    private boolean closed;
+
+    ClientCursor(Statement stmt, ResultSet rs) throws SQLException {
+        this.stmt = stmt;
+        this.rs = rs;
+        this.indexes = DatabaseOperation.columnIndexes(rs);
+    }
+
+    /**
+     * Legge il record successivo.
+     *
+     * @return il record, oppure null se i record sono finiti.
+     * @throws SQLException se si verifica un errore durante la lettura.
+     */
+    public ClientRecord next() throws SQLException {
+        if (closed || !rs.next()) {
+            return null;
+        }
+        return ClientRecord.read(rs, indexes);
+    }
+
+    /**
+     * Consegna al consumatore indicato, nell'ordine, tutti i record non ancora letti.
+     *
+     * @param action il consumatore dei record, invocato sul thread chiamante.
+     * @throws SQLException se si verifica un errore durante la lettura.
+     */
+    public void forEachRemaining(Consumer<ClientRecord> action) throws SQLException {
+        for (ClientRecord client = next(); client != null; client = next()) {
+            action.accept(client);
+        }
+    }
+
+    /**
+     * Restituisce i record non ancora letti come stream sequenziale. Chiudere lo stream chiude il cursore.
+     * Gli errori durante la lettura vengono rilanciati come {@link IllegalStateException}, con la
+     * {@link SQLException} originale come causa.
+     *
+     * @return lo stream dei record.
+     */
+    public Stream<ClientRecord> stream() {
+        Spliterator<ClientRecord> records = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super ClientRecord> action) {
+                ClientRecord client;
+                try {
+                    client = next();
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Lettura dei record non riuscita: " + e.getMessage(), e);
+                }
+                if (client == null) {
+                    return false;
+                }
+                action.accept(client);
+                return true;
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(this::close);
+    }
+
+    /**
+     * Chiude il result set e la query. Le chiamate successive non hanno effetto.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            // La query viene chiusa comunque
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.out.println("Chiusura del cursore non riuscita: " + e.getMessage());
+        }
+    }
+}
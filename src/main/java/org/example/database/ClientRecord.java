@@ -0,0 +1,133 @@
+package org.example.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Record della tabella gst_clienti, con un campo tipizzato per ogni colonna di
+ * {@link DatabaseOperation#CLIENT_COLUMNS}. Le colonne null nel database restano null anche nel record,
+ * comprese quelle numeriche.
+ *
+ * @param id            la colonna {@code id}.
+ * @param codice        la colonna {@code codice}.
+ * @param d             la colonna {@code d}.
+ * @param denominazione la denominazione della scuola.
+ * @param indirizzo     l'indirizzo della scuola.
+ * @param cap           la colonna {@code cap}.
+ * @param comune        la colonna {@code comune}.
+ * @param prova         la colonna {@code prova}.
+ * @param pivacf        la colonna {@code pivacf}.
+ * @param ambito        la colonna {@code Ambito}.
+ * @param tel           la colonna {@code tel}.
+ * @param email         la colonna {@code email}.
+ * @param email2        la colonna {@code Email_2}.
+ */
+public record ClientRecord(Integer id, String codice, Integer d, String denominazione, String indirizzo,
+                           String cap, String comune, String prova, String pivacf, Integer ambito, String tel,
+                           String email, String email2) {
+
+    /**
+     * Legge la riga corrente di un result set.
+     *
+     * @param rs il result set posizionato sulla riga da leggere.
+     * @param indexes le posizioni delle colonne nel result set, nell'ordine di {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @return il record.
+     * @throws SQLException se si verifica un errore durante la lettura.
+     */
+    static ClientRecord read(ResultSet rs, int[] indexes) throws SQLException {
+        return new ClientRecord(
+                integer(rs, indexes[0]),
+                rs.getString(indexes[1]),
+                integer(rs, indexes[2]),
+                rs.getString(indexes[3]),
+                rs.getString(indexes[4]),
+                rs.getString(indexes[5]),
+                rs.getString(indexes[6]),
+                rs.getString(indexes[7]),
+                rs.getString(indexes[8]),
+                integer(rs, indexes[9]),
+                rs.getString(indexes[10]),
+                rs.getString(indexes[11]),
+                rs.getString(indexes[12]));
+    }
+
+    private static Integer integer(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Crea il record a partire dai valori delle colonne.
+     *
+     * @param row i valori, nell'ordine di {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @return il record, oppure null se {@code row} è null.
+     */
+    public static ClientRecord of(Object[] row) {
+        if (row == null) {
+            return null;
+        }
+        return new ClientRecord(number(row[0]), string(row[1]), number(row[2]), string(row[3]), string(row[4]),
+                string(row[5]), string(row[6]), string(row[7]), string(row[8]), number(row[9]), string(row[10]),
+                string(row[11]), string(row[12]));
+    }
+
+    /**
+     * Crea il record a partire dai valori di alcune colonne soltanto, ad esempio il risultato di una query che
+     * legge solo le colonne usate da un template. Le altre colonne restano null.
+     *
+     * @param columns le posizioni in {@link DatabaseOperation#CLIENT_COLUMNS} delle colonne lette
+     *                (vedi {@link DatabaseOperation#clientColumns(String...)}).
+     * @param values i valori, nello stesso ordine di {@code columns}.
+     * @return il record.
+     */
+    public static ClientRecord of(int[] columns, Object[] values) {
+        Object[] row = new Object[DatabaseOperation.CLIENT_COLUMNS.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[columns[i]] = values[i];
+        }
+        return of(row);
+    }
+
+    private static Integer number(Object value) {
+        return value == null ? null : ((Number) value).intValue();
+    }
+
+    private static String string(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Restituisce il valore di una colonna.
+     *
+     * @param column la posizione della colonna in {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @return il valore, {@link Integer} per le colonne numeriche e {@link String} per le altre, oppure null.
+     */
+    public Object get(int column) {
+        return switch (column) {
+            case 0 -> id;
+            case 1 -> codice;
+            case 2 -> d;
+            case 3 -> denominazione;
+            case 4 -> indirizzo;
+            case 5 -> cap;
+            case 6 -> comune;
+            case 7 -> prova;
+            case 8 -> pivacf;
+            case 9 -> ambito;
+            case 10 -> tel;
+            case 11 -> email;
+            case 12 -> email2;
+            default -> throw new IndexOutOfBoundsException("Colonna non valida: " + column);
+        };
+    }
+
+    /**
+     * Restituisce i valori delle colonne.
+     *
+     * @return un array con i valori, nell'ordine di {@link DatabaseOperation#CLIENT_COLUMNS}.
+     */
+    public Object[] toArray() {
+        return new Object[]{id, codice, d, denominazione, indirizzo, cap, comune, prova, pivacf, ambito, tel, email,
+                email2};
+    }
+}
@@ -0,0 +1,524 @@
+package org.example.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Copia locale della tabella gst_clienti, salvata in un file binario compatto e mappata in memoria.
+ * Permette di elencare le scuole e di recuperarne i record senza connessione al database.
+ * <p>
+ * Il file è composto da:
+ * <ul>
+ *     <li>un'intestazione con numero di record, data di creazione e posizione delle sezioni;</li>
+ *     <li>i record, a dimensione fissa: un intero per ogni colonna di {@link DatabaseOperation#CLIENT_COLUMNS}
+ *     (il valore per le colonne numeriche, la posizione nel pool per le colonne di testo, -1 se null),
+ *     una maschera con un bit per ogni colonna numerica null e il checksum del record calcolato dal database
+ *     (vedi {@link #checksums(DatabaseOperation)});</li>
+ *     <li>l'indice per denominazione: i numeri dei record ordinati per denominazione, per la ricerca binaria;</li>
+ *     <li>il pool delle stringhe, ciascuna preceduta dalla sua lunghezza in byte e scritta in UTF-8 una sola volta.</li>
+ * </ul>
+ * Le istanze sono immutabili: {@link #refresh(DatabaseOperation)} scrive un nuovo file e restituisce un nuovo snapshot.
+ * <p>
+ * Il percorso di uno snapshot è un nome di base: ogni scrittura crea accanto ad esso un nuovo file, con il nome di
+ * base seguito dal numero di generazione, e {@link #open(Path)} apre la generazione più recente. In questo modo il
+ * file mappato da uno snapshot ancora in uso non viene mai sostituito, cosa che su Windows non è consentita.
+ */
+public class ClientSnapshot {
+
+    private static final String TABLE = "gst_clienti";
+    private static final int MAGIC = 0x47535453; // "GSTS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int COLUMNS = DatabaseOperation.CLIENT_COLUMNS.length;
+    private static final int RECORD_SIZE = (COLUMNS + 2) * 4;
+    private static final int NULLS_OFFSET = COLUMNS * 4;
+    private static final int CHECKSUM_OFFSET = (COLUMNS + 1) * 4;
+    private static final int NAME_COLUMN = 3;
+    private static final int CHUNK_SIZE = PrefetchedRecords.DEFAULT_CHUNK_SIZE;
+
+    // Colonne numeriche di ClientRecord: sono salvate come valori, le altre come stringhe
+    private static final boolean[] INT_COLUMN = new boolean[COLUMNS];
+
+    static {
+        INT_COLUMN[0] = true;  // id
+        INT_COLUMN[2] = true;  // d
+        INT_COLUMN[9] = true;  // Ambito
+    }
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final long createdAt;
+    private final int indexOffset;
+    private final int poolOffset;
+
+    private ClientSnapshot(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " non è uno snapshot valido");
+        }
+        this.rows = buffer.getInt(8);
+        this.createdAt = buffer.getLong(12);
+        this.indexOffset = buffer.getInt(20);
+        this.poolOffset = buffer.getInt(24);
+        if (indexOffset != HEADER_SIZE + rows * RECORD_SIZE || poolOffset != indexOffset + rows * 4
+                || poolOffset > buffer.capacity()) {
+            throw new IOException(path + " è danneggiato");
+        }
+    }
+
+    /**
+     * Percorso predefinito dello snapshot, configurabile con la proprietà di sistema {@code snapshot.path}.
+     *
+     * @return il percorso dello snapshot.
+     */
+    public static Path defaultPath() {
+        String configured = System.getProperty("snapshot.path");
+        if (configured != null && !configured.isEmpty()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), ".wordmanipulating", TABLE + ".snapshot");
+    }
+
+    /**
+     * Indica se esiste almeno una generazione dello snapshot.
+     *
+     * @param path il percorso dello snapshot.
+     * @return true se lo snapshot può essere aperto con {@link #open(Path)}.
+     * @throws IOException se la cartella dello snapshot non può essere letta.
+     */
+    public static boolean exists(Path path) throws IOException {
+        return latestGeneration(path) >= 0;
+    }
+
+    /**
+     * Apre la generazione più recente di uno snapshot mappandola in memoria.
+     *
+     * @param path il percorso dello snapshot.
+     * @return lo snapshot.
+     * @throws IOException se lo snapshot non esiste o non è valido.
+     */
+    public static ClientSnapshot open(Path path) throws IOException {
+        long generation = latestGeneration(path);
+        if (generation < 0) {
+            throw new NoSuchFileException(path.toString());
+        }
+        try (FileChannel channel = FileChannel.open(generationFile(path, generation), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ClientSnapshot(path, buffer);
+        }
+    }
+
+    /**
+     * Legge dal database il checksum di ogni record, da salvare nello snapshot con {@link #write(List, Map, Path)}.
+     * Va letto prima dei record: se un record cambia nel frattempo il checksum salvato è quello vecchio e il record
+     * viene riletto all'aggiornamento successivo, mentre nell'ordine inverso la modifica andrebbe persa.
+     *
+     * @param sql le operazioni sul database.
+     * @return una mappa che associa l'id di ogni record al suo checksum.
+     * @throws SQLException se si verifica un errore durante la query.
+     */
+    public static Map<Integer, Long> checksums(DatabaseOperation sql) throws SQLException {
+        return sql.selectChecksums(TABLE, "id", DatabaseOperation.CLIENT_COLUMNS);
+    }
+
+    /**
+     * Crea uno snapshot leggendo in streaming l'intera tabella.
+     *
+     * @param sql le operazioni sul database da cui leggere i record.
+     * @param path il percorso del file da scrivere.
+     * @return lo snapshot creato.
+     * @throws SQLException se si verifica un errore durante la lettura.
+     * @throws IOException se il file non può essere scritto.
+     */
+    public static ClientSnapshot create(DatabaseOperation sql, Path path) throws SQLException, IOException {
+        Map<Integer, Long> checksums = checksums(sql);
+        List<Object[]> records = new ArrayList<>();
+        try (ClientCursor cursor = sql.openCursor(TABLE, CHUNK_SIZE)) {
+            cursor.forEachRemaining(client -> records.add(client.toArray()));
+        }
+        return write(records, checksums, path);
+    }
+
+    /**
+     * Scrive una nuova generazione dello snapshot con i record indicati ed elimina, se possibile, le precedenti.
+     * I checksum sono quelli calcolati dal database, perché il confronto in {@link #refresh(DatabaseOperation)}
+     * dipende dalla codifica delle colonne e dal trattamento dei null in MySQL; un record senza checksum viene
+     * riletto al primo aggiornamento.
+     *
+     * @param records i record della tabella, nell'ordine di {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @param checksums i checksum dei record per id, letti con {@link #checksums(DatabaseOperation)}.
+     * @param path il percorso dello snapshot.
+     * @return lo snapshot scritto.
+     * @throws IOException se il file non può essere scritto.
+     */
+    public static ClientSnapshot write(List<Object[]> records, Map<Integer, Long> checksums, Path path)
+            throws IOException {
+        // Pool delle stringhe: ogni valore distinto viene scritto una sola volta
+        Map<String, Integer> pooled = new HashMap<>();
+        ByteArrayBuilder pool = new ByteArrayBuilder();
+        ByteBuffer data = ByteBuffer.allocate(records.size() * (RECORD_SIZE + 4));
+
+        for (Object[] record : records) {
+            int nulls = 0;
+            for (int c = 0; c < COLUMNS; c++) {
+                Object value = record[c];
+                if (INT_COLUMN[c]) {
+                    // Lo 0 di una colonna null non deve confondersi con uno 0 vero: lo distingue la maschera
+                    if (value == null) {
+                        nulls |= 1 << c;
+                    }
+                    data.putInt(value == null ? 0 : ((Number) value).intValue());
+                } else if (value == null) {
+                    data.putInt(-1);
+                } else {
+                    data.putInt(pooled.computeIfAbsent(value.toString(), pool::addString));
+                }
+            }
+            data.putInt(nulls);
+            data.putInt(checksums.getOrDefault((Integer) record[0], 0L).intValue());
+        }
+
+        // Indice per denominazione; a parità di denominazione prevale l'ultimo record, come nelle query
+        Map<String, Integer> lastByName = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            lastByName.put(String.valueOf(records.get(i)[NAME_COLUMN]), i);
+        }
+        Integer[] index = lastByName.values().toArray(new Integer[0]);
+        Arrays.sort(index, Comparator.comparing(i -> String.valueOf(records.get(i)[NAME_COLUMN])));
+        for (int i = 0; i < records.size(); i++) {
+            data.putInt(i < index.length ? index[i] : -1);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(records.size()).putLong(System.currentTimeMillis())
+                .putInt(HEADER_SIZE + records.size() * RECORD_SIZE)
+                .putInt(HEADER_SIZE + records.size() * (RECORD_SIZE + 4))
+                .putInt(index.length);
+        header.flip();
+        data.flip();
+
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        long previous = latestGeneration(path);
+        long generation = Math.max(System.currentTimeMillis(), previous + 1);
+        Path file = generationFile(path, generation);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {header, data, pool.toByteBuffer()};
+            while (sections[2].hasRemaining()) {
+                channel.write(sections);
+            }
+            channel.force(false);
+        }
+        // Il nuovo file ha un nome mai usato: nessun file mappato viene sostituito
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        ClientSnapshot snapshot = open(path);
+        deleteGenerationsBefore(path, generation);
+        return snapshot;
+    }
+
+    private static Path generationFile(Path path, long generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Cerca la generazione più recente dello snapshot.
+     *
+     * @return il numero della generazione, oppure -1 se lo snapshot non esiste.
+     */
+    private static long latestGeneration(Path path) throws IOException {
+        long latest = -1;
+        for (long generation : generations(path)) {
+            latest = Math.max(latest, generation);
+        }
+        return latest;
+    }
+
+    private static List<Long> generations(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        List<Long> generations = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return generations;
+        }
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix)) {
+                    try {
+                        generations.add(Long.parseLong(name.substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        // Non è una generazione dello snapshot
+                    }
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Elimina le generazioni precedenti dello snapshot. Su Windows quelle ancora mappate da uno snapshot in uso
+     * non possono essere eliminate: restano sul disco e vengono eliminate da una scrittura successiva.
+     */
+    private static void deleteGenerationsBefore(Path path, long generation) {
+        try {
+            for (long previous : generations(path)) {
+                if (previous < generation) {
+                    try {
+                        Files.deleteIfExists(generationFile(path, previous));
+                    } catch (IOException e) {
+                        // Ancora in uso
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Le generazioni precedenti restano sul disco
+        }
+    }
+
+    /**
+     * Aggiorna lo snapshot scaricando solo i record nuovi o modificati.
+     * Il database calcola il checksum di ogni record, che viene confrontato con quello salvato nello snapshot:
+     * vengono letti per intero solo i record con checksum diverso o con un id non ancora presente, mentre
+     * i record eliminati dal database vengono rimossi. Se nulla è cambiato il file non viene riscritto.
+     *
+     * @param sql le operazioni sul database da cui leggere i record.
+     * @return lo snapshot aggiornato, oppure questo stesso snapshot se non ci sono modifiche.
+     * @throws SQLException se si verifica un errore durante le query.
+     * @throws IOException se il file non può essere scritto.
+     */
+    public ClientSnapshot refresh(DatabaseOperation sql) throws SQLException, IOException {
+        Map<Integer, Long> remote = checksums(sql);
+
+        Map<Integer, Integer> localById = new HashMap<>(rows * 2);
+        for (int i = 0; i < rows; i++) {
+            localById.put(buffer.getInt(recordOffset(i)), i);
+        }
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : remote.entrySet()) {
+            Integer local = localById.get(entry.getKey());
+            if (local == null || storedChecksum(local) != entry.getValue()) {
+                changed.add(String.valueOf(entry.getKey()));
+            }
+        }
+        int deleted = 0;
+        for (Integer id : localById.keySet()) {
+            if (!remote.containsKey(id)) {
+                deleted++;
+            }
+        }
+        if (changed.isEmpty() && deleted == 0) {
+            return this;
+        }
+
+        Map<String, Object[]> fetched = sql.selectByKeys(TABLE, "id", changed, CHUNK_SIZE);
+        List<Object[]> records = new ArrayList<>(remote.size());
+        for (int i = 0; i < rows; i++) {
+            Integer id = buffer.getInt(recordOffset(i));
+            Object[] updated = fetched.remove(String.valueOf(id));
+            if (updated != null) {
+                records.add(updated);
+            } else if (remote.containsKey(id)) {
+                records.add(readRecord(i));
+            }
+        }
+        // Record nuovi, in ordine di id
+        List<Object[]> added = new ArrayList<>(fetched.values());
+        added.sort(Comparator.comparingInt(r -> (Integer) r[0]));
+        records.addAll(added);
+
+        System.out.println("Snapshot " + TABLE + ": " + changed.size() + " record nuovi o modificati, "
+                + deleted + " eliminati");
+        return write(records, remote, path);
+    }
+
+    /**
+     * Restituisce il record della scuola indicata, con una ricerca binaria sull'indice per denominazione.
+     *
+     * @param denominazione la denominazione della scuola.
+     * @return il record, oppure null se la scuola non è presente nello snapshot.
+     */
+    public ClientRecord get(String denominazione) {
+        int record = find(denominazione);
+        return record >= 0 ? ClientRecord.of(readRecord(record)) : null;
+    }
+
+    /**
+     * Consegna, in ordine di denominazione, i record che hanno nella colonna indicata lo stesso valore della scuola,
+     * compresa la scuola stessa: ad esempio tutte le scuole dello stesso comune.
+     * I valori vengono confrontati come sono salvati nel file, senza leggere i record che non corrispondono.
+     * Come nella query sul database, se la colonna della scuola è null non viene consegnato alcun record.
+     *
+     * @param denominazione la denominazione della scuola.
+     * @param column la posizione della colonna in {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @param action il consumatore dei record.
+     */
+    public void forEachRelated(String denominazione, int column, Consumer<ClientRecord> action) {
+        int school = find(denominazione);
+        if (school < 0) {
+            return;
+        }
+        if (isNull(school, column)) {
+            return;
+        }
+        // Il pool contiene ogni stringa una sola volta: valori uguali hanno la stessa posizione
+        int value = buffer.getInt(recordOffset(school) + column * 4);
+        int indexed = buffer.getInt(28);
+        for (int i = 0; i < indexed; i++) {
+            int record = buffer.getInt(indexOffset + i * 4);
+            if (buffer.getInt(recordOffset(record) + column * 4) == value && !isNull(record, column)) {
+                action.accept(ClientRecord.of(readRecord(record)));
+            }
+        }
+    }
+
+    /**
+     * Cerca una scuola nell'indice per denominazione.
+     *
+     * @param denominazione la denominazione della scuola.
+     * @return il numero del record, oppure -1 se la scuola non è presente.
+     */
+    private int find(String denominazione) {
+        int low = 0;
+        int high = buffer.getInt(28) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = buffer.getInt(indexOffset + mid * 4);
+            int cmp = readString(buffer.getInt(recordOffset(record) + NAME_COLUMN * 4)).compareTo(denominazione);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Restituisce le denominazioni di tutte le scuole, nell'ordine dei record.
+     *
+     * @return l'elenco delle denominazioni.
+     */
+    public List<String> names() {
+        List<String> names = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            names.add(readString(buffer.getInt(recordOffset(i) + NAME_COLUMN * 4)));
+        }
+        return names;
+    }
+
+    /**
+     * Consegna al consumatore tutti i record dello snapshot, nell'ordine in cui sono salvati.
+     *
+     * @param action il consumatore dei record.
+     */
+    public void forEach(Consumer<ClientRecord> action) {
+        for (int i = 0; i < rows; i++) {
+            action.accept(ClientRecord.of(readRecord(i)));
+        }
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Restituisce il momento in cui lo snapshot è stato scritto.
+     *
+     * @return la data di creazione, in millisecondi dall'epoch.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private int recordOffset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private long storedChecksum(int record) {
+        return Integer.toUnsignedLong(buffer.getInt(recordOffset(record) + CHECKSUM_OFFSET));
+    }
+
+    private boolean isNull(int record, int column) {
+        if (INT_COLUMN[column]) {
+            return (buffer.getInt(recordOffset(record) + NULLS_OFFSET) & (1 << column)) != 0;
+        }
+        return buffer.getInt(recordOffset(record) + column * 4) < 0;
+    }
+
+    private Object[] readRecord(int record) {
+        int offset = recordOffset(record);
+        int nulls = buffer.getInt(offset + NULLS_OFFSET);
+        Object[] values = new Object[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            int value = buffer.getInt(offset + c * 4);
+            if (INT_COLUMN[c]) {
+                values[c] = (nulls & (1 << c)) != 0 ? null : Integer.valueOf(value);
+            } else {
+                values[c] = readString(value);
+            }
+        }
+        return values;
+    }
+
+    private String readString(int poolPosition) {
+        if (poolPosition < 0) {
+            return null;
+        }
+        int position = poolOffset + poolPosition;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Buffer di byte espandibile per il pool delle stringhe.
+     */
+    private static final class ByteArrayBuilder {
+
+        private byte[] bytes = new byte[8192];
+        private int size;
+
+        int addString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(size + 4 + encoded.length);
+            int position = size;
+            ByteBuffer.wrap(bytes, size, 4).putInt(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size + 4, encoded.length);
+            size += 4 + encoded.length;
+            return position;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.example.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool di connessioni JDBC di dimensione limitata.
+ * Le connessioni vengono validate quando sono prese in prestito e chiuse se restano inutilizzate oltre il tempo
+ * massimo configurato. Chiudere una connessione ottenuta dal pool la restituisce al pool.
+ * <p>
+ * Le connessioni vanno prese in prestito per una singola operazione, o per un singolo thread di lavoro, e
+ * restituite subito dopo: così più operazioni possono procedere in parallelo e una connessione caduta, ad esempio
+ * per la chiusura del tunnel SSH, viene sostituita al prestito successivo.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Crea una nuova connessione fisica al database.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /**
+     * Attesa massima predefinita di una connessione libera.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30_000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // Una connessione restituita da meno di questo tempo non viene validata di nuovo, per non aggiungere un
+    // round trip a ogni prestito
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * Costruttore della classe ConnectionPool.
+     *
+     * @param factory la factory delle connessioni fisiche.
+     * @param maxSize il numero massimo di connessioni aperte contemporaneamente.
+     * @param idleTimeoutMillis il tempo dopo il quale una connessione inutilizzata viene chiusa.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long idleTimeoutMillis) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(this.maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Prende in prestito una connessione valida dal pool, attendendo al più
+     * {@link #DEFAULT_BORROW_TIMEOUT_MILLIS} millisecondi.
+     *
+     * @return la connessione; va chiusa per restituirla al pool.
+     * @throws SQLException se il pool è chiuso, se l'attesa scade o se la connessione non può essere aperta.
+     */
+    public Connection borrow() throws SQLException {
+        return borrow(DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Prende in prestito una connessione valida dal pool, aprendone una nuova se necessario.
+     *
+     * @param timeoutMillis il tempo massimo di attesa se tutte le connessioni sono in uso.
+     * @return la connessione; va chiusa per restituirla al pool.
+     * @throws SQLException se il pool è chiuso, se l'attesa scade o se la connessione non può essere aperta.
+     */
+    public Connection borrow(long timeoutMillis) throws SQLException {
+        if (closed) {
+            throw new SQLException("Il pool di connessioni è chiuso");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Nessuna connessione disponibile entro " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attesa di una connessione interrotta", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = pollIdle()) != null) {
+                if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS || pooled.isValid()) {
+                    pooled.borrowed = true;
+                    return pooled.proxy;
+                }
+                destroy(pooled);
+            }
+
+            pooled = new PooledConnection(factory.create());
+            pooled.borrowed = true;
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private synchronized PooledConnection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    private void release(PooledConnection pooled) {
+        if (!pooled.borrowed) {
+            return;
+        }
+        pooled.borrowed = false;
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                destroy(pooled);
+            } else {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                pooled.lastUsed = System.currentTimeMillis();
+                synchronized (this) {
+                    idle.addFirst(pooled);
+                }
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long limit = System.currentTimeMillis() - idleTimeoutMillis;
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (pooled.lastUsed < limit) {
+                    it.remove();
+                    expired.add(pooled);
+                }
+            }
+        }
+        for (PooledConnection pooled : expired) {
+            destroy(pooled);
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        StatementCache.release(pooled.proxy);
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // La connessione è già inutilizzabile
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PooledConnection> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (PooledConnection pooled : remaining) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Connessione fisica gestita dal pool. Il proxy resta lo stesso per tutta la vita della connessione,
+     * così che le cache associate alla connessione (vedi {@link StatementCache}) sopravvivano ai prestiti.
+     */
+    private final class PooledConnection implements InvocationHandler {
+        private final Connection physical;
+        private final Connection proxy;
+        private volatile boolean borrowed;
+        private volatile long lastUsed;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        private boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(this);
+                    return null;
+                case "isClosed":
+                    return !borrowed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    if (!borrowed) {
+                        throw new SQLException("La connessione è stata restituita al pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
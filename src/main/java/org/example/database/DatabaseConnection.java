@@ -1,21 +1,27 @@
 package org.example.database;
 
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 
-import javax.swing.*;
-import java.io.File;
 import java.sql.*;
-import java.util.Properties;
 
+/**
+ * Connessione al database del gestionale.
+ * Se è configurato un host SSH le connessioni passano attraverso un {@link SshTunnel}, altrimenti viene usato
+ * direttamente l'URL JDBC indicato (utile per provare l'applicazione con un database locale).
+ * In entrambi i casi le connessioni sono gestite da un {@link ConnectionPool}.
+ * <p>
+ * I parametri possono essere impostati con le proprietà di sistema {@code ssh.host}, {@code ssh.user},
+ * {@code ssh.key}, {@code ssh.passphrase}, {@code ssh.port}, {@code db.host}, {@code db.port},
+ * {@code db.user}, {@code db.password}, {@code db.url}, {@code db.pool.size} e {@code db.pool.idleTimeout}.
+ */
 public class DatabaseConnection {
 
-    private Connection connection;
-    private Session session;
+    private SshTunnel tunnel;
+    private ConnectionPool pool;
     private String sshHost;
     private String sshUser;
     private String sshPrivateKey; // Path to your PEM file
+    private String sshPassphrase;
     private int sshPort;
 
     private String dbHost; // this will be localhost after SSH tunnel
@@ -23,68 +29,101 @@ public class DatabaseConnection {
     private String dbUser;
     private String dbPassword;
     private String dbName;
-
-    private int localPort = 3307; // local port that will be forwarded to the remote db server
-
-    private void initialize(String dbname) throws JSchException {
-        sshHost = "";
-        String sshUser = "";
-        sshPrivateKey = ""; // Path to your PEM file
-        sshPort = 22;
-        dbHost = "localhost";
-        dbPort = 3306;
-        dbUser = "";
-        dbPassword = "";
+    private String jdbcUrl; // se impostato, connessione diretta senza tunnel
+
+    private int poolSize;
+    private long idleTimeoutMillis;
+
+    private void initialize(String dbname) {
+        sshHost = System.getProperty("ssh.host", "");
+        sshUser = System.getProperty("ssh.user", "");
+        sshPrivateKey = System.getProperty("ssh.key", ""); // Path to your PEM file
+        sshPassphrase = System.getProperty("ssh.passphrase", "Euservice_new");
+        sshPort = Integer.getInteger("ssh.port", 22);
+        dbHost = System.getProperty("db.host", "localhost");
+        dbPort = Integer.getInteger("db.port", 3306);
+        dbUser = System.getProperty("db.user", "");
+        dbPassword = System.getProperty("db.password", "");
         dbName = dbname;
-        localPort = 3307;
+        jdbcUrl = System.getProperty("db.url");
+        poolSize = Integer.getInteger("db.pool.size", Runtime.getRuntime().availableProcessors());
+        idleTimeoutMillis = Long.getLong("db.pool.idleTimeout", 300_000L);
+    }
 
-        JSch jsch = new JSch();
-        jsch.addIdentity(sshPrivateKey,"Euservice_new");
-        session = jsch.getSession(sshUser, sshHost, sshPort);
+    private void createPool() {
+        if (jdbcUrl == null && !sshHost.isEmpty()) {
+            tunnel = new SshTunnel(sshHost, sshPort, sshUser, sshPrivateKey, sshPassphrase, dbHost, dbPort);
+        }
+        pool = new ConnectionPool(this::openConnection, poolSize, idleTimeoutMillis);
     }
 
-    public DatabaseConnection(String dbName) throws JSchException {
+    public DatabaseConnection(String dbName) {
         initialize(dbName);
+        createPool();
     }
 
-    public Connection getConnection(){
-        try {
-            // Check if the private key file exists
-            File privateKeyFile = new File(sshPrivateKey);
-            if (!privateKeyFile.exists()) {
-                throw new RuntimeException("Private key file does not exist: " + sshPrivateKey);
-            }
-
-            // Configure the session to use only publickey authentication
-            Properties config = new Properties();
-            config.put("StrictHostKeyChecking", "no");
-            config.put("PreferredAuthentications", "publickey");
-            session.setConfig(config);
-
-            session.connect();
-            System.out.println("SSH Connected");
-
-            // Set up port forwarding
-            int assignedPort = session.setPortForwardingL(localPort, dbHost, dbPort);
-            System.out.println("localhost:" + assignedPort + " -> " + dbHost + ":" + dbPort);
-
-            // Set up database connection
-            String jdbcUrl = "jdbc:mysql://localhost:" + localPort + "/" + dbName;
-            connection = DriverManager.getConnection(jdbcUrl, dbUser, dbPassword);
-
-            return connection;
+    /**
+     * Crea una connessione diretta, senza tunnel SSH, verso l'URL JDBC indicato.
+     *
+     * @param jdbcUrl l'URL JDBC del database.
+     * @param user l'utente del database.
+     * @param password la password del database.
+     */
+    public DatabaseConnection(String jdbcUrl, String user, String password) {
+        initialize(null);
+        this.jdbcUrl = jdbcUrl;
+        this.dbUser = user;
+        this.dbPassword = password;
+        createPool();
+    }
 
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(null,e.getMessage());
-            System.exit(0);
+    /**
+     * Apre una nuova connessione fisica, riaprendo il tunnel SSH se è caduto.
+     */
+    private Connection openConnection() throws SQLException {
+        String url = jdbcUrl;
+        if (url == null) {
+            int port = dbPort;
+            String host = dbHost;
+            if (tunnel != null) {
+                try {
+                    port = tunnel.ensureOpen();
+                    host = "localhost";
+                } catch (JSchException e) {
+                    throw new SQLException("Tunnel SSH non disponibile: " + e.getMessage(), e);
+                }
+            }
+            url = "jdbc:mysql://" + host + ":" + port + "/" + dbName;
         }
+        return DriverManager.getConnection(url, dbUser, dbPassword);
+    }
+
+    /**
+     * Prende in prestito una connessione dal pool, da usare per una singola operazione e chiudere al termine
+     * per restituirla al pool. Ogni chiamata restituisce una connessione diversa da quelle in uso: per lavorare da
+     * più thread ognuno prende la propria (vedi {@link #getPool()}).
+     *
+     * @return la connessione al database.
+     * @throws SQLException se la connessione non può essere aperta.
+     */
+    public Connection getConnection() throws SQLException {
+        return pool.borrow();
+    }
 
-        return null;
+    /**
+     * Restituisce il pool di connessioni.
+     *
+     * @return il pool di connessioni al database.
+     */
+    public ConnectionPool getPool() {
+        return pool;
     }
 
     public void close() throws JSchException, SQLException {
-        connection.close();
-        session.disconnect();
+        pool.close();
+        if (tunnel != null) {
+            tunnel.close();
+        }
         System.out.println("Disconnected");
     }
 }
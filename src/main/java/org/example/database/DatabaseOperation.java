@@ -1,17 +1,38 @@
 package org.example.database;
 
+import org.example.utils.Metrics;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Classe per operazioni di selezione dati dal database.
  * Fornisce un metodo per eseguire query su una tabella e restituire risultati in base a condizioni specifiche.
  */
 public class DatabaseOperation {
+
+    /**
+     * Colonne della tabella gst_clienti, nell'ordine in cui compaiono nei record restituiti.
+     */
+    public static final String[] CLIENT_COLUMNS = {
+            "id", "codice", "d", "denominazione", "indirizzo", "cap", "comune",
+            "prova", "pivacf", "Ambito", "tel", "email", "Email_2"
+    };
+
     private Connection conn;
 
     /**
@@ -45,6 +66,8 @@ public class DatabaseOperation {
      * Esegue una query di selezione su una tabella e restituisce i risultati in base alle condizioni specificate.
      * Se non ci sono condizioni (`where` è null o vuoto), restituisce solo la colonna "denominazione".
      * Altrimenti, restituisce l'intero record.
+     * Tutti i risultati vengono caricati in memoria: per leggere molti record uno alla volta usare
+     * {@link #openCursor(String, int)}.
      *
      * @param table il nome della tabella su cui eseguire la query.
      * @param where una tabella hash che contiene le condizioni per la clausola WHERE (può essere null).
@@ -52,79 +75,499 @@ public class DatabaseOperation {
      */
     public ArrayList<Object> selectFromTable(String table, Hashtable<String, String> where) {
         ArrayList<Object> list = new ArrayList<>();
-        Statement stmt = null;
 
         try {
-            stmt = this.conn.createStatement();
-
-            // Costruisce la query di selezione
-            StringBuilder query;
             if (where == null || where.isEmpty()) {
-                // Se non ci sono condizioni, seleziona solo la colonna "denominazione"
-                query = new StringBuilder("SELECT denominazione FROM " + table);
+                // Se non ci sono condizioni, ritorna solo la colonna "denominazione"
+                for (Object[] row : selectFromTable(table, null, "denominazione")) {
+                    list.add(row[0]);
+                }
             } else {
-                // Se ci sono condizioni, seleziona tutto
-                query = new StringBuilder("SELECT * FROM " + table);
+                // Se ci sono condizioni, ritorna l'intero record. Il lock sulla connessione, oltre a proteggere
+                // la query preparata condivisa, attende la fine di un'eventuale lettura in streaming
+                StatementCache.CachedStatement cached = prepare(table, where, null);
+                synchronized (this.conn) {
+                    bind(cached.stmt, where);
+                    try (Metrics.Sample ignored = Metrics.query(cached.sql);
+                         ResultSet rs = cached.stmt.executeQuery()) {
+                        int[] indexes = cached.columnIndexes(rs, CLIENT_COLUMNS);
+                        while (rs.next()) {
+                            list.add(readRow(rs, indexes));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        return list;
+    }
 
-                // Aggiunge la clausola WHERE con le condizioni
-                query.append(" WHERE ");
+    /**
+     * Esegue una query di selezione che legge solo le colonne indicate.
+     * La query viene preparata una sola volta per connessione e riutilizzata nelle chiamate successive
+     * con la stessa tabella, le stesse colonne nella clausola WHERE e la stessa proiezione.
+     *
+     * @param table il nome della tabella su cui eseguire la query.
+     * @param where una tabella hash che contiene le condizioni per la clausola WHERE (può essere null).
+     * @param columns le colonne da leggere.
+     * @return una lista di array con i valori delle colonne, nello stesso ordine di {@code columns}.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public ArrayList<Object[]> selectFromTable(String table, Hashtable<String, String> where, String... columns)
+            throws SQLException {
+        ArrayList<Object[]> list = new ArrayList<>();
 
-                // Aggiunge tutte le condizioni della clausola WHERE
-                ArrayList<String> conditions = new ArrayList<>();
-                for (String key : where.keySet()) {
-                    String value = where.get(key);
-                    conditions.add(key + " = '" + value + "'");
+        StatementCache.CachedStatement cached = prepare(table, where, columns);
+        synchronized (this.conn) {
+            bind(cached.stmt, where);
+            try (Metrics.Sample ignored = Metrics.query(cached.sql);
+                 ResultSet rs = cached.stmt.executeQuery()) {
+                // Le colonne proiettate occupano le posizioni 1..n nell'ordine richiesto
+                while (rs.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    list.add(row);
                 }
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Legge il record della scuola indicata limitandosi alle colonne richieste, con una query preparata riutilizzata
+     * come in {@link #selectFromTable(String, Hashtable, String...)}.
+     * A parità di denominazione prevale l'ultimo record, come nello snapshot.
+     *
+     * @param table il nome della tabella.
+     * @param denominazione la denominazione della scuola.
+     * @param columns le colonne da leggere, tra quelle di {@link #CLIENT_COLUMNS}.
+     * @return il record, con null nelle colonne non lette, oppure null se la scuola non esiste.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public ClientRecord selectClient(String table, String denominazione, String... columns) throws SQLException {
+        int[] positions = clientColumns(columns);
+        Hashtable<String, String> where = new Hashtable<>();
+        where.put("denominazione", denominazione);
+        ArrayList<Object[]> rows = selectFromTable(table, where, columns);
+        return rows.isEmpty() ? null : ClientRecord.of(positions, rows.get(rows.size() - 1));
+    }
 
-                // Unisce le condizioni con " AND "
-                query.append(String.join(" AND ", conditions));
+    /**
+     * Restituisce dalla cache della connessione la query preparata per la tabella, le condizioni e la proiezione.
+     *
+     * @param table il nome della tabella.
+     * @param where le condizioni della clausola WHERE (può essere null).
+     * @param columns le colonne da leggere, oppure null per tutte.
+     * @return la query preparata.
+     * @throws SQLException se la preparazione non riesce.
+     */
+    private StatementCache.CachedStatement prepare(String table, Hashtable<String, String> where, String[] columns)
+            throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT ");
+        if (columns == null || columns.length == 0) {
+            query.append("*");
+        } else {
+            for (String column : columns) {
+                checkIdentifier(column);
             }
+            query.append(String.join(", ", columns));
+        }
+        query.append(" FROM ").append(checkIdentifier(table));
 
-            // Esegue la query
-            ResultSet rs = stmt.executeQuery(query.toString());
+        if (where != null && !where.isEmpty()) {
+            // Le condizioni sono ordinate per nome, così la stessa combinazione produce sempre la stessa query
+            List<String> conditions = new ArrayList<>();
+            for (String key : sortedKeys(where)) {
+                conditions.add(checkIdentifier(key) + " = ?");
+            }
+            query.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
 
-            // Elabora i risultati
-            if (where == null || where.isEmpty()) {
-                // Se non ci sono condizioni, ritorna solo la colonna "denominazione"
+        return StatementCache.forConnection(this.conn).prepare(query.toString());
+    }
+
+    /**
+     * Imposta i valori delle condizioni nei parametri della query, nell'ordine usato da {@link #prepare}.
+     */
+    private static void bind(PreparedStatement stmt, Hashtable<String, String> where) throws SQLException {
+        if (where == null) {
+            return;
+        }
+        int index = 1;
+        for (String key : sortedKeys(where)) {
+            stmt.setString(index++, where.get(key));
+        }
+    }
+
+    private static List<String> sortedKeys(Hashtable<String, String> where) {
+        List<String> keys = new ArrayList<>(where.keySet());
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Verifica che un nome di tabella o di colonna sia un identificatore valido, dato che non può essere
+     * passato come parametro della query.
+     *
+     * @param identifier il nome da verificare.
+     * @return lo stesso nome.
+     * @throws IllegalArgumentException se il nome contiene caratteri non ammessi.
+     */
+    static String checkIdentifier(String identifier) {
+        if (identifier == null || !identifier.matches("[A-Za-z0-9_]+")) {
+            throw new IllegalArgumentException("Nome di tabella o colonna non valido: " + identifier);
+        }
+        return identifier;
+    }
+
+    /**
+     * Legge una colonna di una tabella in streaming, consegnando i valori a blocchi man mano che arrivano dal
+     * database, senza attendere la fine della query. Come in {@link #streamRelatedRows}, la lettura avviene tenendo
+     * il lock sulla connessione.
+     *
+     * @param table il nome della tabella.
+     * @param column la colonna da leggere.
+     * @param pageSize il numero di valori per blocco.
+     * @param onPage il consumatore dei blocchi di valori.
+     * @throws SQLException se si verifica un errore durante la query.
+     */
+    public void streamColumn(String table, String column, int pageSize, Consumer<List<String>> onPage)
+            throws SQLException {
+        String query = "SELECT " + checkIdentifier(column) + " FROM " + checkIdentifier(table);
+        synchronized (this.conn) {
+            try (Statement stmt = this.conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Con MySQL solo Integer.MIN_VALUE attiva la lettura riga per riga
+                stmt.setFetchSize(isMySql() ? Integer.MIN_VALUE : pageSize);
+                // Viene misurata solo l'esecuzione: la lettura delle righe include il lavoro di chi consuma i blocchi
+                ResultSet rs;
+                try (Metrics.Sample ignored = Metrics.query(query)) {
+                    rs = stmt.executeQuery(query);
+                }
+                try (rs) {
+                    List<String> page = new ArrayList<>(pageSize);
+                    while (rs.next()) {
+                        page.add(rs.getString(1));
+                        if (page.size() == pageSize) {
+                            onPage.accept(page);
+                            page = new ArrayList<>(pageSize);
+                        }
+                    }
+                    if (!page.isEmpty()) {
+                        onPage.accept(page);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Apre un cursore su tutti i record della tabella dei clienti. I record vengono letti uno alla volta man mano che
+     * il cursore avanza, senza caricare la tabella in memoria: con MySQL il driver trasferisce una riga alla volta,
+     * con gli altri driver blocchi di {@code fetchSize} righe.
+     *
+     * @param table il nome della tabella da leggere.
+     * @param fetchSize il numero di righe trasferite per ogni blocco, per i driver diversi da MySQL.
+     * @return il cursore, che il chiamante deve chiudere.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public ClientCursor openCursor(String table, int fetchSize) throws SQLException {
+        return queryCursor("SELECT * FROM " + checkIdentifier(table), fetchSize);
+    }
+
+    /**
+     * Esegue una query sulla tabella dei clienti e apre un cursore sul risultato.
+     *
+     * @param query la query, che deve restituire tutte le colonne di {@link #CLIENT_COLUMNS}.
+     * @param fetchSize il numero di righe trasferite per ogni blocco, per i driver diversi da MySQL.
+     * @param params i valori dei parametri della query.
+     * @return il cursore, che il chiamante deve chiudere.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    private ClientCursor queryCursor(String query, int fetchSize, String... params) throws SQLException {
+        PreparedStatement stmt = this.conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        try {
+            // Con MySQL solo Integer.MIN_VALUE attiva la lettura riga per riga
+            stmt.setFetchSize(isMySql() ? Integer.MIN_VALUE : fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setString(i + 1, params[i]);
+            }
+            // Viene misurata solo l'esecuzione: la lettura delle righe include il lavoro di chi consuma i record
+            ResultSet rs;
+            try (Metrics.Sample ignored = Metrics.query(query)) {
+                rs = stmt.executeQuery();
+            }
+            return new ClientCursor(stmt, rs);
+        } catch (SQLException | RuntimeException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Legge in streaming tutti i record della tabella dei clienti, come {@link #openCursor(String, int)}.
+     * Lo stream tiene aperta la query finché non viene chiuso: va usato in un blocco try-with-resources.
+     *
+     * @param table il nome della tabella da leggere.
+     * @param fetchSize il numero di righe trasferite per ogni blocco, per i driver diversi da MySQL.
+     * @return lo stream dei record.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public Stream<ClientRecord> streamClients(String table, int fetchSize) throws SQLException {
+        return openCursor(table, fetchSize).stream();
+    }
+
+    /**
+     * Legge in streaming, in ordine di denominazione, i record che hanno nella colonna indicata lo stesso valore
+     * della scuola, compresa la scuola stessa: ad esempio tutte le scuole dello stesso comune.
+     * I record vengono consegnati uno alla volta, man mano che arrivano dal database, così che chi li consuma
+     * possa scriverli senza tenerli tutti in memoria. Con MySQL la connessione non accetta altre query finché il
+     * result set è aperto: la lettura avviene quindi tenendo il lock sulla connessione, lo stesso acquisito dalle
+     * altre query su record singoli.
+     *
+     * @param table il nome della tabella.
+     * @param column la colonna il cui valore accomuna i record.
+     * @param denominazione la denominazione della scuola.
+     * @param onRow il consumatore dei record, invocato sul thread chiamante.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public void streamRelatedRows(String table, String column, String denominazione, Consumer<ClientRecord> onRow)
+            throws SQLException {
+        String query = "SELECT * FROM " + checkIdentifier(table) + " WHERE " + checkIdentifier(column)
+                + " IN (SELECT " + column + " FROM " + table + " WHERE denominazione = ?) ORDER BY denominazione";
+        synchronized (this.conn) {
+            try (ClientCursor cursor = queryCursor(query, 500, denominazione)) {
+                cursor.forEachRemaining(onRow);
+            }
+        }
+    }
+
+    /**
+     * Cerca una colonna della tabella dei clienti, senza distinguere maiuscole e minuscole.
+     *
+     * @param column il nome della colonna.
+     * @return la posizione della colonna in {@link #CLIENT_COLUMNS}, oppure -1 se non esiste.
+     */
+    public static int clientColumn(String column) {
+        for (int i = 0; i < CLIENT_COLUMNS.length; i++) {
+            if (CLIENT_COLUMNS[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calcola sul database il checksum di ogni record, senza trasferire i record stessi.
+     * Il checksum è {@code CRC32(CONCAT_WS('|', colonne...))}: i valori null vengono saltati.
+     *
+     * @param table il nome della tabella.
+     * @param idColumn la colonna che identifica i record.
+     * @param columns le colonne su cui calcolare il checksum.
+     * @return una mappa che associa l'id di ogni record al suo checksum.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public Map<Integer, Long> selectChecksums(String table, String idColumn, String... columns) throws SQLException {
+        StringBuilder concat = new StringBuilder();
+        for (String column : columns) {
+            concat.append(concat.length() == 0 ? "" : ", ").append(checkIdentifier(column));
+        }
+        String query = "SELECT " + checkIdentifier(idColumn) + ", CRC32(CONCAT_WS('|', " + concat + ")) FROM "
+                + checkIdentifier(table);
+
+        Map<Integer, Long> checksums = new LinkedHashMap<>();
+        try (Statement stmt = this.conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(isMySql() ? Integer.MIN_VALUE : 1000);
+            try (Metrics.Sample ignored = Metrics.query(query);
+                 ResultSet rs = stmt.executeQuery(query)) {
                 while (rs.next()) {
-                    String denominazione = rs.getString("denominazione");
-                    list.add(denominazione);
+                    checksums.put(rs.getInt(1), rs.getLong(2));
                 }
-            } else {
-                // Se ci sono condizioni, ritorna l'intero record
+            }
+        }
+        return checksums;
+    }
+
+    private boolean isMySql() throws SQLException {
+        return this.conn.getMetaData().getDriverName().toLowerCase(Locale.ROOT).contains("mysql");
+    }
+
+    /**
+     * Carica in poche query i record le cui chiavi sono comprese nell'elenco indicato,
+     * suddividendo le chiavi in blocchi di clausole {@code IN (...)}.
+     * Se più record hanno la stessa chiave viene mantenuto l'ultimo.
+     *
+     * @param table il nome della tabella su cui eseguire la query.
+     * @param keyColumn la colonna usata come chiave.
+     * @param keys le chiavi dei record da caricare.
+     * @param chunkSize il numero massimo di chiavi per ogni query.
+     * @return una mappa che associa ogni chiave trovata al relativo record.
+     * @throws SQLException se si verifica un errore durante l'esecuzione delle query.
+     */
+    public Map<String, Object[]> selectByKeys(String table, String keyColumn, Collection<String> keys, int chunkSize)
+            throws SQLException {
+        Map<String, Object[]> records = new LinkedHashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<String> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String query = "SELECT * FROM " + checkIdentifier(table) + " WHERE " + checkIdentifier(keyColumn)
+                    + " IN (" + placeholders + ")";
+
+            try (PreparedStatement stmt = this.conn.prepareStatement(query)) {
+                stmt.setFetchSize(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (Metrics.Sample ignored = Metrics.query(query);
+                     ResultSet rs = stmt.executeQuery()) {
+                    int[] indexes = null;
+                    int keyIndex = rs.findColumn(keyColumn);
+                    while (rs.next()) {
+                        if (indexes == null) {
+                            indexes = columnIndexes(rs);
+                        }
+                        records.put(rs.getString(keyIndex), readRow(rs, indexes));
+                    }
+                }
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Carica i record la cui chiave corrisponde al pattern indicato, confrontato con {@code LIKE}: {@code _} sta per
+     * un carattere qualsiasi e {@code %} per una sequenza qualsiasi, mentre {@code \} protegge il carattere che segue.
+     *
+     * @param table il nome della tabella su cui eseguire la query.
+     * @param keyColumn la colonna usata come chiave.
+     * @param pattern il pattern delle chiavi.
+     * @return una mappa che associa ogni chiave trovata al relativo record.
+     * @throws SQLException se si verifica un errore durante l'esecuzione della query.
+     */
+    public Map<String, Object[]> selectByPattern(String table, String keyColumn, String pattern) throws SQLException {
+        Map<String, Object[]> records = new LinkedHashMap<>();
+        String query = "SELECT * FROM " + checkIdentifier(table) + " WHERE " + checkIdentifier(keyColumn) + " LIKE ?";
+
+        try (PreparedStatement stmt = this.conn.prepareStatement(query)) {
+            stmt.setString(1, pattern);
+            try (Metrics.Sample ignored = Metrics.query(query);
+                 ResultSet rs = stmt.executeQuery()) {
+                int[] indexes = null;
+                int keyIndex = rs.findColumn(keyColumn);
                 while (rs.next()) {
-                    // Crea un array con tutte le colonne della tabella
-                    Object[] row = new Object[]{
-                            rs.getInt("id"),
-                            rs.getString("codice"),
-                            rs.getInt("d"),
-                            rs.getString("denominazione"),
-                            rs.getString("indirizzo"),
-                            rs.getString("cap"),
-                            rs.getString("comune"),
-                            rs.getString("prova"),
-                            rs.getString("pivacf"),
-                            rs.getInt("Ambito"),
-                            rs.getString("tel"),
-                            rs.getString("email"),
-                            rs.getString("Email_2")
-                    };
-                    list.add(row);
+                    if (indexes == null) {
+                        indexes = columnIndexes(rs);
+                    }
+                    records.put(rs.getString(keyIndex), readRow(rs, indexes));
                 }
             }
+        }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            // Chiude le risorse aperte
-            try {
-                if (stmt != null) stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+        return records;
+    }
+
+    /**
+     * Carica in poche query, come {@link #selectByKeys(String, String, Collection, int)}, i record le cui chiavi sono
+     * comprese nell'elenco indicato, leggendo solo le colonne richieste oltre alla chiave.
+     *
+     * @param table il nome della tabella su cui eseguire la query.
+     * @param keyColumn la colonna usata come chiave.
+     * @param keys le chiavi dei record da caricare.
+     * @param chunkSize il numero massimo di chiavi per ogni query.
+     * @param columns le colonne da leggere, tra quelle di {@link #CLIENT_COLUMNS}.
+     * @return una mappa che associa ogni chiave trovata al relativo record, con null nelle colonne non lette.
+     * @throws SQLException se si verifica un errore durante l'esecuzione delle query.
+     */
+    public Map<String, ClientRecord> selectClients(String table, String keyColumn, Collection<String> keys,
+                                                   int chunkSize, String... columns) throws SQLException {
+        int[] positions = clientColumns(columns);
+        // La chiave viene letta tra le colonne richieste oppure, se non ne fa parte, in aggiunta dopo di esse
+        int keyIndex = List.of(columns).indexOf(checkIdentifier(keyColumn)) + 1;
+        String projection = String.join(", ", columns);
+        if (keyIndex == 0) {
+            keyIndex = columns.length + 1;
+            projection = columns.length == 0 ? keyColumn : projection + ", " + keyColumn;
+        }
+        Map<String, ClientRecord> records = new LinkedHashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<String> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String query = "SELECT " + projection + " FROM " + checkIdentifier(table) + " WHERE " + keyColumn
+                    + " IN (" + placeholders + ")";
+
+            try (PreparedStatement stmt = this.conn.prepareStatement(query)) {
+                stmt.setFetchSize(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setString(i + 1, chunk.get(i));
+                }
+                try (Metrics.Sample ignored = Metrics.query(query);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Object[] values = new Object[columns.length];
+                        for (int i = 0; i < columns.length; i++) {
+                            values[i] = rs.getObject(i + 1);
+                        }
+                        records.put(rs.getString(keyIndex), ClientRecord.of(positions, values));
+                    }
+                }
             }
         }
 
-        return list;
+        return records;
+    }
+
+    /**
+     * Risolve la posizione nella tabella dei clienti delle colonne indicate.
+     *
+     * @param columns i nomi delle colonne.
+     * @return le posizioni delle colonne in {@link #CLIENT_COLUMNS}, nello stesso ordine di {@code columns}.
+     * @throws IllegalArgumentException se una colonna non fa parte della tabella dei clienti.
+     */
+    public static int[] clientColumns(String... columns) {
+        int[] positions = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            positions[i] = clientColumn(columns[i]);
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException("Colonna non presente in gst_clienti: " + columns[i]);
+            }
+        }
+        return positions;
     }
 
+    /**
+     * Risolve la posizione nel result set delle colonne della tabella dei clienti.
+     *
+     * @param rs il result set di una query {@code SELECT *}.
+     * @return le posizioni delle colonne, nell'ordine di {@link #CLIENT_COLUMNS}.
+     * @throws SQLException se una colonna non esiste.
+     */
+    static int[] columnIndexes(ResultSet rs) throws SQLException {
+        int[] indexes = new int[CLIENT_COLUMNS.length];
+        for (int i = 0; i < CLIENT_COLUMNS.length; i++) {
+            indexes[i] = rs.findColumn(CLIENT_COLUMNS[i]);
+        }
+        return indexes;
+    }
+
+    /**
+     * Legge tutte le colonne della riga corrente della tabella dei clienti.
+     *
+     * @param rs il result set posizionato sulla riga da leggere.
+     * @param indexes le posizioni delle colonne, nell'ordine di {@link #CLIENT_COLUMNS}.
+     * @return un array con i valori delle colonne.
+     * @throws SQLException se si verifica un errore durante la lettura.
+     */
+    private static Object[] readRow(ResultSet rs, int[] indexes) throws SQLException {
+        return ClientRecord.read(rs, indexes).toArray();
+    }
 }
@@ -0,0 +1,89 @@
+package org.example.database;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Record della tabella gst_clienti caricati in blocco prima di una generazione,
+ * indicizzati per denominazione. Permette di creare le tabelle di sostituzione senza
+ * una query per ogni documento.
+ */
+public class PrefetchedRecords {
+
+    /**
+     * Numero predefinito di denominazioni per ogni query {@code IN (...)}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final Map<String, ClientRecord> records;
+    private final int requested;
+    private final int roundTrips;
+
+    private PrefetchedRecords(Map<String, ClientRecord> records, int requested, int roundTrips) {
+        this.records = records;
+        this.requested = requested;
+        this.roundTrips = roundTrips;
+    }
+
+    /**
+     * Carica i record delle scuole indicate con query suddivise in blocchi.
+     *
+     * @param sql le operazioni sul database da usare.
+     * @param denominazioni le denominazioni delle scuole da caricare.
+     * @return i record caricati.
+     * @throws SQLException se si verifica un errore durante le query.
+     */
+    public static PrefetchedRecords load(DatabaseOperation sql, Collection<String> denominazioni) throws SQLException {
+        return load(sql, denominazioni, DatabaseOperation.CLIENT_COLUMNS);
+    }
+
+    /**
+     * Carica i record delle scuole indicate con query suddivise in blocchi, leggendo solo le colonne richieste.
+     *
+     * @param sql le operazioni sul database da usare.
+     * @param denominazioni le denominazioni delle scuole da caricare.
+     * @param columns le colonne da leggere, tra quelle di {@link DatabaseOperation#CLIENT_COLUMNS}.
+     * @return i record caricati, con null nelle colonne non lette.
+     * @throws SQLException se si verifica un errore durante le query.
+     */
+    public static PrefetchedRecords load(DatabaseOperation sql, Collection<String> denominazioni, String... columns)
+            throws SQLException {
+        Map<String, ClientRecord> records =
+                sql.selectClients("gst_clienti", "denominazione", denominazioni, DEFAULT_CHUNK_SIZE, columns);
+        int roundTrips = (int) Math.ceil(denominazioni.stream().distinct().count() / (double) DEFAULT_CHUNK_SIZE);
+        return new PrefetchedRecords(records, denominazioni.size(), roundTrips);
+    }
+
+    /**
+     * Restituisce il record della scuola indicata.
+     *
+     * @param denominazione la denominazione della scuola.
+     * @return il record, oppure null se la scuola non è presente nel database.
+     */
+    public ClientRecord get(String denominazione) {
+        return records.get(denominazione);
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Restituisce il numero di query eseguite per caricare i record.
+     *
+     * @return il numero di round trip verso il database.
+     */
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Restituisce il numero di query risparmiate rispetto a una query per documento.
+     *
+     * @return il numero di round trip evitati.
+     */
+    public int getRoundTripsSaved() {
+        return Math.max(0, requested - roundTrips);
+    }
+}
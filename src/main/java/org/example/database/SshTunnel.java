@@ -0,0 +1,130 @@
+package org.example.database;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Tunnel SSH verso il server del database.
+ * La sessione usa i keepalive per accorgersi delle connessioni cadute e, quando serve, viene riaperta con
+ * tentativi ripetuti a intervalli crescenti. La porta locale viene assegnata dinamicamente a ogni apertura.
+ */
+public class SshTunnel implements AutoCloseable {
+
+    private static final int KEEPALIVE_INTERVAL_MILLIS = 15_000;
+    private static final int KEEPALIVE_COUNT_MAX = 3;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final String sshHost;
+    private final int sshPort;
+    private final String sshUser;
+    private final String sshPrivateKey;
+    private final String sshPassphrase;
+    private final String remoteHost;
+    private final int remotePort;
+
+    private Session session;
+    private int localPort;
+
+    /**
+     * Costruttore della classe SshTunnel. Il tunnel viene aperto alla prima chiamata di {@link #ensureOpen()}.
+     *
+     * @param sshHost l'host SSH.
+     * @param sshPort la porta SSH.
+     * @param sshUser l'utente SSH.
+     * @param sshPrivateKey il percorso della chiave privata (file PEM).
+     * @param sshPassphrase la passphrase della chiave privata.
+     * @param remoteHost l'host del database, visto dal server SSH.
+     * @param remotePort la porta del database, vista dal server SSH.
+     */
+    public SshTunnel(String sshHost, int sshPort, String sshUser, String sshPrivateKey, String sshPassphrase,
+                     String remoteHost, int remotePort) {
+        this.sshHost = sshHost;
+        this.sshPort = sshPort;
+        this.sshUser = sshUser;
+        this.sshPrivateKey = sshPrivateKey;
+        this.sshPassphrase = sshPassphrase;
+        this.remoteHost = remoteHost;
+        this.remotePort = remotePort;
+    }
+
+    /**
+     * Verifica che il tunnel sia attivo e, in caso contrario, lo riapre.
+     *
+     * @return la porta locale inoltrata verso il database.
+     * @throws JSchException se il tunnel non può essere aperto dopo tutti i tentativi.
+     */
+    public synchronized int ensureOpen() throws JSchException {
+        if (session != null && session.isConnected()) {
+            return localPort;
+        }
+
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        JSchException last = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                open();
+                return localPort;
+            } catch (JSchException e) {
+                last = e;
+                System.out.println("Connessione SSH non riuscita (tentativo " + attempt + "/" + MAX_ATTEMPTS + "): "
+                        + e.getMessage());
+                disconnect();
+                if (attempt < MAX_ATTEMPTS) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                }
+            }
+        }
+        throw last;
+    }
+
+    private void open() throws JSchException {
+        // Check if the private key file exists
+        File privateKeyFile = new File(sshPrivateKey);
+        if (!privateKeyFile.exists()) {
+            throw new JSchException("Private key file does not exist: " + sshPrivateKey);
+        }
+
+        JSch jsch = new JSch();
+        jsch.addIdentity(sshPrivateKey, sshPassphrase);
+        session = jsch.getSession(sshUser, sshHost, sshPort);
+
+        // Configure the session to use only publickey authentication
+        Properties config = new Properties();
+        config.put("StrictHostKeyChecking", "no");
+        config.put("PreferredAuthentications", "publickey");
+        session.setConfig(config);
+        session.setServerAliveInterval(KEEPALIVE_INTERVAL_MILLIS);
+        session.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+
+        session.connect();
+        System.out.println("SSH Connected");
+
+        // Porta locale 0: viene assegnata una porta libera
+        localPort = session.setPortForwardingL(0, remoteHost, remotePort);
+        System.out.println("localhost:" + localPort + " -> " + remoteHost + ":" + remotePort);
+    }
+
+    private void disconnect() {
+        if (session != null) {
+            session.disconnect();
+            session = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache delle query preparate di una connessione.
+ * Ogni query viene preparata una sola volta per connessione e riutilizzata; insieme allo statement viene
+ * memorizzata la posizione delle colonne lette, risolta per nome alla prima esecuzione.
+ * La cache di una connessione va rilasciata con {@link #release(Connection)} prima di chiuderla.
+ */
+final class StatementCache {
+
+    private static final Map<Connection, StatementCache> CACHES = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final Connection conn;
+    private final Map<String, CachedStatement> statements = new ConcurrentHashMap<>();
+
+    private StatementCache(Connection conn) {
+        this.conn = conn;
+    }
+
+    /**
+     * Restituisce la cache associata alla connessione, creandola se necessario.
+     *
+     * @param conn la connessione al database.
+     * @return la cache della connessione.
+     */
+    static StatementCache forConnection(Connection conn) {
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(conn, StatementCache::new);
+        }
+    }
+
+    /**
+     * Chiude le query preparate della connessione e rimuove la relativa cache.
+     *
+     * @param conn la connessione al database.
+     */
+    static void release(Connection conn) {
+        StatementCache cache = CACHES.remove(conn);
+        if (cache == null) {
+            return;
+        }
+        for (CachedStatement statement : cache.statements.values()) {
+            try {
+                statement.stmt.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        cache.statements.clear();
+    }
+
+    /**
+     * Restituisce la query preparata per il testo SQL indicato, preparandola alla prima richiesta
+     * o se lo statement precedente è stato chiuso. La preparazione avviene sotto il lock della connessione, lo
+     * stesso delle query di {@link DatabaseOperation}: due thread che chiedono la stessa query ricevono lo stesso
+     * statement, e nessuno statement preparato resta fuori dalla cache senza essere chiuso.
+     *
+     * @param sql il testo della query.
+     * @return la query preparata.
+     * @throws SQLException se la preparazione non riesce.
+     */
+    CachedStatement prepare(String sql) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.stmt.isClosed()) {
+            return cached;
+        }
+        synchronized (conn) {
+            cached = statements.get(sql);
+            if (cached == null || cached.stmt.isClosed()) {
+                cached = new CachedStatement(sql, conn.prepareStatement(sql));
+                statements.put(sql, cached);
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Query preparata con la posizione delle colonne lette, risolta una sola volta.
+     * L'accesso va sincronizzato sull'istanza: uno statement non può essere eseguito da più thread insieme.
+     */
+    static final class CachedStatement {
+        final String sql;
+        final PreparedStatement stmt;
+        private int[] columnIndexes;
+
+        private CachedStatement(String sql, PreparedStatement stmt) {
+            this.sql = sql;
+            this.stmt = stmt;
+        }
+
+        /**
+         * Restituisce la posizione delle colonne indicate nel result set, risolvendola solo alla prima chiamata.
+         *
+         * @param rs il result set dello statement.
+         * @param columns i nomi delle colonne.
+         * @return le posizioni delle colonne, nello stesso ordine dei nomi.
+         * @throws SQLException se una colonna non esiste.
+         */
+        int[] columnIndexes(ResultSet rs, String[] columns) throws SQLException {
+            if (columnIndexes == null) {
+                int[] indexes = new int[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    indexes[i] = rs.findColumn(columns[i]);
+                }
+                columnIndexes = indexes;
+            }
+            return columnIndexes;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package org.example.engine;
+
+import org.example.database.ClientSnapshot;
+import org.example.database.DatabaseOperation;
+import org.example.database.PrefetchedRecords;
+import org.example.engine.zip.ZipArchiveSink;
+import org.example.utils.Metrics;
+import org.example.utils.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe BatchReplacer genera in un'unica esecuzione un documento per ciascuna scuola di un elenco,
+ * partendo dallo stesso template. Il lavoro viene distribuito su un pool di thread limitato e
+ * l'errore su una singola scuola non interrompe l'esecuzione.
+ * I documenti già generati in un'esecuzione precedente e i cui input non sono cambiati vengono saltati
+ * (vedi {@link BuildManifest}).
+ */
+public class BatchReplacer {
+
+    /**
+     * Pattern predefinito per il nome dei file generati.
+     */
+    public static final String DEFAULT_FILE_NAME_PATTERN = "{denominazione}.docx";
+
+    private final WordReplacer wordReplacer;
+    private int parallelism;
+    private String fileNamePattern;
+    private boolean prefetch = true;
+    private boolean incremental = true;
+    private ProgressListener progressListener = (done, total) -> { };
+
+    /**
+     * Listener dell'avanzamento di un'esecuzione in blocco.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Invocato, dal thread che ha generato il documento, ogni volta che un documento è terminato.
+         * @param done I documenti terminati, con o senza errori.
+         * @param total I documenti totali.
+         */
+        void progress(int done, int total);
+    }
+
+    /**
+     * Costruttore della classe BatchReplacer.
+     * @param wordReplacer Il WordReplacer usato per generare i singoli documenti.
+     */
+    public BatchReplacer(WordReplacer wordReplacer) {
+        this.wordReplacer = wordReplacer;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.fileNamePattern = DEFAULT_FILE_NAME_PATTERN;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Imposta il numero massimo di documenti generati contemporaneamente.
+     * @param parallelism Il numero di thread del pool (almeno 1).
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public String getFileNamePattern() {
+        return fileNamePattern;
+    }
+
+    /**
+     * Imposta il pattern del nome dei file generati. Sono supportati i segnaposto
+     * {@code {denominazione}}, {@code {n}} (numero progressivo a partire da 1) e
+     * {@code {template}} (nome del template senza estensione).
+     * @param fileNamePattern Il pattern del nome dei file.
+     */
+    public void setFileNamePattern(String fileNamePattern) {
+        this.fileNamePattern = fileNamePattern;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Indica se caricare in blocco i record delle scuole prima della generazione,
+     * invece di eseguire una query per ogni documento.
+     * @param prefetch true per caricare i record in blocco.
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Indica se saltare i documenti i cui input (template e valori di sostituzione) non sono cambiati
+     * dall'esecuzione precedente nella stessa cartella, secondo il {@link BuildManifest}.
+     * Con false tutti i documenti vengono rigenerati; il manifest viene comunque aggiornato.
+     * I documenti dei template con righe ripetute (vedi {@link TableRows}) vengono sempre rigenerati.
+     * @param incremental true per la rigenerazione incrementale.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Imposta il listener dell'avanzamento.
+     * @param progressListener Il listener da notificare a ogni documento terminato.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Genera un documento per ogni scuola presente nella tabella gst_clienti (o nel suo snapshot locale, se impostato).
+     * @param templatePath Il percorso del file template.
+     * @param destinationPath La cartella di destinazione.
+     * @return Il riepilogo dell'esecuzione.
+     */
+    public BatchResult replaceAll(String templatePath, String destinationPath) {
+        ClientSnapshot snapshot = wordReplacer.getSnapshot();
+        if (snapshot != null) {
+            return replace(templatePath, snapshot.names(), destinationPath);
+        }
+        // Solo le denominazioni, lette in streaming direttamente nell'elenco con una connessione dedicata: con MySQL
+        // la lettura in streaming occupa la connessione fino alla fine
+        List<String> scuole = new ArrayList<>();
+        try (Connection connection = wordReplacer.borrowConnection()) {
+            new DatabaseOperation(connection).streamColumn("gst_clienti", "denominazione", 500, scuole::addAll);
+        } catch (SQLException e) {
+            System.out.println("Lettura dell'elenco delle scuole non riuscita: " + e.getMessage());
+        }
+        return replace(templatePath, scuole, destinationPath);
+    }
+
+    /**
+     * Genera un documento per ciascuna scuola dell'elenco.
+     * @param templatePath Il percorso del file template.
+     * @param scuole Le denominazioni delle scuole.
+     * @param destinationPath La cartella di destinazione.
+     * @return Il riepilogo dell'esecuzione, con gli errori per singola scuola. Se il thread chiamante viene
+     * interrotto i documenti non ancora generati vengono annullati e il riepilogo risulta annullato.
+     */
+    public BatchResult replace(String templatePath, List<String> scuole, String destinationPath) {
+        return replace(templatePath, scuole, destinationPath, null);
+    }
+
+    /**
+     * Genera un documento per ciascuna scuola dell'elenco e lo aggiunge come voce di un unico archivio ZIP,
+     * senza scrivere file intermedi su disco. La compressione delle voci avviene in parallelo nei thread del pool.
+     * La rigenerazione incrementale non si applica: l'archivio contiene sempre tutti i documenti.
+     * @param templatePath Il percorso del file template.
+     * @param scuole Le denominazioni delle scuole.
+     * @param archive L'archivio di destinazione, che il chiamante deve chiudere al termine.
+     * @return Il riepilogo dell'esecuzione, con gli errori per singola scuola.
+     */
+    public BatchResult replace(String templatePath, List<String> scuole, ZipArchiveSink archive) {
+        return replace(templatePath, scuole, null, archive);
+    }
+
+    private BatchResult replace(String templatePath, List<String> scuole, String destinationPath, ZipArchiveSink archive) {
+        long start = System.nanoTime();
+        Metrics.Run run = Metrics.run(templatePath);
+        String templateName = baseName(new File(templatePath).getName());
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        boolean cancelled = false;
+
+        BuildManifest manifest = null;
+        try {
+            if (archive == null) {
+                manifest = BuildManifest.open(Path.of(destinationPath), templatePath, wordReplacer.getEngine().name());
+            }
+        } catch (IOException e) {
+            System.out.println("Manifest non disponibile, tutti i documenti verranno generati: " + e.getMessage());
+        }
+        BuildManifest build = manifest;
+
+        // Campi del template, letti una sola volta: le colonne da leggere dal database e le righe ripetute.
+        // Le righe ripetute dipendono da altri record oltre a quello della scuola, che il manifest non considera.
+        ColumnMapping fields = ColumnMapping.ALL;
+        boolean repeating = false;
+        try {
+            fields = wordReplacer.getColumnMapping(templatePath);
+            repeating = wordReplacer.hasRepeatingRows(templatePath);
+        } catch (IOException e) {
+            // Il template verrà letto di nuovo per ogni documento, che riporterà l'errore
+        }
+        ColumnMapping mapping = fields;
+        boolean skipUpToDate = incremental && !repeating;
+
+        // Caricamento in blocco dei record: nessuna query durante la generazione dei singoli documenti.
+        // Con uno snapshot locale i record sono già disponibili senza interrogare il database.
+        boolean fromSnapshot = wordReplacer.getSnapshot() != null;
+        PrefetchedRecords records = null;
+        if (prefetch && !fromSnapshot) {
+            try (Connection connection = wordReplacer.borrowConnection()) {
+                records = PrefetchedRecords.load(new DatabaseOperation(connection), scuole, mapping.getColumns());
+            } catch (SQLException e) {
+                System.out.println("Caricamento in blocco non riuscito, una query per documento: " + e.getMessage());
+            }
+        }
+        PrefetchedRecords prefetched = records;
+
+        // Nomi dei file già assegnati: le scuole con lo stesso nome una volta ripulito non si sovrascrivono.
+        // Nell'archivio ZIP i duplicati vengono già distinti da ZipArchiveSink.
+        Set<String> fileNames = new HashSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, scuole.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>(scuole.size());
+            for (int i = 0; i < scuole.size(); i++) {
+                String scuola = scuole.get(i);
+                String fileName = fileNameFor(scuola, i + 1, templateName);
+                if (archive == null) {
+                    fileName = uniqueFileName(fileName, fileNames);
+                }
+                File destinationFile = archive == null ? new File(destinationPath, fileName) : null;
+                String entryName = fileName;
+                futures.add(executor.submit(() -> {
+                    try {
+                        Map<String, String> replace = prefetched != null
+                                ? mapping.replace(scuola, prefetched.get(scuola))
+                                : wordReplacer.createReplace(scuola, mapping);
+                        TableRows rows = wordReplacer.tableRows(scuola);
+                        String hash = build != null ? build.hash(replace) : null;
+                        if (archive != null) {
+                            archive.add(entryName, out -> wordReplacer.fill(templatePath, replace, rows, out));
+                        } else if (skipUpToDate && build != null && build.isUpToDate(destinationFile, hash)) {
+                            skipped.incrementAndGet();
+                        } else {
+                            wordReplacer.fill(templatePath, replace, rows, destinationFile);
+                            if (build != null) {
+                                build.record(destinationFile, hash);
+                            }
+                        }
+                        succeeded.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        if (build != null) {
+                            build.forget(destinationFile);
+                        }
+                        failures.put(scuola, String.valueOf(e.getMessage()));
+                    } finally {
+                        progressListener.progress(completed.incrementAndGet(), scuole.size());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    // Esecuzione annullata: i documenti non ancora iniziati non vengono generati
+                    for (Future<?> pending : futures) {
+                        pending.cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                    break;
+                } catch (Exception e) {
+                    // Gli errori dei singoli documenti sono già registrati in failures
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (build != null) {
+                try {
+                    build.save();
+                } catch (IOException e) {
+                    System.out.println("Salvataggio del manifest non riuscito: " + e.getMessage());
+                }
+            }
+        }
+
+        BatchResult result = new BatchResult(scuole.size(), succeeded.get(), failures, System.nanoTime() - start);
+        result.setMetrics(run.finish(scuole.size(), failures.size()));
+        result.setCancelled(cancelled);
+        result.setSkipped(skipped.get());
+        if (fromSnapshot) {
+            result.setRoundTrips(0, scuole.size());
+        } else if (prefetched != null) {
+            result.setRoundTrips(prefetched.getRoundTrips(), prefetched.getRoundTripsSaved());
+        } else {
+            result.setRoundTrips(scuole.size(), 0);
+        }
+        return result;
+    }
+
+    /**
+     * Costruisce il nome del file di destinazione applicando il pattern configurato.
+     * @param scuola La denominazione della scuola.
+     * @param n Il numero progressivo del documento.
+     * @param templateName Il nome del template senza estensione.
+     * @return Il nome del file, privo di caratteri non ammessi dal file system.
+     */
+    String fileNameFor(String scuola, int n, String templateName) {
+        String name = fileNamePattern
+                .replace("{denominazione}", scuola)
+                .replace("{n}", String.valueOf(n))
+                .replace("{template}", templateName);
+        return StringUtils.safeFileName(name);
+    }
+
+    /**
+     * Restituisce un nome di file non ancora assegnato nell'esecuzione, aggiungendo se necessario un numero
+     * progressivo come nell'archivio ZIP, ad esempio {@code Scuola (2).docx}. Il confronto ignora maiuscole e
+     * minuscole, come il file system di Windows. I nomi vengono assegnati nell'ordine dell'elenco, quindi una stessa
+     * scuola riceve lo stesso nome a ogni esecuzione e la sua voce del manifest resta valida.
+     * @param fileName Il nome costruito dal pattern.
+     * @param assigned I nomi già assegnati, in minuscolo; il nome restituito viene aggiunto.
+     * @return Il nome da usare.
+     */
+    static String uniqueFileName(String fileName, Set<String> assigned) {
+        String candidate = fileName;
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        for (int n = 2; !assigned.add(candidate.toLowerCase(Locale.ROOT)); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
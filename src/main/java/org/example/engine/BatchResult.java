@@ -0,0 +1,146 @@
+package org.example.engine;
+
+import org.example.utils.Metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Riepilogo di un'esecuzione in blocco di {@link BatchReplacer}.
+ * Contiene il numero di documenti generati, gli errori per singola scuola e il throughput complessivo.
+ */
+public class BatchResult {
+
+    private final int total;
+    private final int succeeded;
+    private final Map<String, String> failures;
+    private final long elapsedNanos;
+    private int roundTrips;
+    private int roundTripsSaved;
+    private boolean cancelled;
+    private int skipped;
+    private Metrics.Snapshot metrics;
+
+    /**
+     * Costruttore della classe BatchResult.
+     * @param total Il numero di documenti richiesti.
+     * @param succeeded Il numero di documenti generati correttamente.
+     * @param failures Gli errori, indicizzati per denominazione della scuola.
+     * @param elapsedNanos La durata dell'esecuzione in nanosecondi.
+     */
+    public BatchResult(int total, int succeeded, Map<String, String> failures, long elapsedNanos) {
+        this.total = total;
+        this.succeeded = succeeded;
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Restituisce gli errori avvenuti durante la generazione.
+     * @return Una mappa che associa la denominazione della scuola al messaggio di errore.
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    public int getRoundTripsSaved() {
+        return roundTripsSaved;
+    }
+
+    /**
+     * Registra le query al database eseguite per recuperare i dati delle scuole.
+     * @param roundTrips Il numero di query eseguite.
+     * @param roundTripsSaved Il numero di query risparmiate grazie al caricamento in blocco.
+     */
+    public void setRoundTrips(int roundTrips, int roundTripsSaved) {
+        this.roundTrips = roundTrips;
+        this.roundTripsSaved = roundTripsSaved;
+    }
+
+    /**
+     * Indica se l'esecuzione è stata annullata prima di generare tutti i documenti.
+     * @return true se l'esecuzione è stata annullata.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Restituisce il numero di documenti già aggiornati secondo il {@link BuildManifest}, non rigenerati.
+     * Sono compresi tra i documenti riusciti.
+     * @return Il numero di documenti saltati.
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+
+    /**
+     * Restituisce le metriche per fase raccolte durante l'esecuzione, da stampare con
+     * {@link Metrics.Snapshot#summary()}.
+     * @return Le metriche dell'esecuzione, oppure null se non sono state registrate.
+     */
+    public Metrics.Snapshot getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics.Snapshot metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Calcola il numero di documenti generati al secondo.
+     * @return Il throughput dell'esecuzione.
+     */
+    public double getThroughput() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return succeeded / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Generati %d/%d documenti in %.2f s (%.1f doc/s)",
+                succeeded, total, elapsedNanos / 1_000_000_000.0, getThroughput()));
+        if (skipped > 0) {
+            sb.append(String.format(", di cui %d invariati e non riscritti", skipped));
+        }
+        if (cancelled) {
+            sb.append(" (annullato)");
+        }
+        sb.append(String.format("\nQuery al database: %d (risparmiate %d)", roundTrips, roundTripsSaved));
+        if (!failures.isEmpty()) {
+            sb.append("\nErrori (").append(failures.size()).append("):");
+            for (Map.Entry<String, String> entry : failures.entrySet()) {
+                sb.append("\n - ").append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.engine;
+
+import java.util.*;
+
+/**
+ * Raccoglie il testo compreso tra {@code w:bookmarkStart} e il {@code w:bookmarkEnd} con lo stesso id,
+ * a partire dalla sequenza di elementi di un documento Word letta in un'unica passata.
+ * Chi legge il documento segnala inizio e fine dei segnalibri, il testo dei {@code w:t} e la fine dei paragrafi;
+ * il collector tiene traccia dei segnalibri aperti, anche sovrapposti o estesi su più paragrafi.
+ * Il testo di un segnalibro esteso su più paragrafi viene unito con un ritorno a capo.
+ */
+public class BookmarkCollector {
+
+    private final Set<String> wanted;
+    private final Map<String, String> values = new LinkedHashMap<>();
+    private final Map<String, Open> open = new HashMap<>();
+    private int remaining;
+
+    /**
+     * Segnalibro aperto, di cui si sta accumulando il testo.
+     */
+    private static final class Open {
+        final String name;
+        final StringBuilder text = new StringBuilder();
+        boolean newParagraph;
+
+        Open(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Costruttore della classe BookmarkCollector.
+     * @param bookmarkNames I nomi dei segnalibri da raccogliere; se vuoto vengono raccolti tutti i segnalibri.
+     */
+    public BookmarkCollector(Collection<String> bookmarkNames) {
+        this.wanted = bookmarkNames.isEmpty() ? null : new HashSet<>(bookmarkNames);
+        for (String name : bookmarkNames) {
+            values.put(name, null);
+        }
+        this.remaining = values.size();
+    }
+
+    /**
+     * Segnala l'inizio di un segnalibro.
+     * @param id L'identificativo che lega l'inizio alla fine del segnalibro.
+     * @param name Il nome del segnalibro.
+     */
+    public void bookmarkStart(String id, String name) {
+        if (id == null || name == null || (wanted != null && !wanted.contains(name))) {
+            return;
+        }
+        open.put(id, new Open(name));
+    }
+
+    /**
+     * Segnala la fine di un segnalibro e ne registra il testo.
+     * @param id L'identificativo del segnalibro.
+     */
+    public void bookmarkEnd(String id) {
+        Open bookmark = open.remove(id);
+        if (bookmark == null) {
+            return;
+        }
+        if (values.put(bookmark.name, bookmark.text.toString()) == null && wanted != null) {
+            remaining--;
+        }
+    }
+
+    /**
+     * Segnala del testo del documento, che viene aggiunto a tutti i segnalibri aperti.
+     * @param text Il testo.
+     */
+    public void text(CharSequence text) {
+        if (open.isEmpty() || text.isEmpty()) {
+            return;
+        }
+        for (Open bookmark : open.values()) {
+            if (bookmark.newParagraph) {
+                if (!bookmark.text.isEmpty()) {
+                    bookmark.text.append('\n');
+                }
+                bookmark.newParagraph = false;
+            }
+            bookmark.text.append(text);
+        }
+    }
+
+    /**
+     * Segnala la fine di un paragrafo.
+     */
+    public void paragraphEnd() {
+        for (Open bookmark : open.values()) {
+            bookmark.newParagraph = true;
+        }
+    }
+
+    /**
+     * Indica se tutti i segnalibri richiesti sono stati trovati, così che la lettura possa fermarsi.
+     * @return true se sono stati indicati dei nomi e tutti i relativi segnalibri sono stati chiusi.
+     */
+    public boolean isComplete() {
+        return wanted != null && remaining == 0;
+    }
+
+    /**
+     * Restituisce il testo dei segnalibri trovati.
+     * @return Una mappa che associa i nomi dei segnalibri ai rispettivi testi, nell'ordine dei nomi richiesti;
+     * i segnalibri non trovati hanno valore null.
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+}
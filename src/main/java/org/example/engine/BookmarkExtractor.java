@@ -0,0 +1,255 @@
+package org.example.engine;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Estrazione del testo dei segnalibri da molti documenti Word, ad esempio dai moduli restituiti dalle scuole.
+ * Ogni documento viene letto con un reader StAX in un'unica passata su {@code word/document.xml} e poi sulle
+ * intestazioni e sui piè di pagina, nello stesso ordine di {@link DocumentWalker}, senza caricarlo con Apache POI;
+ * la lettura si ferma appena tutti i segnalibri richiesti sono stati trovati.
+ * L'estrazione da una cartella avviene in parallelo e i risultati vengono passati a un {@link Handler}, ad esempio
+ * un {@link BookmarkSink}, man mano che i documenti sono pronti, con un numero limitato di documenti in lavorazione.
+ */
+public class BookmarkExtractor {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String MARKUP_COMPATIBILITY_NS = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+
+    /**
+     * Destinazione dei segnalibri estratti da una cartella. Viene invocata da più thread.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Riceve i segnalibri di un documento.
+         * @param document Il percorso del documento, relativo alla cartella esaminata.
+         * @param values I segnalibri del documento e i rispettivi testi.
+         * @throws IOException Se i valori non possono essere registrati; il documento viene segnalato come fallito.
+         */
+        void accept(String document, Map<String, String> values) throws IOException;
+    }
+
+    private final XMLInputFactory inputFactory;
+    private final List<String> bookmarkNames;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Costruttore della classe BookmarkExtractor.
+     * @param bookmarkNames I nomi dei segnalibri da estrarre; se vuoto vengono estratti tutti i segnalibri.
+     */
+    public BookmarkExtractor(Collection<String> bookmarkNames) {
+        this.bookmarkNames = List.copyOf(bookmarkNames);
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Imposta il numero massimo di documenti letti contemporaneamente.
+     * @param parallelism Il numero di thread del pool (almeno 1).
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public List<String> getBookmarkNames() {
+        return bookmarkNames;
+    }
+
+    /**
+     * Estrae il testo dei segnalibri da un documento.
+     * @param document Il percorso del documento (.docx).
+     * @return Una mappa che associa i nomi dei segnalibri ai rispettivi testi; i segnalibri richiesti ma non trovati
+     * hanno valore null.
+     * @throws IOException Se il documento non può essere letto.
+     */
+    public Map<String, String> extract(Path document) throws IOException {
+        BookmarkCollector collector = new BookmarkCollector(bookmarkNames);
+        try (ZipFile zip = new ZipFile(document.toFile())) {
+            ZipEntry entry = zip.getEntry("word/document.xml");
+            if (entry == null) {
+                throw new IOException(document + " non è un documento Word");
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                collect(in, collector);
+            }
+            // Intestazioni e piè di pagina, le parti di testo scelte come in StreamingFillEngine
+            List<String> parts = zip.stream()
+                    .map(ZipEntry::getName)
+                    .filter(name -> StreamingFillEngine.isTextPart(name) && !name.equals(entry.getName()))
+                    .sorted(Comparator.comparing((String name) -> name.startsWith("word/footer"))
+                            .thenComparing(Comparator.naturalOrder()))
+                    .toList();
+            for (String part : parts) {
+                if (collector.isComplete()) {
+                    break;
+                }
+                try (InputStream in = zip.getInputStream(zip.getEntry(part))) {
+                    collect(in, collector);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Errore durante la lettura di " + document + ": " + e.getMessage(), e);
+        }
+        return collector.getValues();
+    }
+
+    private void collect(InputStream in, BookmarkCollector collector) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in, "UTF-8");
+        try {
+            collect(reader, collector);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Legge gli elementi di una parte del documento e li passa al collector, fermandosi appena il collector
+     * ha trovato tutti i segnalibri richiesti.
+     * Il contenuto alternativo di compatibilità ({@code mc:Fallback}) viene saltato, altrimenti il testo
+     * delle caselle di testo verrebbe raccolto due volte.
+     * @param reader Il reader posizionato all'inizio della parte (non viene chiuso).
+     * @param collector Il collector dei segnalibri.
+     * @throws XMLStreamException Se la parte non è un XML valido.
+     */
+    static void collect(XMLStreamReader reader, BookmarkCollector collector) throws XMLStreamException {
+        boolean inText = false;
+        int skipDepth = 0;
+        // L'evento corrente va gestito prima di avanzare: il reader di un frammento XmlBeans, come il paragrafo
+        // letto da BookmarkVisitor, parte già posizionato sul primo elemento
+        int event = reader.getEventType();
+        while (!collector.isComplete()) {
+            if (skipDepth > 0) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    skipDepth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    skipDepth--;
+                }
+            } else {
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        String ns = reader.getNamespaceURI();
+                        String name = reader.getLocalName();
+                        if (MARKUP_COMPATIBILITY_NS.equals(ns) && name.equals("Fallback")) {
+                            skipDepth = 1;
+                        } else if (WORDML_NS.equals(ns)) {
+                            switch (name) {
+                                case "bookmarkStart" -> collector.bookmarkStart(
+                                        reader.getAttributeValue(WORDML_NS, "id"),
+                                        reader.getAttributeValue(WORDML_NS, "name"));
+                                case "bookmarkEnd" -> collector.bookmarkEnd(reader.getAttributeValue(WORDML_NS, "id"));
+                                case "t" -> inText = true;
+                                case "tab" -> collector.text("\t");
+                                case "br", "cr" -> collector.text("\n");
+                                default -> { }
+                            }
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> {
+                        if (inText) {
+                            collector.text(reader.getText());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        if (WORDML_NS.equals(reader.getNamespaceURI())) {
+                            if (reader.getLocalName().equals("t")) {
+                                inText = false;
+                            } else if (reader.getLocalName().equals("p")) {
+                                collector.paragraphEnd();
+                            }
+                        }
+                    }
+                    default -> { }
+                }
+            }
+            if (!reader.hasNext()) {
+                break;
+            }
+            event = reader.next();
+        }
+    }
+
+    /**
+     * Estrae i segnalibri da tutti i documenti .docx di una cartella e delle sue sottocartelle.
+     * I file temporanei di Word ({@code ~$...}) vengono ignorati. I risultati arrivano all'handler nell'ordine in cui
+     * i documenti vengono completati; l'errore su un singolo documento non interrompe l'estrazione.
+     * @param root La cartella da esaminare.
+     * @param handler La destinazione dei risultati, ad esempio {@code sink::write}.
+     * @return Il riepilogo dell'estrazione, con gli errori indicizzati per percorso del documento.
+     * @throws IOException Se la cartella non può essere letta.
+     */
+    public BatchResult extractAll(Path root, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+
+        // Al massimo due documenti in attesa per thread: la visita della cartella procede al ritmo della lettura
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (Stream<Path> files = Files.walk(root)) {
+            Iterator<Path> iterator = files
+                    .filter(Files::isRegularFile)
+                    .filter(BookmarkExtractor::isDocx)
+                    .iterator();
+            while (iterator.hasNext()) {
+                Path document = iterator.next();
+                String name = root.relativize(document).toString();
+                total.incrementAndGet();
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        Map<String, String> values = extract(document);
+                        handler.accept(name, values);
+                        succeeded.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        failures.put(name, String.valueOf(e.getMessage()));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return new BatchResult(total.get(), succeeded.get(), failures, System.nanoTime() - start);
+    }
+
+    private static boolean isDocx(Path path) {
+        String name = path.getFileName().toString();
+        return name.toLowerCase(Locale.ROOT).endsWith(".docx") && !name.startsWith("~$");
+    }
+}
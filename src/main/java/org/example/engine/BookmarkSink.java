@@ -0,0 +1,127 @@
+package org.example.engine;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.example.utils.StringUtils.csvQuote;
+import static org.example.utils.StringUtils.jsonQuote;
+
+/**
+ * Destinazione dei segnalibri estratti da {@link BookmarkExtractor}.
+ * Ogni documento viene scritto appena pronto, così che in memoria non restino i risultati di tutta l'estrazione.
+ * I metodi possono essere invocati da più thread.
+ */
+public abstract class BookmarkSink implements Closeable {
+
+    protected final Writer writer;
+
+    protected BookmarkSink(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Crea il sink adatto all'estensione del file: JSON Lines per {@code .jsonl} e {@code .json}, CSV altrimenti.
+     * @param path Il file da scrivere (viene sovrascritto).
+     * @param bookmarkNames I nomi dei segnalibri estratti; se vuoto il CSV ha una riga per segnalibro.
+     * @return Il sink.
+     * @throws IOException Se il file non può essere creato.
+     */
+    public static BookmarkSink forPath(Path path, List<String> bookmarkNames) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return new JsonLines(writer);
+        }
+        return new Csv(writer, bookmarkNames);
+    }
+
+    /**
+     * Scrive i segnalibri di un documento.
+     * @param document Il nome del documento.
+     * @param values I segnalibri del documento e i rispettivi testi.
+     * @throws IOException Se la scrittura non riesce.
+     */
+    public abstract void write(String document, Map<String, String> values) throws IOException;
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * CSV con una colonna per segnalibro, oppure, se i segnalibri non sono noti in anticipo,
+     * con una riga per ogni segnalibro di ogni documento.
+     */
+    private static final class Csv extends BookmarkSink {
+
+        private final List<String> columns;
+
+        Csv(Writer writer, List<String> columns) throws IOException {
+            super(writer);
+            this.columns = List.copyOf(columns);
+            StringBuilder header = new StringBuilder("documento");
+            if (columns.isEmpty()) {
+                header.append(",segnalibro,testo");
+            } else {
+                for (String column : columns) {
+                    header.append(',').append(csvQuote(column));
+                }
+            }
+            writer.write(header.append('\n').toString());
+        }
+
+        @Override
+        public void write(String document, Map<String, String> values) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            if (columns.isEmpty()) {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    sb.append(csvQuote(document)).append(',').append(csvQuote(entry.getKey())).append(',')
+                            .append(csvQuote(entry.getValue())).append('\n');
+                }
+            } else {
+                sb.append(csvQuote(document));
+                for (String column : columns) {
+                    sb.append(',').append(csvQuote(values.get(column)));
+                }
+                sb.append('\n');
+            }
+            synchronized (this) {
+                writer.write(sb.toString());
+            }
+        }
+    }
+
+    /**
+     * Un oggetto JSON per documento, con il nome del documento e i segnalibri.
+     */
+    private static final class JsonLines extends BookmarkSink {
+
+        JsonLines(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        public void write(String document, Map<String, String> values) throws IOException {
+            StringBuilder sb = new StringBuilder("{\"documento\":").append(jsonQuote(document))
+                    .append(",\"segnalibri\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                sb.append(first ? "" : ",").append(jsonQuote(entry.getKey())).append(':')
+                        .append(entry.getValue() == null ? "null" : jsonQuote(entry.getValue()));
+                first = false;
+            }
+            sb.append("}}\n");
+            synchronized (this) {
+                writer.write(sb.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.engine;
+
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Visitor che raccoglie il testo dei segnalibri durante la visita di un documento con {@link DocumentWalker},
+ * con le stesse regole di {@link BookmarkExtractor}: l'XML di ogni paragrafo viene passato a un
+ * {@link BookmarkCollector}, che tiene traccia anche dei segnalibri estesi su più paragrafi o parti.
+ * La visita si ferma appena sono stati trovati tutti i segnalibri richiesti.
+ */
+public class BookmarkVisitor implements DocumentVisitor {
+
+    private final BookmarkCollector collector;
+
+    /**
+     * Costruttore della classe BookmarkVisitor.
+     * @param bookmarkNames I nomi dei segnalibri da raccogliere; se vuoto vengono raccolti tutti i segnalibri.
+     */
+    public BookmarkVisitor(Collection<String> bookmarkNames) {
+        this.collector = new BookmarkCollector(bookmarkNames);
+    }
+
+    @Override
+    public void paragraph(XWPFParagraph paragraph) throws IOException {
+        try {
+            XMLStreamReader reader = paragraph.getCTP().newXMLStreamReader();
+            BookmarkExtractor.collect(reader, collector);
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Errore durante la lettura dei segnalibri: " + e.getMessage(), e);
+        }
+        collector.paragraphEnd();
+    }
+
+    @Override
+    public void textBoxParagraph(XWPFParagraph paragraph) {
+        // Il testo delle caselle è già stato letto con l'XML del paragrafo che le contiene
+    }
+
+    @Override
+    public void bookmarkStart(String id, String name) {
+        collector.bookmarkStart(id, name);
+    }
+
+    @Override
+    public void bookmarkEnd(String id) {
+        collector.bookmarkEnd(id);
+    }
+
+    @Override
+    public boolean isDone() {
+        return collector.isComplete();
+    }
+
+    /**
+     * Restituisce il testo dei segnalibri trovati.
+     * @return Una mappa che associa i nomi dei segnalibri ai rispettivi testi, nell'ordine dei nomi richiesti;
+     * i segnalibri non trovati hanno valore null.
+     */
+    public Map<String, String> getValues() {
+        return collector.getValues();
+    }
+}
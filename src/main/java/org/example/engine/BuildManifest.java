@@ -0,0 +1,178 @@
+package org.example.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest di una cartella di documenti generati, per la rigenerazione incrementale.
+ * Per ogni file generato registra un hash SHA-256 degli input (contenuto del template, motore di generazione e
+ * valori di sostituzione) e la dimensione del file: rieseguendo la generazione, i documenti con lo stesso hash
+ * e ancora presenti su disco vengono saltati senza essere riscritti.
+ * <p>
+ * Il manifest è un file di testo salvato accanto alla cartella di destinazione ({@code out/} → {@code out.manifest}),
+ * con una riga per documento: hash, dimensione e nome del file separati da tabulazioni.
+ * Le voci dei documenti non generati nell'esecuzione corrente vengono mantenute.
+ */
+public class BuildManifest {
+
+    private static final String HEADER = "# manifest 1";
+
+    private final Path path;
+    private final byte[] inputsDigest;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Voce del manifest: hash degli input e dimensione del file generato.
+     */
+    private record Entry(String hash, long size) {
+    }
+
+    private BuildManifest(Path path, byte[] inputsDigest) {
+        this.path = path;
+        this.inputsDigest = inputsDigest;
+    }
+
+    /**
+     * Restituisce il percorso del manifest di una cartella di destinazione.
+     * @param destination La cartella di destinazione.
+     * @return Il file {@code <cartella>.manifest} nella cartella superiore.
+     */
+    public static Path pathFor(Path destination) {
+        Path absolute = destination.toAbsolutePath().normalize();
+        Path name = absolute.getFileName();
+        return name == null ? absolute.resolve(".manifest") : absolute.resolveSibling(name + ".manifest");
+    }
+
+    /**
+     * Apre il manifest di una cartella di destinazione per una generazione dal template indicato.
+     * Un manifest assente, illeggibile o di un formato diverso viene ignorato: tutti i documenti saranno generati.
+     * @param destination La cartella di destinazione.
+     * @param templatePath Il percorso del template.
+     * @param engine Il nome del motore di generazione, che fa parte degli input di ogni documento.
+     * @return Il manifest.
+     * @throws IOException Se il template non può essere letto.
+     */
+    public static BuildManifest open(Path destination, String templatePath, String engine) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(Path.of(templatePath))) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        digest.update(engine.getBytes(StandardCharsets.UTF_8));
+
+        BuildManifest manifest = new BuildManifest(pathFor(destination), digest.digest());
+        manifest.load();
+        return manifest;
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    entries.put(fields[2], new Entry(fields[0], Long.parseLong(fields[1])));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Manifest " + path + " ignorato: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Calcola l'hash degli input di un documento. L'ordine dei valori non influisce sul risultato.
+     * @param values I segnaposto e i valori di sostituzione del documento.
+     * @return L'hash in esadecimale.
+     */
+    public String hash(Map<String, String> values) {
+        MessageDigest digest = sha256();
+        digest.update(inputsDigest);
+        for (Map.Entry<String, String> value : new TreeMap<>(values).entrySet()) {
+            digest.update((byte) 0);
+            digest.update(value.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 1);
+            digest.update(String.valueOf(value.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Indica se un documento è già aggiornato: il manifest ha lo stesso hash e il file esiste con la dimensione registrata.
+     * @param file Il file di destinazione.
+     * @param hash L'hash degli input del documento.
+     * @return true se il documento può essere saltato.
+     */
+    public boolean isUpToDate(File file, String hash) {
+        Entry entry = entries.get(file.getName());
+        return entry != null && entry.hash.equals(hash) && file.isFile() && file.length() == entry.size;
+    }
+
+    /**
+     * Registra un documento appena generato.
+     * @param file Il file generato.
+     * @param hash L'hash degli input del documento.
+     */
+    public void record(File file, String hash) {
+        entries.put(file.getName(), new Entry(hash, file.length()));
+    }
+
+    /**
+     * Rimuove la voce di un documento, ad esempio perché la generazione non è riuscita.
+     * @param file Il file di destinazione.
+     */
+    public void forget(File file) {
+        entries.remove(file.getName());
+    }
+
+    /**
+     * Salva il manifest, scrivendo un file temporaneo che poi sostituisce quello esistente.
+     * @throws IOException Se il manifest non può essere scritto.
+     */
+    public void save() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                writer.write(entry.getValue().hash + "\t" + entry.getValue().size + "\t" + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
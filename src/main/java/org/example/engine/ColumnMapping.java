@@ -0,0 +1,123 @@
+package org.example.engine;
+
+import org.example.database.ClientRecord;
+import org.example.database.DatabaseOperation;
+import org.example.utils.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Associazione tra i segnaposto di un template e le colonne della tabella gst_clienti: ogni colonna è disponibile
+ * come {@code {{colonna}}}, con lo stesso nome di {@link DatabaseOperation#CLIENT_COLUMNS}.
+ * La posizione di ogni colonna viene risolta una sola volta, alla creazione, così che dal database vengano lette
+ * solo le colonne usate dal template e le tabelle di sostituzione si costruiscano senza cercare i nomi per ogni
+ * record.
+ */
+public final class ColumnMapping {
+
+    /**
+     * Tutte le colonne della tabella, per le sorgenti che non conoscono il template.
+     */
+    public static final ColumnMapping ALL;
+
+    static {
+        List<String> placeholders = new ArrayList<>();
+        for (String column : DatabaseOperation.CLIENT_COLUMNS) {
+            placeholders.add(RecordSource.placeholder(column));
+        }
+        ALL = forPlaceholders(placeholders);
+    }
+
+    private final String[] placeholders;
+    private final String[] columns;
+    private final int[] positions;
+
+    private ColumnMapping(String[] placeholders, String[] columns, int[] positions) {
+        this.placeholders = placeholders;
+        this.columns = columns;
+        this.positions = positions;
+    }
+
+    /**
+     * Crea l'associazione per i segnaposto di un template. I segnaposto che non corrispondono a una colonna vengono
+     * ignorati.
+     * @param templatePlaceholders I segnaposto del template, comprensivi delle parentesi graffe.
+     * @return L'associazione, con le colonne nell'ordine della tabella.
+     */
+    public static ColumnMapping forPlaceholders(Collection<String> templatePlaceholders) {
+        Set<String> used = Set.copyOf(templatePlaceholders);
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < DatabaseOperation.CLIENT_COLUMNS.length; i++) {
+            if (used.contains(RecordSource.placeholder(DatabaseOperation.CLIENT_COLUMNS[i]))) {
+                found.add(i);
+            }
+        }
+        String[] placeholders = new String[found.size()];
+        String[] columns = new String[found.size()];
+        int[] positions = new int[found.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = found.get(i);
+            columns[i] = DatabaseOperation.CLIENT_COLUMNS[positions[i]];
+            placeholders[i] = RecordSource.placeholder(columns[i]);
+        }
+        return new ColumnMapping(placeholders, columns, positions);
+    }
+
+    /**
+     * Restituisce le colonne da leggere dal database.
+     * @return I nomi delle colonne, nell'ordine della tabella.
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Restituisce i segnaposto valorizzati da {@link #replace(String, ClientRecord)}.
+     * @return I segnaposto, nello stesso ordine di {@link #getColumns()}.
+     */
+    public List<String> getPlaceholders() {
+        return List.of(placeholders);
+    }
+
+    /**
+     * Indica se il template non usa alcuna colonna, e quindi non serve leggere il database.
+     * @return true se nessun segnaposto corrisponde a una colonna.
+     */
+    public boolean isEmpty() {
+        return positions.length == 0;
+    }
+
+    /**
+     * Crea la tabella di sostituzione di un record. La denominazione è quella della scuola richiesta e l'indirizzo
+     * ha l'iniziale maiuscola; le altre colonne sono riportate come sono, con i valori null sostituiti da una
+     * stringa vuota.
+     * @param scuola La denominazione della scuola.
+     * @param client Il record della scuola, oppure null se la scuola non è presente nel database.
+     * @return Un hashtable con i segnaposto e i valori da sostituire, vuoto se il record è null.
+     */
+    public Hashtable<String, String> replace(String scuola, ClientRecord client) {
+        Hashtable<String, String> replace = new Hashtable<>();
+        if (client == null) {
+            return replace;
+        }
+        for (int i = 0; i < positions.length; i++) {
+            replace.put(placeholders[i], value(scuola, client, positions[i]));
+        }
+        return replace;
+    }
+
+    private static String value(String scuola, ClientRecord client, int position) {
+        return switch (DatabaseOperation.CLIENT_COLUMNS[position]) {
+            case "denominazione" -> scuola;
+            case "indirizzo" -> client.indirizzo() != null ? StringUtils.capitalizeFirstLetter(client.indirizzo()) : "";
+            default -> {
+                Object value = client.get(position);
+                yield value != null ? value.toString() : "";
+            }
+        };
+    }
+}
@@ -0,0 +1,350 @@
+package org.example.engine;
+
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.xwpf.usermodel.*;
+import org.apache.xmlbeans.XmlOptions;
+import org.example.engine.zip.CompressedEntry;
+import org.example.engine.zip.EntryBuffer;
+import org.example.engine.zip.RawZipReader;
+import org.example.engine.zip.RawZipWriter;
+import org.example.utils.Metrics;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Template Word analizzato una sola volta e riutilizzabile per generare molti documenti.
+ * Il file viene letto in memoria al momento della compilazione; per ogni documento parsato viene registrata
+ * la posizione dei run che contengono segnaposto {@code {{...}}}, così da poter riapplicare i valori di ogni
+ * record direttamente su quei run, senza rileggere il file né cercare di nuovo in tutto il documento.
+ * I segnaposto spezzati da Word su più run vengono ricomposti nel primo run durante la compilazione.
+ * I segnaposto vengono cercati con {@link DocumentWalker} nel corpo, nelle intestazioni e nei piè di pagina,
+ * comprese le tabelle annidate e le caselle di testo.
+ * <p>
+ * Nel documento generato vengono riscritte solo le parti che contengono segnaposto (il corpo, le intestazioni e i piè
+ * di pagina interessati): tutte le altre, ad esempio immagini, caratteri e stili, vengono copiate dall'archivio del
+ * template così come sono, con i dati già compressi, senza decomprimerle e ricomprimerle a ogni documento.
+ * <p>
+ * I documenti parsati vengono riutilizzati tramite un pool: ogni thread che genera un documento ne prende uno
+ * in uso esclusivo, quindi il template può essere usato in parallelo. Dopo {@link #close()} i documenti non tornano
+ * più nel pool: le generazioni ancora in corso chiudono il proprio al termine.
+ */
+public class CompiledTemplate implements AutoCloseable {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private final File source;
+    private final long lastModified;
+    private final long length;
+    private final byte[] templateBytes;
+    private final PlaceholderMatcher matcher;
+    private final Set<String> placeholders;
+    // Voci dell'archivio del template, null se l'archivio non può essere copiato e va riscritto con Apache POI
+    private final List<CompressedEntry> entries;
+    private final Queue<Instance> instances = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    private CompiledTemplate(File source, byte[] templateBytes, PlaceholderMatcher matcher) throws IOException {
+        this.source = source;
+        this.lastModified = source.lastModified();
+        this.length = source.length();
+        this.templateBytes = templateBytes;
+        this.matcher = matcher;
+
+        // Il primo documento parsato serve anche a scoprire i segnaposto del template
+        Instance first = new Instance(templateBytes, matcher);
+        Set<String> keys = new LinkedHashSet<>();
+        for (Slot slot : first.slots) {
+            keys.addAll(Arrays.asList(slot.keys));
+        }
+        this.placeholders = Collections.unmodifiableSet(keys);
+        this.entries = rawEntries(templateBytes, first);
+        instances.add(first);
+    }
+
+    /**
+     * Legge e analizza un template Word.
+     * @param templatePath Il percorso del file template.
+     * @return Il template compilato.
+     * @throws IOException Se si verifica un errore durante la lettura del file.
+     */
+    public static CompiledTemplate compile(String templatePath) throws IOException {
+        return compile(templatePath, PlaceholderMatcher.any());
+    }
+
+    /**
+     * Legge e analizza un template Word, considerando solo i segnaposto riconosciuti dal matcher indicato.
+     * @param templatePath Il percorso del file template.
+     * @param matcher Il matcher dei segnaposto da compilare.
+     * @return Il template compilato.
+     * @throws IOException Se si verifica un errore durante la lettura del file.
+     */
+    public static CompiledTemplate compile(String templatePath, PlaceholderMatcher matcher) throws IOException {
+        File source = new File(templatePath);
+        byte[] bytes;
+        try (Metrics.Sample sample = Metrics.start(Metrics.Phase.PARSE).detail(templatePath)) {
+            bytes = Files.readAllBytes(source.toPath());
+            sample.read(bytes.length);
+        }
+        return new CompiledTemplate(source, bytes, matcher);
+    }
+
+    /**
+     * Restituisce i segnaposto trovati nel template, nell'ordine in cui compaiono.
+     * @return L'insieme dei segnaposto, comprensivi delle parentesi graffe.
+     */
+    public Set<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Indica se il file sorgente è stato modificato dopo la compilazione.
+     * @return true se il template va ricompilato.
+     */
+    public boolean isStale() {
+        return source.lastModified() != lastModified || source.length() != length;
+    }
+
+    /**
+     * Genera un documento applicando i valori di un record e lo salva su file.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la scrittura del file.
+     */
+    public void fill(Map<String, String> replace, File destinationFile) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(destinationFile)) {
+            fill(replace, fos);
+        }
+    }
+
+    /**
+     * Genera un documento applicando i valori di un record e lo scrive sullo stream indicato.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la scrittura.
+     */
+    public void fill(Map<String, String> replace, OutputStream out) throws IOException {
+        Instance instance = instances.poll();
+        if (instance == null) {
+            instance = new Instance(templateBytes, matcher);
+        }
+        try {
+            try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.REPLACE)) {
+                instance.apply(replace);
+            }
+            try (Metrics.Sample sample = Metrics.start(Metrics.Phase.WRITE)) {
+                CountingOutputStream counting = new CountingOutputStream(out);
+                if (entries != null) {
+                    write(instance, counting);
+                } else {
+                    instance.document.write(counting);
+                }
+                sample.written(counting.getCount());
+            }
+        } finally {
+            instances.add(instance);
+            // Template chiuso durante la generazione: il documento non va conservato
+            if (closed) {
+                closeInstances();
+            }
+        }
+    }
+
+    /**
+     * Legge le voci dell'archivio del template senza decomprimerle.
+     * @return Le voci, oppure null se l'archivio usa funzionalità non supportate o non contiene tutte le parti
+     * che contengono segnaposto.
+     */
+    private static List<CompressedEntry> rawEntries(byte[] templateBytes, Instance instance) {
+        List<CompressedEntry> entries;
+        try {
+            entries = RawZipReader.read(templateBytes);
+        } catch (IOException e) {
+            return null;
+        }
+        Set<String> names = new HashSet<>();
+        for (CompressedEntry entry : entries) {
+            names.add(entry.name());
+        }
+        return names.containsAll(instance.modifiedParts.keySet()) ? entries : null;
+    }
+
+    /**
+     * Scrive il documento copiando le voci del template e riscrivendo solo le parti modificate.
+     */
+    private void write(Instance instance, OutputStream out) throws IOException {
+        // La chiusura dell'archivio scrive la directory centrale senza chiudere lo stream di destinazione
+        try (RawZipWriter zip = new RawZipWriter(out)) {
+            for (CompressedEntry entry : entries) {
+                IBody part = instance.modifiedParts.get(entry.name());
+                if (part == null) {
+                    zip.write(entry);
+                } else {
+                    EntryBuffer buffer = new EntryBuffer((int) Math.min(entry.size() + 4096, Integer.MAX_VALUE - 8));
+                    instance.save(part, buffer);
+                    zip.write(buffer.compress(entry.name(), Deflater.DEFAULT_COMPRESSION));
+                }
+            }
+        }
+    }
+
+    /**
+     * Chiude i documenti parsati del pool. Le generazioni ancora in corso possono terminare: il documento che
+     * stanno usando viene chiuso al termine invece di tornare nel pool.
+     * @throws IOException Se un documento non può essere chiuso.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        closeInstances();
+    }
+
+    private void closeInstances() throws IOException {
+        Instance instance;
+        while ((instance = instances.poll()) != null) {
+            instance.document.close();
+        }
+    }
+
+    /**
+     * Documento parsato dal template, con l'elenco dei run che contengono segnaposto.
+     */
+    private static final class Instance {
+        private final XWPFDocument document;
+        private final PlaceholderMatcher matcher;
+        private final List<Slot> slots = new ArrayList<>();
+        private final List<Runnable> textBoxes = new ArrayList<>();
+        // Parti che contengono segnaposto, indicizzate per nome della voce dell'archivio
+        private final Map<String, IBody> modifiedParts = new HashMap<>();
+        private IBody currentPart;
+
+        private Instance(byte[] templateBytes, PlaceholderMatcher matcher) throws IOException {
+            this.matcher = matcher;
+            try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.PARSE)) {
+                this.document = new XWPFDocument(new ByteArrayInputStream(templateBytes));
+                // Ricerca dei segnaposto in tutte le parti del documento, tabelle annidate e caselle di testo comprese
+                DocumentWalker.walk(document, new DocumentVisitor() {
+                    @Override
+                    public void startPart(IBody part) {
+                        currentPart = part;
+                    }
+
+                    @Override
+                    public void paragraph(XWPFParagraph paragraph) {
+                        collectSlots(paragraph);
+                    }
+
+                    @Override
+                    public void textBox(Runnable commit) {
+                        textBoxes.add(commit);
+                    }
+                });
+            }
+        }
+
+        private void collectSlots(XWPFParagraph paragraph) {
+            List<XWPFRun> runs = paragraph.getRuns();
+            String[] texts = new String[runs.size()];
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = runs.get(i).getText(0);
+            }
+
+            // Un'unica passata sul testo del paragrafo: i segnaposto spezzati vengono riportati nel primo run
+            String[] merged = matcher.rewrite(texts, PlaceholderMatcher.Match::key);
+            if (merged == null) {
+                return;
+            }
+            modifiedParts.put(currentPart.getPart().getPackagePart().getPartName().getName().substring(1), currentPart);
+            for (int i = 0; i < texts.length; i++) {
+                if (merged[i] == texts[i]) {
+                    continue;
+                }
+                XWPFRun run = runs.get(i);
+                if (!merged[i].equals(texts[i])) {
+                    run.setText(merged[i], 0);
+                }
+                Slot slot = Slot.parse(run, merged[i], matcher);
+                if (slot != null) {
+                    slots.add(slot);
+                }
+            }
+        }
+
+        /**
+         * Scrive l'XML di una parte con le stesse opzioni usate da Apache POI al salvataggio del documento.
+         */
+        private void save(IBody part, OutputStream out) throws IOException {
+            XmlOptions options = new XmlOptions(POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+            if (part instanceof XWPFHeader header) {
+                options.setSaveSyntheticDocumentElement(new QName(WORDML_NS, "hdr"));
+                header._getHdrFtr().save(out, options);
+            } else if (part instanceof XWPFFooter footer) {
+                options.setSaveSyntheticDocumentElement(new QName(WORDML_NS, "ftr"));
+                footer._getHdrFtr().save(out, options);
+            } else {
+                options.setSaveSyntheticDocumentElement(new QName(WORDML_NS, "document"));
+                document.getDocument().save(out, options);
+            }
+        }
+
+        private void apply(Map<String, String> replace) {
+            for (Slot slot : slots) {
+                slot.apply(replace);
+            }
+            // Le caselle di testo sono copie: i valori vanno riportati nel documento, le caselle annidate per prime
+            for (Runnable textBox : textBoxes) {
+                textBox.run();
+            }
+        }
+    }
+
+    /**
+     * Run del template che contiene almeno un segnaposto, scomposto in parti letterali e chiavi:
+     * il testo finale è {@code literals[0] + valore(keys[0]) + literals[1] + ...}.
+     */
+    private static final class Slot {
+        private final XWPFRun run;
+        private final String[] literals;
+        private final String[] keys;
+
+        private Slot(XWPFRun run, String[] literals, String[] keys) {
+            this.run = run;
+            this.literals = literals;
+            this.keys = keys;
+        }
+
+        private static Slot parse(XWPFRun run, String text, PlaceholderMatcher matcher) {
+            List<String> literals = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            int last = 0;
+            for (PlaceholderMatcher.Match match : matcher.find(text)) {
+                literals.add(text.substring(last, match.start()));
+                keys.add(match.key());
+                last = match.end();
+            }
+            if (keys.isEmpty()) {
+                return null;
+            }
+            literals.add(text.substring(last));
+            return new Slot(run, literals.toArray(new String[0]), keys.toArray(new String[0]));
+        }
+
+        private void apply(Map<String, String> replace) {
+            StringBuilder sb = new StringBuilder(literals[0]);
+            for (int i = 0; i < keys.length; i++) {
+                // I segnaposto senza valore restano invariati, come nella sostituzione classica
+                String value = replace.get(keys[i]);
+                sb.append(value != null ? value : keys[i]).append(literals[i + 1]);
+            }
+            run.setText(sb.toString(), 0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.engine;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream che conta i byte scritti, usato per le metriche della fase di scrittura.
+ * La chiusura svuota il buffer ma non chiude lo stream sottostante, che resta del chiamante.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Restituisce il numero di byte scritti finora.
+     * @return Il numero di byte.
+     */
+    long getCount() {
+        return count;
+    }
+}
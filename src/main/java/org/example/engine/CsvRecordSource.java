@@ -0,0 +1,144 @@
+package org.example.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente di record letta da un file CSV codificato in UTF-8.
+ * La prima riga contiene i nomi delle colonne, che diventano i segnaposto dei documenti
+ * (la colonna {@code indirizzo} valorizza {@code {{indirizzo}}}). Sono supportati i valori tra virgolette,
+ * anche con separatori, virgolette raddoppiate e ritorni a capo al loro interno.
+ * Se il separatore non è indicato viene scelto tra virgola e punto e virgola in base all'intestazione.
+ */
+public class CsvRecordSource implements RecordSource {
+
+    private final Path path;
+    private final Character delimiter;
+
+    /**
+     * Costruttore della classe CsvRecordSource.
+     * @param path Il percorso del file CSV.
+     * @param delimiter Il separatore dei campi, oppure null per riconoscerlo dall'intestazione.
+     */
+    public CsvRecordSource(Path path, Character delimiter) {
+        this.path = path;
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> action) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            skipBom(reader);
+            char separator = delimiter != null ? delimiter : detectDelimiter(reader);
+
+            List<String> header = readRecord(reader, separator);
+            if (header == null) {
+                return;
+            }
+            String[] keys = new String[header.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = RecordSource.placeholder(header.get(i));
+            }
+
+            List<String> fields;
+            int line = 1;
+            while ((fields = readRecord(reader, separator)) != null) {
+                line++;
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue; // riga vuota
+                }
+                if (fields.size() > keys.length) {
+                    throw new IOException(path + ", record " + line + ": " + fields.size()
+                            + " campi, l'intestazione ne ha " + keys.length);
+                }
+                Map<String, String> record = new HashMap<>(keys.length * 2);
+                for (int i = 0; i < fields.size(); i++) {
+                    record.put(keys[i], fields.get(i));
+                }
+                action.accept(record);
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "csv:" + path;
+    }
+
+    private static void skipBom(BufferedReader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+    }
+
+    private static char detectDelimiter(BufferedReader reader) throws IOException {
+        reader.mark(64 * 1024);
+        String header = reader.readLine();
+        reader.reset();
+        if (header == null) {
+            return ',';
+        }
+        long commas = header.chars().filter(c -> c == ',').count();
+        long semicolons = header.chars().filter(c -> c == ';').count();
+        return semicolons > commas ? ';' : ',';
+    }
+
+    /**
+     * Legge un record, che può estendersi su più righe se un valore tra virgolette contiene ritorni a capo.
+     * @return I campi del record, oppure null a fine file.
+     */
+    private static List<String> readRecord(BufferedReader reader, char separator) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.engine;
+
+import org.example.database.ClientCursor;
+import org.example.database.DatabaseOperation;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente di record letta in streaming dalla tabella gst_clienti.
+ * Ogni record produce la stessa tabella di sostituzione usata dalla generazione dall'interfaccia grafica.
+ */
+public class DatabaseRecordSource implements RecordSource {
+
+    private static final String TABLE = "gst_clienti";
+    private static final int FETCH_SIZE = 500;
+
+    private final DatabaseOperation sql;
+
+    /**
+     * Costruttore della classe DatabaseRecordSource.
+     * @param sql Le operazioni sul database da cui leggere i record.
+     */
+    public DatabaseRecordSource(DatabaseOperation sql) {
+        this.sql = sql;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> action) throws IOException {
+        try (ClientCursor cursor = sql.openCursor(TABLE, FETCH_SIZE)) {
+            cursor.forEachRemaining(client -> action.accept(WordReplacer.createReplace(client.denominazione(), client)));
+        } catch (SQLException e) {
+            throw new IOException("Lettura di " + TABLE + " non riuscita: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "db:" + TABLE;
+    }
+}
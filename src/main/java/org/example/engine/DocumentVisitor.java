@@ -0,0 +1,87 @@
+package org.example.engine;
+
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+import java.io.IOException;
+
+/**
+ * Operazione eseguita durante la visita di un documento Word con {@link DocumentWalker}.
+ * Tutti i metodi hanno un'implementazione vuota: ogni visitor ridefinisce solo gli elementi che gli interessano,
+ * così che più operazioni possano condividere la stessa visita.
+ */
+public interface DocumentVisitor {
+
+    /**
+     * Segnala l'inizio di una parte del documento: il corpo, un'intestazione o un piè di pagina.
+     * @param part La parte.
+     * @throws IOException Se la visita va interrotta.
+     */
+    default void startPart(IBody part) throws IOException {
+    }
+
+    /**
+     * Visita un paragrafo del corpo, di un'intestazione, di un piè di pagina o di una cella di tabella,
+     * a qualunque livello di annidamento. Le caselle di testo contenute nel paragrafo vengono visitate subito dopo
+     * con {@link #textBoxParagraph(XWPFParagraph)}.
+     * @param paragraph Il paragrafo.
+     * @throws IOException Se la visita va interrotta.
+     */
+    default void paragraph(XWPFParagraph paragraph) throws IOException {
+    }
+
+    /**
+     * Visita un paragrafo di una casella di testo. Se la casella ha anche il contenuto alternativo di compatibilità
+     * ({@code mc:Fallback}), il paragrafo viene visitato una volta per ogni copia.
+     * Per default viene trattato come gli altri paragrafi; chi legge l'XML del paragrafo che contiene la casella
+     * ne trova già il testo e può ignorarlo.
+     * @param paragraph Il paragrafo.
+     * @throws IOException Se la visita va interrotta.
+     */
+    default void textBoxParagraph(XWPFParagraph paragraph) throws IOException {
+        paragraph(paragraph);
+    }
+
+    /**
+     * Segnala la fine di una casella di testo, dopo la visita dei suoi paragrafi.
+     * I paragrafi delle caselle sono copie dell'XML del documento: le modifiche fatte durante la visita sono già
+     * state riportate nel documento, quelle fatte in seguito (ad esempio da un template riutilizzato per più
+     * documenti) vanno riportate invocando di nuovo {@code commit}.
+     * @param commit L'operazione che copia nel documento il contenuto attuale della casella.
+     */
+    default void textBox(Runnable commit) {
+    }
+
+    /**
+     * Visita una tabella, prima dei paragrafi delle sue celle.
+     * @param table La tabella.
+     * @throws IOException Se la visita va interrotta.
+     */
+    default void table(XWPFTable table) throws IOException {
+    }
+
+    /**
+     * Segnala l'inizio di un segnalibro posto tra un paragrafo e l'altro. I segnalibri interni ai paragrafi
+     * fanno parte dell'XML del paragrafo e non vengono segnalati.
+     * @param id L'identificativo che lega l'inizio alla fine del segnalibro.
+     * @param name Il nome del segnalibro.
+     */
+    default void bookmarkStart(String id, String name) {
+    }
+
+    /**
+     * Segnala la fine di un segnalibro posta tra un paragrafo e l'altro.
+     * @param id L'identificativo del segnalibro.
+     */
+    default void bookmarkEnd(String id) {
+    }
+
+    /**
+     * Indica se il visitor ha terminato il suo lavoro: quando tutti i visitor hanno terminato la visita si ferma.
+     * @return true se il resto del documento non serve più.
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
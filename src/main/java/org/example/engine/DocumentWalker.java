@@ -0,0 +1,237 @@
+package org.example.engine;
+
+import org.apache.poi.xwpf.usermodel.*;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTxbxContent;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visita un documento Word in un'unica passata, passando ogni elemento a uno o più {@link DocumentVisitor}.
+ * Vengono percorsi il corpo, le intestazioni e i piè di pagina; in ognuno i paragrafi e le tabelle nell'ordine del
+ * documento, comprese le tabelle annidate nelle celle, i controlli contenuto ({@code w:sdt}) e le caselle di testo.
+ * Ogni elemento viene visitato una sola volta, per tutti i visitor insieme.
+ * <p>
+ * Gli elementi che Apache POI non espone (paragrafi dei controlli contenuto e delle caselle di testo) vengono
+ * avvolti in nuovi {@link XWPFParagraph} e {@link XWPFTable}, così che le modifiche fatte dai visitor finiscano nel
+ * documento come per gli altri paragrafi. Le caselle di testo vengono visitate su una copia riportata nel documento
+ * al termine della visita della casella (vedi {@link DocumentVisitor#textBox(Runnable)}).
+ */
+public final class DocumentWalker {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final QName ID = new QName(WORDML_NS, "id");
+    private static final QName NAME = new QName(WORDML_NS, "name");
+    private static final QName PARAGRAPH = new QName(WORDML_NS, "p");
+    private static final QName TEXT_BOX = new QName(WORDML_NS, "txbxContent");
+    private static final String TEXT_BOXES = "declare namespace w='" + WORDML_NS + "' .//w:txbxContent";
+    private static final String SDT_CONTENT = "declare namespace w='" + WORDML_NS + "' ./w:sdtContent";
+
+    private final DocumentVisitor[] visitors;
+    private Map<XmlObject, List<XmlObject>> textBoxes = Map.of();
+
+    private DocumentWalker(DocumentVisitor[] visitors) {
+        this.visitors = visitors;
+    }
+
+    /**
+     * Visita un documento.
+     * @param document Il documento da visitare.
+     * @param visitors I visitor, invocati nell'ordine indicato per ogni elemento.
+     * @throws IOException Se un visitor interrompe la visita.
+     */
+    public static void walk(XWPFDocument document, DocumentVisitor... visitors) throws IOException {
+        DocumentWalker walker = new DocumentWalker(visitors);
+        walker.part(document, document.getDocument().getBody());
+        for (XWPFHeader header : document.getHeaderList()) {
+            walker.part(header, header._getHdrFtr());
+        }
+        for (XWPFFooter footer : document.getFooterList()) {
+            walker.part(footer, footer._getHdrFtr());
+        }
+    }
+
+    private void part(IBody part, XmlObject xml) throws IOException {
+        if (isDone()) {
+            return;
+        }
+        for (DocumentVisitor visitor : visitors) {
+            visitor.startPart(part);
+        }
+        textBoxes = findTextBoxes(xml);
+        container(part, xml, part.getBodyElements(), false);
+    }
+
+    /**
+     * Visita gli elementi figli di un contenitore (corpo, cella, casella di testo, controllo contenuto).
+     * @param body La parte o la cella a cui appartengono gli elementi.
+     * @param xml L'XML del contenitore.
+     * @param elements Gli elementi già creati da Apache POI per il contenitore, da riutilizzare.
+     * @param inTextBox true se il contenitore è all'interno di una casella di testo.
+     */
+    private void container(IBody body, XmlObject xml, List<IBodyElement> elements, boolean inTextBox)
+            throws IOException {
+        Map<XmlObject, IBodyElement> known = new IdentityHashMap<>();
+        for (IBodyElement element : elements) {
+            if (element instanceof XWPFParagraph paragraph) {
+                known.put(paragraph.getCTP(), paragraph);
+            } else if (element instanceof XWPFTable table) {
+                known.put(table.getCTTbl(), table);
+            }
+        }
+
+        try (XmlCursor cursor = xml.newCursor()) {
+            for (boolean more = cursor.toFirstChild(); more && !isDone(); more = cursor.toNextSibling()) {
+                if (!WORDML_NS.equals(cursor.getName().getNamespaceURI())) {
+                    continue;
+                }
+                XmlObject child = cursor.getObject();
+                switch (cursor.getName().getLocalPart()) {
+                    case "p" -> {
+                        if (known.get(child) instanceof XWPFParagraph paragraph) {
+                            paragraph(body, paragraph, inTextBox);
+                        } else if (child instanceof CTP ctp) {
+                            paragraph(body, new XWPFParagraph(ctp, body), inTextBox);
+                        }
+                    }
+                    case "tbl" -> {
+                        if (known.get(child) instanceof XWPFTable table) {
+                            table(table, inTextBox);
+                        } else if (child instanceof CTTbl ctTbl) {
+                            table(new XWPFTable(ctTbl, body), inTextBox);
+                        }
+                    }
+                    case "sdt" -> {
+                        for (XmlObject content : child.selectPath(SDT_CONTENT)) {
+                            container(body, content, List.of(), inTextBox);
+                        }
+                    }
+                    case "customXml" -> container(body, child, List.of(), inTextBox);
+                    case "bookmarkStart" -> {
+                        String id = cursor.getAttributeText(ID);
+                        String name = cursor.getAttributeText(NAME);
+                        for (DocumentVisitor visitor : visitors) {
+                            visitor.bookmarkStart(id, name);
+                        }
+                    }
+                    case "bookmarkEnd" -> {
+                        String id = cursor.getAttributeText(ID);
+                        for (DocumentVisitor visitor : visitors) {
+                            visitor.bookmarkEnd(id);
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        }
+    }
+
+    private void paragraph(IBody body, XWPFParagraph paragraph, boolean inTextBox) throws IOException {
+        for (DocumentVisitor visitor : visitors) {
+            if (inTextBox) {
+                visitor.textBoxParagraph(paragraph);
+            } else {
+                visitor.paragraph(paragraph);
+            }
+        }
+        List<XmlObject> boxes = textBoxes.get(paragraph.getCTP());
+        if (boxes != null) {
+            for (XmlObject content : boxes) {
+                textBox(body, content);
+            }
+        }
+    }
+
+    /**
+     * Visita il contenuto di una casella di testo. Il contenuto di {@code mc:AlternateContent}, dove Word salva le
+     * caselle, non fa parte dello schema e Apache POI lo legge senza tipo: viene quindi visitata una copia tipizzata,
+     * riportata poi nel documento.
+     */
+    private void textBox(IBody body, XmlObject content) throws IOException {
+        Map<XmlObject, List<XmlObject>> outer = textBoxes;
+        if (content instanceof CTTxbxContent typed) {
+            textBoxes = findTextBoxes(typed);
+            container(body, typed, List.of(), true);
+            textBoxes = outer;
+            return;
+        }
+        CTTxbxContent copy;
+        try {
+            copy = CTTxbxContent.Factory.parse(content.xmlText());
+        } catch (XmlException e) {
+            throw new IOException("Casella di testo non valida: " + e.getMessage(), e);
+        }
+        textBoxes = findTextBoxes(copy);
+        container(body, copy, List.of(), true);
+        textBoxes = outer;
+        Runnable commit = () -> content.set(copy);
+        commit.run();
+        for (DocumentVisitor visitor : visitors) {
+            visitor.textBox(commit);
+        }
+    }
+
+    /**
+     * Cerca con un'unica interrogazione le caselle di testo di una parte o di una casella, raggruppandole per
+     * paragrafo che le contiene. Le caselle annidate in altre caselle vengono escluse: fanno parte della casella
+     * che le contiene e vengono cercate quando si visita quella.
+     * @param root La parte o la casella in cui cercare.
+     * @return Le caselle di testo, indicizzate per paragrafo ({@code w:p}) che le contiene.
+     */
+    private static Map<XmlObject, List<XmlObject>> findTextBoxes(XmlObject root) {
+        XmlObject[] found = root.selectPath(TEXT_BOXES);
+        if (found.length == 0) {
+            return Map.of();
+        }
+        Map<XmlObject, List<XmlObject>> byParagraph = new IdentityHashMap<>();
+        try (XmlCursor top = root.newCursor()) {
+            for (XmlObject content : found) {
+                try (XmlCursor cursor = content.newCursor()) {
+                    XmlObject host = null;
+                    boolean nested = false;
+                    while (!nested && cursor.toParent() && !cursor.isAtSamePositionAs(top)) {
+                        QName name = cursor.getName();
+                        if (TEXT_BOX.equals(name)) {
+                            nested = true;
+                        } else if (host == null && PARAGRAPH.equals(name)) {
+                            host = cursor.getObject();
+                        }
+                    }
+                    if (!nested && host != null) {
+                        byParagraph.computeIfAbsent(host, k -> new ArrayList<>()).add(content);
+                    }
+                }
+            }
+        }
+        return byParagraph;
+    }
+
+    private void table(XWPFTable table, boolean inTextBox) throws IOException {
+        for (DocumentVisitor visitor : visitors) {
+            visitor.table(table);
+        }
+        for (XWPFTableRow row : table.getRows()) {
+            for (XWPFTableCell cell : row.getTableCells()) {
+                container(cell, cell.getCTTc(), cell.getBodyElements(), inTextBox);
+            }
+        }
+    }
+
+    private boolean isDone() {
+        for (DocumentVisitor visitor : visitors) {
+            if (!visitor.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+package org.example.engine;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Lavoro di generazione (o lettura) eseguito da un {@link GenerationScheduler}.
+ * Espone stato, avanzamento e messaggio corrente; il lavoro può essere annullato sia mentre è in coda
+ * sia durante l'esecuzione, nel qual caso il thread che lo esegue viene interrotto.
+ * I cambi di stato avvengono con compare-and-set: un lavoro annullato resta annullato anche se l'annullamento
+ * arriva mentre il lavoro sta per partire o per terminare.
+ */
+public class GenerationJob {
+
+    /**
+     * Stati di un lavoro.
+     */
+    public enum State {
+        QUEUED("In coda"),
+        RUNNING("In corso"),
+        COMPLETED("Completato"),
+        FAILED("Errore"),
+        CANCELLED("Annullato");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Attività eseguita dal lavoro.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Esegue l'attività, aggiornando l'avanzamento del lavoro.
+         * @param job Il lavoro in esecuzione.
+         * @return Il messaggio finale da mostrare all'utente.
+         * @throws Exception Se l'attività non va a buon fine.
+         */
+        String run(GenerationJob job) throws Exception;
+    }
+
+    private final String name;
+    private final Task task;
+    private final Consumer<GenerationJob> listener;
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private volatile int progress;
+    private volatile String message = "";
+    private volatile Future<?> future;
+
+    GenerationJob(String name, Task task, Consumer<GenerationJob> listener) {
+        this.name = name;
+        this.task = task;
+        this.listener = listener;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Restituisce l'avanzamento del lavoro.
+     * @return La percentuale completata, da 0 a 100.
+     */
+    public int getProgress() {
+        return progress;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Indica se il lavoro è terminato, con qualunque esito.
+     * @return true se il lavoro è completato, fallito o annullato.
+     */
+    public boolean isDone() {
+        return isDone(state.get());
+    }
+
+    private static boolean isDone(State state) {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    /**
+     * Aggiorna l'avanzamento del lavoro.
+     * @param percent La percentuale completata, da 0 a 100.
+     */
+    public void setProgress(int percent) {
+        this.progress = Math.max(0, Math.min(100, percent));
+        listener.accept(this);
+    }
+
+    /**
+     * Aggiorna l'avanzamento in base agli elementi elaborati.
+     * @param done Gli elementi elaborati.
+     * @param total Gli elementi totali.
+     */
+    public void setProgress(int done, int total) {
+        this.message = done + "/" + total;
+        setProgress(total == 0 ? 100 : (int) (done * 100L / total));
+    }
+
+    /**
+     * Interrompe l'attività se il lavoro è stato annullato; va chiamato tra una fase e l'altra.
+     * @throws CancellationException Se il lavoro è stato annullato.
+     */
+    public void checkCancelled() {
+        if (state.get() == State.CANCELLED || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Annulla il lavoro. Un lavoro in coda non verrà eseguito, uno in corso viene interrotto.
+     * @return true se il lavoro non era già terminato.
+     */
+    public boolean cancel() {
+        State current;
+        do {
+            current = state.get();
+            if (isDone(current)) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, State.CANCELLED));
+        message = "";
+        if (future != null) {
+            future.cancel(true);
+        }
+        listener.accept(this);
+        return true;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Esegue l'attività sul thread del pool, registrandone l'esito.
+     */
+    void execute() {
+        if (!state.compareAndSet(State.QUEUED, State.RUNNING)) {
+            // Annullato mentre era in coda
+            return;
+        }
+        listener.accept(this);
+        try {
+            String result = task.run(this);
+            // Il messaggio precede lo stato, così chi vede COMPLETED legge già l'esito
+            message = result;
+            if (state.compareAndSet(State.RUNNING, State.COMPLETED)) {
+                progress = 100;
+            } else {
+                message = "";
+            }
+        } catch (CancellationException e) {
+            state.compareAndSet(State.RUNNING, State.CANCELLED);
+        } catch (Exception e) {
+            message = e.getMessage();
+            if (!state.compareAndSet(State.RUNNING, State.FAILED)) {
+                message = "";
+            }
+        }
+        listener.accept(this);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.engine;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Esecutore dei lavori di generazione.
+ * Esegue al massimo un numero configurato di lavori contemporaneamente; gli altri restano in una coda
+ * di capacità limitata, oltre la quale i nuovi lavori vengono rifiutati.
+ */
+public class GenerationScheduler implements AutoCloseable {
+
+    private final ThreadPoolExecutor executor;
+    private final List<Consumer<GenerationJob>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Costruttore della classe GenerationScheduler.
+     * @param concurrency Il numero massimo di lavori eseguiti contemporaneamente.
+     * @param queueCapacity Il numero massimo di lavori in attesa.
+     */
+    public GenerationScheduler(int concurrency, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(1, concurrency);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "generation-job-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Registra un listener notificato a ogni cambiamento di stato o avanzamento di un lavoro.
+     * Il listener viene invocato sul thread che esegue il lavoro.
+     * @param listener Il listener da registrare.
+     */
+    public void addListener(Consumer<GenerationJob> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Accoda un nuovo lavoro.
+     * @param name Il nome del lavoro, mostrato all'utente.
+     * @param task L'attività da eseguire.
+     * @return Il lavoro accodato.
+     * @throws RejectedExecutionException Se la coda dei lavori è piena.
+     */
+    public GenerationJob submit(String name, GenerationJob.Task task) {
+        GenerationJob job = new GenerationJob(name, task, this::fireChanged);
+        try {
+            job.setFuture(executor.submit(job::execute));
+        } catch (RejectedExecutionException e) {
+            throw new RejectedExecutionException("Coda dei lavori piena: riprova più tardi", e);
+        }
+        fireChanged(job);
+        return job;
+    }
+
+    private void fireChanged(GenerationJob job) {
+        for (Consumer<GenerationJob> listener : listeners) {
+            listener.accept(job);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.engine;
+
+import org.example.engine.zip.ZipArchiveSink;
+import org.example.utils.Metrics;
+import org.example.utils.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generazione in blocco senza interfaccia grafica, a partire da una {@link RecordSource}.
+ * I record vengono letti in streaming e passati a un pool di thread limitato: la lettura si ferma quando
+ * i documenti in attesa di generazione sono troppi, così che la memoria usata non dipenda dal numero di record.
+ * A differenza di {@link BatchReplacer} i segnaposto non sono limitati a quelli della tabella gst_clienti:
+ * ogni colonna della sorgente valorizza il segnaposto omonimo.
+ * Come in {@link BatchReplacer}, i documenti i cui input non sono cambiati dall'esecuzione precedente vengono saltati.
+ */
+public class HeadlessBatch {
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private String fileNamePattern = BatchReplacer.DEFAULT_FILE_NAME_PATTERN;
+    private WordReplacer.Engine engine = WordReplacer.Engine.POI;
+    private boolean incremental = true;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Imposta il numero massimo di documenti generati contemporaneamente.
+     * @param parallelism Il numero di thread del pool (almeno 1).
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public String getFileNamePattern() {
+        return fileNamePattern;
+    }
+
+    /**
+     * Imposta il pattern del nome dei file generati. Oltre a {@code {n}} e {@code {template}} è supportato
+     * il nome di qualunque colonna della sorgente tra parentesi graffe, ad esempio {@code {denominazione}};
+     * una colonna assente dal record viene sostituita dal numero progressivo, per non sovrascrivere i file.
+     * @param fileNamePattern Il pattern del nome dei file.
+     */
+    public void setFileNamePattern(String fileNamePattern) {
+        this.fileNamePattern = fileNamePattern;
+    }
+
+    public WordReplacer.Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(WordReplacer.Engine engine) {
+        this.engine = engine;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Indica se saltare i documenti i cui input non sono cambiati dall'esecuzione precedente nella stessa cartella,
+     * secondo il {@link BuildManifest}. Con false tutti i documenti vengono rigenerati; il manifest viene comunque aggiornato.
+     * @param incremental true per la rigenerazione incrementale.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Genera un documento per ogni record della sorgente.
+     * @param templatePath Il percorso del file template.
+     * @param source La sorgente dei record.
+     * @param destinationPath La cartella di destinazione, creata se non esiste.
+     * @return Il riepilogo dell'esecuzione; gli errori sono indicizzati per nome del file da generare.
+     * @throws IOException Se il template o la sorgente non possono essere letti.
+     */
+    public BatchResult run(String templatePath, RecordSource source, String destinationPath) throws IOException {
+        Files.createDirectories(Path.of(destinationPath));
+        return run(templatePath, source, destinationPath, null);
+    }
+
+    /**
+     * Genera un documento per ogni record della sorgente e lo aggiunge come voce di un unico archivio ZIP,
+     * senza scrivere file intermedi su disco. La compressione delle voci avviene in parallelo nei thread del pool.
+     * La rigenerazione incrementale non si applica: l'archivio contiene sempre tutti i documenti.
+     * @param templatePath Il percorso del file template.
+     * @param source La sorgente dei record.
+     * @param archive L'archivio di destinazione, che il chiamante deve chiudere al termine.
+     * @return Il riepilogo dell'esecuzione; gli errori sono indicizzati per nome della voce da generare.
+     * @throws IOException Se il template o la sorgente non possono essere letti.
+     */
+    public BatchResult run(String templatePath, RecordSource source, ZipArchiveSink archive) throws IOException {
+        return run(templatePath, source, null, archive);
+    }
+
+    private BatchResult run(String templatePath, RecordSource source, String destinationPath, ZipArchiveSink archive)
+            throws IOException {
+        long start = System.nanoTime();
+        Metrics.Run run = Metrics.run(templatePath);
+        String templateName = baseName(new File(templatePath).getName());
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        // Il template compilato in modalità headless accetta qualunque segnaposto: il motore distingue i manifest
+        BuildManifest manifest = archive == null
+                ? BuildManifest.open(Path.of(destinationPath), templatePath, "headless-" + engine.name())
+                : null;
+
+        // Nomi dei file già assegnati, come in BatchReplacer: i record con lo stesso nome una volta ripulito non si
+        // sovrascrivono. Nell'archivio ZIP i duplicati vengono già distinti da ZipArchiveSink.
+        Set<String> fileNames = new HashSet<>();
+        // Al massimo due documenti in attesa per thread: la lettura della sorgente procede al ritmo della generazione
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        StreamingFillEngine streamingEngine = engine == WordReplacer.Engine.STREAMING ? new StreamingFillEngine() : null;
+        SplicedTemplate spliced = engine == WordReplacer.Engine.SPLICE ? loadSpliced(templatePath) : null;
+        CompiledTemplate template = streamingEngine == null && spliced == null ? CompiledTemplate.compile(templatePath) : null;
+
+        try {
+            source.forEach(record -> {
+                int n = total.incrementAndGet();
+                String fileName = fileNameFor(record, n, templateName);
+                if (archive == null) {
+                    fileName = BatchReplacer.uniqueFileName(fileName, fileNames);
+                }
+                String entryName = fileName;
+                File destinationFile = archive == null ? new File(destinationPath, fileName) : null;
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        if (archive != null) {
+                            archive.add(entryName,
+                                    out -> fill(spliced, template, streamingEngine, templatePath, record, out));
+                        } else {
+                            String hash = manifest.hash(record);
+                            if (incremental && manifest.isUpToDate(destinationFile, hash)) {
+                                skipped.incrementAndGet();
+                            } else {
+                                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destinationFile))) {
+                                    fill(spliced, template, streamingEngine, templatePath, record, out);
+                                }
+                                manifest.record(destinationFile, hash);
+                            }
+                        }
+                        succeeded.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        if (manifest != null) {
+                            manifest.forget(destinationFile);
+                        }
+                        failures.put(entryName, String.valueOf(e.getMessage()));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            });
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            if (template != null) {
+                template.close();
+            }
+            if (manifest != null) {
+                manifest.save();
+            }
+        }
+
+        BatchResult result = new BatchResult(total.get(), succeeded.get(), failures, System.nanoTime() - start);
+        result.setMetrics(run.finish(total.get(), failures.size()));
+        result.setSkipped(skipped.get());
+        return result;
+    }
+
+    private static void fill(SplicedTemplate spliced, CompiledTemplate template, StreamingFillEngine streamingEngine,
+                             String templatePath, Map<String, String> record, OutputStream out) throws IOException {
+        if (spliced != null) {
+            spliced.fill(record, out);
+        } else if (template != null) {
+            template.fill(record, out);
+        } else {
+            streamingEngine.fill(templatePath, record, out);
+        }
+    }
+
+    /**
+     * Legge o compila il template precompilato; se il template non può essere precompilato viene generato con
+     * Apache POI.
+     * @return Il template precompilato, oppure null.
+     */
+    private static SplicedTemplate loadSpliced(String templatePath) {
+        try {
+            return SplicedTemplate.load(templatePath);
+        } catch (IOException e) {
+            System.err.println("Template non precompilabile, generazione con Apache POI: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Costruisce il nome del file di destinazione applicando il pattern configurato.
+     * @param record Il record del documento.
+     * @param n Il numero progressivo del documento.
+     * @param templateName Il nome del template senza estensione.
+     * @return Il nome del file, privo di caratteri non ammessi dal file system.
+     */
+    String fileNameFor(Map<String, String> record, int n, String templateName) {
+        StringBuilder name = new StringBuilder();
+        int i = 0;
+        while (i < fileNamePattern.length()) {
+            int open = fileNamePattern.indexOf('{', i);
+            int close = open < 0 ? -1 : fileNamePattern.indexOf('}', open);
+            if (close < 0) {
+                name.append(fileNamePattern, i, fileNamePattern.length());
+                break;
+            }
+            name.append(fileNamePattern, i, open);
+            String key = fileNamePattern.substring(open + 1, close);
+            if (key.equals("n")) {
+                name.append(n);
+            } else if (key.equals("template")) {
+                name.append(templateName);
+            } else {
+                name.append(record.getOrDefault(RecordSource.placeholder(key), String.valueOf(n)));
+            }
+            i = close + 1;
+        }
+        return StringUtils.safeFileName(name.toString());
+    }
+
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
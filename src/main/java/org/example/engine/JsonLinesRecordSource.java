@@ -0,0 +1,188 @@
+package org.example.engine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente di record letta da un file JSON Lines: un oggetto JSON per riga, codificato in UTF-8.
+ * Le proprietà dell'oggetto diventano i segnaposto dei documenti (la proprietà {@code indirizzo} valorizza
+ * {@code {{indirizzo}}}). Sono ammessi solo oggetti piatti con valori stringa, numerici, booleani o null;
+ * i valori null lasciano il segnaposto invariato.
+ */
+public class JsonLinesRecordSource implements RecordSource {
+
+    private final Path path;
+
+    /**
+     * Costruttore della classe JsonLinesRecordSource.
+     * @param path Il percorso del file JSON Lines.
+     */
+    public JsonLinesRecordSource(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> action) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    action.accept(new Parser(line).parseObject());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ", riga " + number + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "jsonl:" + path;
+    }
+
+    /**
+     * Parser di un singolo oggetto JSON piatto.
+     */
+    private static final class Parser {
+
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> parseObject() {
+            Map<String, String> record = new HashMap<>();
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    String key = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    String value = parseValue();
+                    if (value != null) {
+                        record.put(RecordSource.placeholder(key), value);
+                    }
+                    skipWhitespace();
+                    char c = next();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw error("atteso ',' o '}'");
+                    }
+                }
+            }
+            skipWhitespace();
+            if (pos < text.length()) {
+                throw error("contenuto inatteso dopo l'oggetto");
+            }
+            return record;
+        }
+
+        private String parseValue() {
+            char c = peek();
+            if (c == '"') {
+                return parseString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("valori annidati non supportati");
+            }
+            int start = pos;
+            while (pos < text.length() && ",} \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("valore non valido '" + literal + "'");
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("sequenza \\u incompleta");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("sequenza \\u non valida");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("sequenza di escape non valida '\\" + escaped + "'");
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("fine riga inattesa");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("atteso '" + expected + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " (colonna " + (pos + 1) + ")");
+        }
+    }
+}
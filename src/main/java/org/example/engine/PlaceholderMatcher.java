@@ -0,0 +1,226 @@
+package org.example.engine;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Ricerca dei segnaposto nel testo di un paragrafo in un'unica passata.
+ * <p>
+ * {@link #forKeys(Collection)} costruisce un automa di Aho-Corasick sulle chiavi note, così che il costo della
+ * ricerca dipenda solo dalla lunghezza del testo e non dal numero di chiavi; {@link #any()} riconosce invece
+ * qualunque segnaposto {@code {{...}}}. In entrambi i casi il testo analizzato è la concatenazione dei run di un
+ * paragrafo, per cui vengono trovati anche i segnaposto che Word ha spezzato su più run; {@link #rewrite} riporta
+ * poi le sostituzioni sui singoli run.
+ */
+public abstract class PlaceholderMatcher {
+
+    private static final PlaceholderMatcher ANY = new DelimiterMatcher();
+
+    /**
+     * Occorrenza di un segnaposto nel testo, nell'intervallo {@code [start, end)}.
+     */
+    public record Match(int start, int end, String key) {
+    }
+
+    /**
+     * Restituisce un matcher che riconosce qualunque segnaposto racchiuso tra doppie parentesi graffe.
+     * @return Il matcher generico.
+     */
+    public static PlaceholderMatcher any() {
+        return ANY;
+    }
+
+    /**
+     * Costruisce un matcher di Aho-Corasick per le chiavi indicate.
+     * @param keys Le chiavi da cercare, comprensive delle parentesi graffe.
+     * @return Il matcher per le chiavi.
+     */
+    public static PlaceholderMatcher forKeys(Collection<String> keys) {
+        return new AhoCorasickMatcher(keys);
+    }
+
+    /**
+     * Trova i segnaposto nel testo, da sinistra a destra e senza sovrapposizioni.
+     * @param text Il testo da analizzare.
+     * @return Le occorrenze trovate, ordinate per posizione.
+     */
+    public abstract List<Match> find(CharSequence text);
+
+    /**
+     * Cerca i segnaposto nella concatenazione dei testi indicati e restituisce i nuovi testi.
+     * Il valore di ogni segnaposto viene scritto nel segmento in cui il segnaposto inizia; i caratteri che ricadono
+     * nei segmenti successivi vengono rimossi, in modo da mantenere la formattazione del primo run.
+     * @param segments I testi dei run del paragrafo (gli elementi null vengono ignorati).
+     * @param replacement La funzione che restituisce il testo da scrivere al posto di ogni occorrenza.
+     * @return I nuovi testi: i segmenti non coinvolti sono restituiti come la stessa istanza ricevuta,
+     * oppure null se non ci sono occorrenze.
+     */
+    public String[] rewrite(String[] segments, Function<Match, String> replacement) {
+        StringBuilder text = new StringBuilder();
+        for (String segment : segments) {
+            if (segment != null) {
+                text.append(segment);
+            }
+        }
+        List<Match> matches = find(text);
+        if (matches.isEmpty()) {
+            return null;
+        }
+
+        String[] result = segments.clone();
+        int matchIndex = 0;
+        int offset = 0;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment == null) {
+                continue;
+            }
+            int segmentStart = offset;
+            int segmentEnd = offset + segment.length();
+            offset = segmentEnd;
+
+            while (matchIndex < matches.size() && matches.get(matchIndex).end() <= segmentStart) {
+                matchIndex++;
+            }
+            if (matchIndex >= matches.size() || matches.get(matchIndex).start() >= segmentEnd) {
+                continue;
+            }
+
+            // Il segmento è toccato da almeno un'occorrenza: viene ricostruito
+            StringBuilder sb = new StringBuilder(segment.length());
+            int pos = segmentStart;
+            int m = matchIndex;
+            while (pos < segmentEnd) {
+                Match match = m < matches.size() ? matches.get(m) : null;
+                if (match == null || match.start() >= segmentEnd) {
+                    sb.append(text, pos, segmentEnd);
+                    break;
+                }
+                if (match.start() > pos) {
+                    sb.append(text, pos, match.start());
+                    pos = match.start();
+                }
+                if (match.start() >= segmentStart) {
+                    sb.append(replacement.apply(match));
+                }
+                pos = Math.min(match.end(), segmentEnd);
+                if (match.end() <= segmentEnd) {
+                    m++;
+                }
+            }
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    /**
+     * Riconosce qualunque testo racchiuso tra {@code {{} e {@code }}}.
+     */
+    private static final class DelimiterMatcher extends PlaceholderMatcher {
+        @Override
+        public List<Match> find(CharSequence text) {
+            List<Match> matches = new ArrayList<>();
+            int length = text.length();
+            int start = -1;
+            for (int i = 0; i + 1 < length; i++) {
+                char c = text.charAt(i);
+                if (c == '{' && text.charAt(i + 1) == '{') {
+                    // In caso di "{{{" il segnaposto inizia dall'ultima coppia di parentesi
+                    start = i;
+                } else if (c == '}' && text.charAt(i + 1) == '}' && start >= 0 && i > start + 2) {
+                    matches.add(new Match(start, i + 2, text.subSequence(start, i + 2).toString()));
+                    start = -1;
+                    i++;
+                } else if (c == '}' && start >= 0) {
+                    start = -1;
+                }
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * Automa di Aho-Corasick sulle chiavi note.
+     */
+    private static final class AhoCorasickMatcher extends PlaceholderMatcher {
+        private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        private final List<Integer> failure = new ArrayList<>();
+        // Chiave più lunga che termina in ciascuno stato (null se nessuna)
+        private final List<String> output = new ArrayList<>();
+
+        private AhoCorasickMatcher(Collection<String> keys) {
+            newState();
+            for (String key : keys) {
+                if (key == null || key.isEmpty()) {
+                    continue;
+                }
+                int state = 0;
+                for (int i = 0; i < key.length(); i++) {
+                    Integer next = transitions.get(state).get(key.charAt(i));
+                    if (next == null) {
+                        next = newState();
+                        transitions.get(state).put(key.charAt(i), next);
+                    }
+                    state = next;
+                }
+                output.set(state, key);
+            }
+            buildFailureLinks();
+        }
+
+        private int newState() {
+            transitions.add(new HashMap<>());
+            failure.add(0);
+            output.add(null);
+            return transitions.size() - 1;
+        }
+
+        private void buildFailureLinks() {
+            Deque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (Map.Entry<Character, Integer> entry : transitions.get(state).entrySet()) {
+                    int child = entry.getValue();
+                    int fail = failure.get(state);
+                    while (fail != 0 && !transitions.get(fail).containsKey(entry.getKey())) {
+                        fail = failure.get(fail);
+                    }
+                    Integer target = transitions.get(fail).get(entry.getKey());
+                    failure.set(child, target != null && target != child ? target : 0);
+                    // Se lo stato non chiude una chiave eredita quella dello stato di fallimento
+                    if (output.get(child) == null) {
+                        output.set(child, output.get(failure.get(child)));
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+
+        @Override
+        public List<Match> find(CharSequence text) {
+            List<Match> matches = new ArrayList<>();
+            int state = 0;
+            int lastEnd = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                Integer next;
+                while ((next = transitions.get(state).get(c)) == null && state != 0) {
+                    state = failure.get(state);
+                }
+                state = next != null ? next : 0;
+
+                String key = output.get(state);
+                if (key != null) {
+                    int start = i + 1 - key.length();
+                    if (start >= lastEnd) {
+                        matches.add(new Match(start, i + 1, key));
+                        lastEnd = i + 1;
+                        // Le occorrenze non si sovrappongono: la ricerca riparte dopo la chiave trovata
+                        state = 0;
+                    }
+                }
+            }
+            return matches;
+        }
+    }
+}
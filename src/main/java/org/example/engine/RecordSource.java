@@ -0,0 +1,36 @@
+package org.example.engine;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente dei record con cui popolare i documenti in un'esecuzione senza interfaccia grafica.
+ * Ogni record è una tabella di sostituzione che associa i segnaposto (ad esempio {@code {{denominazione}}})
+ * ai rispettivi valori. I record vengono letti e consegnati uno alla volta, senza caricare l'intera sorgente
+ * in memoria.
+ */
+public interface RecordSource {
+
+    /**
+     * Legge i record della sorgente e li consegna, nell'ordine, al consumatore indicato.
+     * @param action Il consumatore dei record, invocato sul thread chiamante.
+     * @throws IOException Se la sorgente non può essere letta o contiene un record non valido.
+     */
+    void forEach(Consumer<Map<String, String>> action) throws IOException;
+
+    /**
+     * Descrizione della sorgente, riportata nelle statistiche dell'esecuzione.
+     * @return Il tipo e la posizione della sorgente.
+     */
+    String describe();
+
+    /**
+     * Converte il nome di una colonna nel segnaposto corrispondente.
+     * @param column Il nome della colonna.
+     * @return Il segnaposto, ad esempio {@code {{indirizzo}}} per la colonna {@code indirizzo}.
+     */
+    static String placeholder(String column) {
+        return "{{" + column.trim() + "}}";
+    }
+}
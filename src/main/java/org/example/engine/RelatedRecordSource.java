@@ -0,0 +1,79 @@
+package org.example.engine;
+
+import org.example.database.ClientRecord;
+import org.example.database.ClientSnapshot;
+import org.example.database.ConnectionPool;
+import org.example.database.DatabaseOperation;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente dei record della tabella gst_clienti che hanno in una colonna lo stesso valore di una scuola, ad esempio
+ * tutte le scuole dello stesso comune o dello stesso ambito. Alimenta le righe ripetute dei template
+ * (vedi {@link TableRows}): i record vengono letti in streaming dal database, o dallo snapshot locale, e consegnati
+ * uno alla volta in ordine di denominazione. La lettura dal database usa una connessione del pool presa per la
+ * durata della lettura, così da non bloccare le query degli altri documenti.
+ */
+public class RelatedRecordSource implements RecordSource {
+
+    private static final String TABLE = "gst_clienti";
+
+    private final ConnectionPool pool;
+    private final ClientSnapshot snapshot;
+    private final String scuola;
+    private final int column;
+
+    /**
+     * Costruttore della classe RelatedRecordSource per la lettura dal database.
+     * @param pool Il pool da cui prendere la connessione per la lettura.
+     * @param scuola La denominazione della scuola.
+     * @param column La posizione della colonna in {@link DatabaseOperation#CLIENT_COLUMNS}.
+     */
+    public RelatedRecordSource(ConnectionPool pool, String scuola, int column) {
+        this(pool, null, scuola, column);
+    }
+
+    /**
+     * Costruttore della classe RelatedRecordSource per la lettura dallo snapshot locale.
+     * @param snapshot Lo snapshot da cui leggere i record.
+     * @param scuola La denominazione della scuola.
+     * @param column La posizione della colonna in {@link DatabaseOperation#CLIENT_COLUMNS}.
+     */
+    public RelatedRecordSource(ClientSnapshot snapshot, String scuola, int column) {
+        this(null, snapshot, scuola, column);
+    }
+
+    private RelatedRecordSource(ConnectionPool pool, ClientSnapshot snapshot, String scuola, int column) {
+        this.pool = pool;
+        this.snapshot = snapshot;
+        this.scuola = scuola;
+        this.column = column;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> action) throws IOException {
+        Consumer<ClientRecord> onRow = client -> action.accept(WordReplacer.createRowReplace(client));
+        if (snapshot != null) {
+            snapshot.forEachRelated(scuola, column, onRow);
+            return;
+        }
+        if (pool == null) {
+            throw new IOException("Database non disponibile per la lettura di " + TABLE);
+        }
+        try (Connection connection = pool.borrow()) {
+            DatabaseOperation sql = new DatabaseOperation(connection);
+            sql.streamRelatedRows(TABLE, DatabaseOperation.CLIENT_COLUMNS[column], scuola, onRow);
+        } catch (SQLException e) {
+            throw new IOException("Lettura di " + TABLE + " non riuscita: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return (snapshot != null ? "snapshot:" : "db:") + TABLE + "." + DatabaseOperation.CLIENT_COLUMNS[column];
+    }
+}
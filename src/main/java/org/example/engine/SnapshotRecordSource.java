@@ -0,0 +1,33 @@
+package org.example.engine;
+
+import org.example.database.ClientSnapshot;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Sorgente di record letta da uno snapshot locale della tabella gst_clienti, senza connessione al database.
+ * Ogni record produce la stessa tabella di sostituzione di {@link DatabaseRecordSource}.
+ */
+public class SnapshotRecordSource implements RecordSource {
+
+    private final ClientSnapshot snapshot;
+
+    /**
+     * Costruttore della classe SnapshotRecordSource.
+     * @param snapshot Lo snapshot da cui leggere i record.
+     */
+    public SnapshotRecordSource(ClientSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public void forEach(Consumer<Map<String, String>> action) {
+        snapshot.forEach(client -> action.accept(WordReplacer.createReplace(client.denominazione(), client)));
+    }
+
+    @Override
+    public String describe() {
+        return "snapshot:" + snapshot.getPath();
+    }
+}
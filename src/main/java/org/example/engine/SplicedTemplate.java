@@ -0,0 +1,438 @@
+package org.example.engine;
+
+import org.example.engine.zip.CompressedEntry;
+import org.example.engine.zip.EntryBuffer;
+import org.example.engine.zip.RawZipReader;
+import org.example.engine.zip.RawZipWriter;
+import org.example.utils.Metrics;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Template Word precompilato in un formato su disco, che permette di generare i documenti senza leggere XML.
+ * <p>
+ * La compilazione riscrive {@code word/document.xml}, le intestazioni e i piè di pagina con le stesse regole di
+ * {@link StreamingFillEngine} (i segnaposto spezzati su più run vengono ricomposti nel primo run) e divide ogni parte
+ * in segmenti di byte statici separati dai segnaposto; le altre parti del pacchetto vengono salvate compresse come
+ * nel template, senza decomprimerle.
+ * Per generare un documento basta scrivere i segmenti intervallati dai valori del record, con i caratteri speciali
+ * dell'XML sostituiti dalle entità, e accodare le voci già compresse: non viene costruito alcun DOM.
+ * <p>
+ * Il file compilato ({@link #pathFor(String)}, accanto al template) contiene:
+ * <ul>
+ *     <li>l'intestazione: il numero magico {@code WTPL}, la versione del formato e l'impronta SHA-256 del template,
+ *     usata per riconoscere i file compilati da una versione precedente del template;</li>
+ *     <li>il numero delle voci del pacchetto e ogni voce nell'ordine originale: il nome e il tipo, seguiti per le voci
+ *     statiche da metodo, CRC32, dimensione e contenuto compresso, per le parti con segnaposto dai segmenti statici e
+ *     dalle chiavi dei segnaposto che li separano.</li>
+ * </ul>
+ * Le istanze sono immutabili e possono generare documenti in parallelo.
+ */
+public class SplicedTemplate {
+
+    /**
+     * Estensione del file compilato, aggiunta al nome del template.
+     */
+    public static final String EXTENSION = ".wtpl";
+
+    private static final int MAGIC = 0x5754504C; // "WTPL"
+    private static final int VERSION = 1;
+    private static final byte STATIC_PART = 0;
+    private static final byte SPLICED_PART = 1;
+
+    // Delimitatori dei segnaposto nell'XML riscritto durante la compilazione: caratteri dell'area privata Unicode,
+    // che in UTF-8 diventano sequenze di byte facili da ritrovare
+    private static final char SLOT_START = '\uE000';
+    private static final char SLOT_END = '\uE001';
+    private static final byte[] SLOT_START_BYTES = String.valueOf(SLOT_START).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SLOT_END_BYTES = String.valueOf(SLOT_END).getBytes(StandardCharsets.UTF_8);
+
+    // Le parti generate vengono compresse privilegiando la velocità; le altre restano come nel template
+    private static final int SPLICED_LEVEL = Deflater.BEST_SPEED;
+
+    private final File source;
+    private final long lastModified;
+    private final long length;
+    private final byte[] digest;
+    private final Part[] parts;
+    private final Set<String> placeholders;
+
+    /**
+     * Voce del pacchetto: già compressa ({@code entry}) oppure da ricomporre per ogni documento con i segmenti statici
+     * intervallati dai valori delle chiavi ({@code segments.length == keys.length + 1}).
+     */
+    private record Part(String name, CompressedEntry entry, byte[][] segments, String[] keys) {
+
+        /**
+         * Ricompone la parte con i valori di un record.
+         * @param replace La tabella dei segnaposto e dei valori da sostituire.
+         * @param values I valori già convertiti in byte per il documento corrente, condivisi tra le parti.
+         */
+        private EntryBuffer splice(Map<String, String> replace, Map<String, byte[]> values) {
+            int size = 0;
+            for (byte[] segment : segments) {
+                size += segment.length;
+            }
+            EntryBuffer buffer = new EntryBuffer(size + keys.length * 32);
+            for (int i = 0; i < keys.length; i++) {
+                buffer.writeBytes(segments[i]);
+                // I segnaposto senza valore restano invariati, come nella sostituzione classica
+                buffer.writeBytes(values.computeIfAbsent(keys[i], key -> {
+                    String value = replace.get(key);
+                    return escape(value != null ? value : key);
+                }));
+            }
+            buffer.writeBytes(segments[keys.length]);
+            return buffer;
+        }
+    }
+
+    private SplicedTemplate(File source, byte[] digest, Part[] parts) {
+        this.source = source;
+        this.lastModified = source.lastModified();
+        this.length = source.length();
+        this.digest = digest;
+        this.parts = parts;
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (Part part : parts) {
+            if (part.keys() != null) {
+                keys.addAll(Arrays.asList(part.keys()));
+            }
+        }
+        this.placeholders = Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Restituisce il percorso del file compilato di un template.
+     * @param templatePath Il percorso del file template.
+     * @return Il percorso del file compilato, nella stessa cartella del template.
+     */
+    public static Path pathFor(String templatePath) {
+        return Path.of(templatePath + EXTENSION);
+    }
+
+    /**
+     * Restituisce il template precompilato, leggendolo da {@link #pathFor(String)} se è stato compilato dalla versione
+     * attuale del template, altrimenti compilandolo e salvandolo.
+     * @param templatePath Il percorso del file template.
+     * @return Il template precompilato.
+     * @throws IOException Se il template non può essere letto o non può essere precompilato.
+     */
+    public static SplicedTemplate load(String templatePath) throws IOException {
+        File source = new File(templatePath);
+        byte[] bytes = readTemplate(source);
+        byte[] digest = digest(bytes);
+        Path path = pathFor(templatePath);
+        if (Files.isRegularFile(path)) {
+            try {
+                SplicedTemplate template = read(path, source, digest);
+                if (template != null) {
+                    return template;
+                }
+            } catch (IOException e) {
+                // File danneggiato o di un formato precedente: viene ricompilato
+            }
+        }
+        SplicedTemplate template = compile(source, bytes, digest);
+        try {
+            template.save(path);
+        } catch (IOException e) {
+            // La cartella del template può essere di sola lettura: il template compilato resta solo in memoria
+        }
+        return template;
+    }
+
+    /**
+     * Compila un template senza leggere né scrivere il file compilato.
+     * @param templatePath Il percorso del file template.
+     * @return Il template precompilato.
+     * @throws IOException Se il template non può essere letto o non può essere precompilato.
+     */
+    public static SplicedTemplate compile(String templatePath) throws IOException {
+        File source = new File(templatePath);
+        byte[] bytes = readTemplate(source);
+        return compile(source, bytes, digest(bytes));
+    }
+
+    private static byte[] readTemplate(File source) throws IOException {
+        try (Metrics.Sample sample = Metrics.start(Metrics.Phase.PARSE).detail(source.getPath())) {
+            byte[] bytes = Files.readAllBytes(source.toPath());
+            sample.read(bytes.length);
+            return bytes;
+        }
+    }
+
+    /**
+     * Compila il template: le parti senza segnaposto restano compresse come nell'archivio originale.
+     */
+    private static SplicedTemplate compile(File source, byte[] bytes, byte[] digest) throws IOException {
+        StreamingFillEngine engine = new StreamingFillEngine();
+        List<Part> parts = new ArrayList<>();
+        try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.PARSE).detail(source.getPath())) {
+            for (CompressedEntry entry : RawZipReader.read(bytes)) {
+                Part part = StreamingFillEngine.isTextPart(entry.name())
+                        ? splitPart(engine, entry.name(), entry.decompress())
+                        : null;
+                parts.add(part != null ? part : new Part(entry.name(), entry, null, null));
+            }
+        }
+        if (parts.stream().noneMatch(part -> part.name().equals("word/document.xml"))) {
+            throw new IOException(source + " non è un documento Word");
+        }
+        return new SplicedTemplate(source, digest, parts.toArray(new Part[0]));
+    }
+
+    /**
+     * Divide una parte in segmenti statici e segnaposto.
+     * @return La parte divisa, oppure null se la parte non contiene segnaposto e può restare statica.
+     * @throws IOException Se la parte non è un XML valido o i segnaposto non possono essere isolati.
+     */
+    private static Part splitPart(StreamingFillEngine engine, String name, byte[] content) throws IOException {
+        if (indexOf(content, SLOT_START_BYTES, 0) >= 0) {
+            throw new IOException("La parte " + name + " contiene caratteri riservati alla precompilazione");
+        }
+
+        // Ogni segnaposto viene sostituito da un delimitatore con la sua posizione nell'elenco delle chiavi
+        List<String> found = new ArrayList<>();
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream(content.length + 1024);
+        try {
+            engine.transform(new ByteArrayInputStream(content), rewritten, PlaceholderMatcher.any(), match -> {
+                found.add(match.key());
+                return SLOT_START + Integer.toString(found.size() - 1) + SLOT_END;
+            });
+        } catch (XMLStreamException e) {
+            throw new IOException("Errore durante la lettura di " + name + ": " + e.getMessage(), e);
+        }
+        if (found.isEmpty()) {
+            return null;
+        }
+
+        byte[] xml = rewritten.toByteArray();
+        byte[][] segments = new byte[found.size() + 1][];
+        String[] keys = new String[found.size()];
+        int position = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int start = indexOf(xml, SLOT_START_BYTES, position);
+            int end = start < 0 ? -1 : indexOf(xml, SLOT_END_BYTES, start);
+            if (end < 0) {
+                throw new IOException("Segnaposto non isolabile in " + name);
+            }
+            segments[i] = Arrays.copyOfRange(xml, position, start);
+            String index = new String(xml, start + SLOT_START_BYTES.length, end - start - SLOT_START_BYTES.length,
+                    StandardCharsets.UTF_8);
+            keys[i] = found.get(Integer.parseInt(index));
+            position = end + SLOT_END_BYTES.length;
+        }
+        if (indexOf(xml, SLOT_START_BYTES, position) >= 0) {
+            throw new IOException("Segnaposto non isolabile in " + name);
+        }
+        segments[keys.length] = Arrays.copyOfRange(xml, position, xml.length);
+        return new Part(name, null, segments, keys);
+    }
+
+    /**
+     * Legge un file compilato.
+     * @return Il template precompilato, oppure null se il file è stato compilato da un'altra versione del template.
+     * @throws IOException Se il file non può essere letto o non è un file compilato valido.
+     */
+    private static SplicedTemplate read(Path path, File source, byte[] digest) throws IOException {
+        try (Metrics.Sample sample = Metrics.start(Metrics.Phase.PARSE).detail(path.toString());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " non è un template compilato valido");
+            }
+            byte[] compiledFrom = in.readNBytes(digest.length);
+            if (!Arrays.equals(compiledFrom, digest)) {
+                return null;
+            }
+
+            Part[] parts = new Part[in.readInt()];
+            for (int i = 0; i < parts.length; i++) {
+                String name = in.readUTF();
+                byte type = in.readByte();
+                if (type == STATIC_PART) {
+                    int method = in.readUnsignedShort();
+                    long crc = in.readLong();
+                    long size = in.readLong();
+                    byte[] data = readBytes(in);
+                    parts[i] = new Part(name, new CompressedEntry(name, method, crc, size, data), null, null);
+                } else if (type == SPLICED_PART) {
+                    String[] keys = new String[in.readInt()];
+                    byte[][] segments = new byte[keys.length + 1][];
+                    for (int k = 0; k < keys.length; k++) {
+                        segments[k] = readBytes(in);
+                        keys[k] = in.readUTF();
+                    }
+                    segments[keys.length] = readBytes(in);
+                    parts[i] = new Part(name, null, segments, keys);
+                } else {
+                    throw new IOException(path + " è danneggiato");
+                }
+            }
+            sample.read(Files.size(path));
+            return new SplicedTemplate(source, digest, parts);
+        }
+    }
+
+    /**
+     * Salva il template compilato, sostituendo in modo atomico l'eventuale file esistente.
+     * @param path Il percorso del file compilato.
+     * @throws IOException Se il file non può essere scritto.
+     */
+    public void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(digest);
+            out.writeInt(parts.length);
+            for (Part part : parts) {
+                out.writeUTF(part.name());
+                if (part.entry() != null) {
+                    CompressedEntry entry = part.entry();
+                    out.writeByte(STATIC_PART);
+                    out.writeShort(entry.method());
+                    out.writeLong(entry.crc());
+                    out.writeLong(entry.size());
+                    writeBytes(out, entry.data());
+                } else {
+                    out.writeByte(SPLICED_PART);
+                    out.writeInt(part.keys().length);
+                    for (int k = 0; k < part.keys().length; k++) {
+                        writeBytes(out, part.segments()[k]);
+                        out.writeUTF(part.keys()[k]);
+                    }
+                    writeBytes(out, part.segments()[part.keys().length]);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restituisce i segnaposto trovati nel template, nell'ordine in cui compaiono.
+     * @return L'insieme dei segnaposto, comprensivi delle parentesi graffe.
+     */
+    public Set<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Indica se il file sorgente è stato modificato dopo la compilazione.
+     * @return true se il template va ricompilato.
+     */
+    public boolean isStale() {
+        return source.lastModified() != lastModified || source.length() != length;
+    }
+
+    /**
+     * Genera un documento applicando i valori di un record e lo salva su file.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la scrittura del file.
+     */
+    public void fill(Map<String, String> replace, File destinationFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destinationFile))) {
+            fill(replace, out);
+        }
+    }
+
+    /**
+     * Genera un documento applicando i valori di un record e lo scrive sullo stream indicato.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la scrittura.
+     */
+    public void fill(Map<String, String> replace, OutputStream out) throws IOException {
+        EntryBuffer[] contents = new EntryBuffer[parts.length];
+        try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.REPLACE)) {
+            Map<String, byte[]> values = new HashMap<>();
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i].entry() == null) {
+                    contents[i] = parts[i].splice(replace, values);
+                }
+            }
+        }
+
+        CompressedEntry[] entries = new CompressedEntry[parts.length];
+        try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.COMPRESS)) {
+            for (int i = 0; i < parts.length; i++) {
+                entries[i] = contents[i] == null ? parts[i].entry()
+                        : contents[i].compress(parts[i].name(), SPLICED_LEVEL);
+            }
+        }
+
+        try (Metrics.Sample sample = Metrics.start(Metrics.Phase.WRITE)) {
+            // La chiusura dell'archivio scrive la directory centrale senza chiudere lo stream di destinazione
+            CountingOutputStream counting = new CountingOutputStream(out);
+            try (RawZipWriter zip = new RawZipWriter(counting)) {
+                for (CompressedEntry entry : entries) {
+                    zip.write(entry);
+                }
+            }
+            sample.written(counting.getCount());
+        }
+    }
+
+    /**
+     * Converte un valore in UTF-8 sostituendo i caratteri che non possono comparire nel testo di un elemento XML.
+     */
+    static byte[] escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] data = in.readNBytes(length);
+        if (data.length != length) {
+            throw new EOFException();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,510 @@
+package org.example.engine;
+
+import org.example.utils.Metrics;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Motore di generazione alternativo a {@link CompiledTemplate} per template di grandi dimensioni.
+ * Invece di caricare l'intero documento in un DOM, legge {@code word/document.xml} (e le intestazioni e i piè di
+ * pagina) con un reader StAX e lo riscrive con un writer StAX, sostituendo i segnaposto nel testo dei {@code w:t}
+ * man mano che gli eventi passano. In memoria resta al più un paragrafo alla volta, necessario per riconoscere i
+ * segnaposto spezzati su più run; tutte le altre parti del pacchetto vengono copiate senza modifiche.
+ * <p>
+ * Le righe di tabella che contengono il marcatore {@code {{#nome}}} vengono ripetute per ogni record restituito da
+ * {@link TableRows}: ogni copia della riga viene scritta man mano che i record arrivano, così che anche una tabella di
+ * decine di migliaia di righe occupi in memoria una sola riga alla volta.
+ */
+public class StreamingFillEngine {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final QName PARAGRAPH = new QName(WORDML_NS, "p");
+    private static final QName ROW = new QName(WORDML_NS, "tr");
+    private static final QName TEXT = new QName(WORDML_NS, "t");
+    private static final QName XML_SPACE = new QName(XMLConstants.XML_NS_URI, "space", "xml");
+    private static final Pattern ROW_MARKER = Pattern.compile("\\{\\{#([^{}]+)}}");
+
+    private final XMLInputFactory inputFactory;
+    private final XMLOutputFactory outputFactory;
+    private final XMLEventFactory eventFactory;
+    // Matcher dei segnaposto di ogni template, con la versione del file a cui si riferiscono
+    private final Map<String, TemplateMatcher> matchers = new ConcurrentHashMap<>();
+
+    private record TemplateMatcher(long lastModified, long length, PlaceholderMatcher matcher) {
+    }
+
+    /**
+     * Costruttore della classe StreamingFillEngine.
+     */
+    public StreamingFillEngine() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        outputFactory = XMLOutputFactory.newInstance();
+        eventFactory = XMLEventFactory.newInstance();
+    }
+
+    /**
+     * Indica se una parte del pacchetto contiene testo in cui cercare i segnaposto.
+     * @param name Il nome della voce dell'archivio.
+     * @return true per il corpo del documento, le intestazioni e i piè di pagina.
+     */
+    static boolean isTextPart(String name) {
+        return name.equals("word/document.xml")
+                || (name.startsWith("word/header") && name.endsWith(".xml"))
+                || (name.startsWith("word/footer") && name.endsWith(".xml"));
+    }
+
+    /**
+     * Restituisce il nome indicato nel marcatore di una riga ripetuta.
+     * @param text Il testo della riga.
+     * @return Il nome, ad esempio {@code comune} per {@code {{#comune}}}, oppure null se la riga non va ripetuta.
+     */
+    static String repeatingRowName(CharSequence text) {
+        Matcher matcher = ROW_MARKER.matcher(text);
+        return matcher.find() ? matcher.group(1).trim() : null;
+    }
+
+    /**
+     * Legge una sola volta il template per scoprirne i campi: i segnaposto, anche se spezzati su più run, e la
+     * presenza di righe di tabella da ripetere.
+     * @param templatePath Il percorso del file template.
+     * @return I campi del template.
+     * @throws IOException Se il template non può essere letto.
+     */
+    public TemplateFields scan(String templatePath) throws IOException {
+        Set<String> placeholders = new LinkedHashSet<>();
+        boolean repeatingRows = false;
+        try (ZipFile template = new ZipFile(templatePath)) {
+            Enumeration<? extends ZipEntry> entries = template.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (isTextPart(entry.getName())) {
+                    try (InputStream in = template.getInputStream(entry)) {
+                        repeatingRows |= scan(in, placeholders);
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Errore durante la lettura del template: " + e.getMessage(), e);
+        }
+        return new TemplateFields(Collections.unmodifiableSet(placeholders), repeatingRows);
+    }
+
+    /**
+     * Raccoglie i segnaposto di una parte, cercandoli nel testo completo di ogni paragrafo.
+     * @return true se la parte contiene righe di tabella da ripetere.
+     */
+    private boolean scan(InputStream in, Set<String> placeholders) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in, "UTF-8");
+        try {
+            PlaceholderMatcher matcher = PlaceholderMatcher.any();
+            StringBuilder paragraph = new StringBuilder();
+            StringBuilder row = new StringBuilder();
+            int paragraphDepth = 0;
+            int rowDepth = 0;
+            boolean inText = false;
+            boolean repeatingRows = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    QName name = reader.getName();
+                    if (name.equals(PARAGRAPH)) {
+                        paragraphDepth++;
+                    } else if (name.equals(TEXT)) {
+                        inText = true;
+                    } else if (name.equals(ROW) && (paragraphDepth == 0 || rowDepth > 0)) {
+                        // Come nella generazione, le righe delle tabelle nelle caselle di testo non vengono ripetute
+                        rowDepth++;
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS && inText) {
+                    paragraph.append(reader.getText());
+                    if (rowDepth > 0) {
+                        row.append(reader.getText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    QName name = reader.getName();
+                    if (name.equals(TEXT)) {
+                        inText = false;
+                    } else if (name.equals(PARAGRAPH) && --paragraphDepth == 0) {
+                        for (PlaceholderMatcher.Match match : matcher.find(paragraph)) {
+                            placeholders.add(match.key());
+                        }
+                        paragraph.setLength(0);
+                    } else if (name.equals(ROW) && rowDepth > 0 && --rowDepth == 0) {
+                        repeatingRows |= repeatingRowName(row) != null;
+                        row.setLength(0);
+                    }
+                }
+            }
+            return repeatingRows;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Genera un documento dal template applicando i valori indicati e lo salva su file.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura.
+     */
+    public void fill(String templatePath, Map<String, String> replace, File destinationFile) throws IOException {
+        fill(templatePath, replace, null, destinationFile);
+    }
+
+    /**
+     * Genera un documento dal template applicando i valori indicati, ripetendo le righe marcate con i record di
+     * {@code rows}, e lo salva su file.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param rows I record delle righe ripetute, oppure null per lasciare le righe marcate come sono.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura.
+     */
+    public void fill(String templatePath, Map<String, String> replace, TableRows rows, File destinationFile)
+            throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destinationFile))) {
+            fill(templatePath, replace, rows, out);
+        }
+    }
+
+    /**
+     * Genera un documento dal template applicando i valori indicati e lo scrive sullo stream.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura.
+     */
+    public void fill(String templatePath, Map<String, String> replace, OutputStream out) throws IOException {
+        fill(templatePath, replace, null, out);
+    }
+
+    /**
+     * Genera un documento dal template applicando i valori indicati, ripetendo le righe marcate con i record di
+     * {@code rows}, e lo scrive sullo stream.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param rows I record delle righe ripetute, oppure null per lasciare le righe marcate come sono.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura.
+     */
+    public void fill(String templatePath, Map<String, String> replace, TableRows rows, OutputStream out)
+            throws IOException {
+        PlaceholderMatcher matcher = matcherFor(templatePath);
+
+        // Lettura, sostituzione e scrittura delle parti sono intrecciate: la riscrittura del pacchetto conta come
+        // sostituzione, la chiusura dell'archivio come scrittura
+        CountingOutputStream counting = new CountingOutputStream(out);
+        try (ZipFile template = new ZipFile(templatePath)) {
+            ZipOutputStream zos = new ZipOutputStream(counting);
+            try (Metrics.Sample sample = Metrics.start(Metrics.Phase.REPLACE)) {
+                Enumeration<? extends ZipEntry> entries = template.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    zos.putNextEntry(new ZipEntry(entry.getName()));
+                    try (InputStream in = template.getInputStream(entry)) {
+                        if (isTextPart(entry.getName())) {
+                            // Il writer StAX scrive a piccoli frammenti: senza buffer ognuno passerebbe dal Deflater
+                            OutputStream part = new BufferedOutputStream(zos, 64 * 1024);
+                            // I segnaposto senza valore restano invariati, come con CompiledTemplate
+                            transform(in, part, matcher, match -> replace.getOrDefault(match.key(), match.key()), rows);
+                            part.flush();
+                        } else {
+                            in.transferTo(zos);
+                        }
+                    }
+                    zos.closeEntry();
+                    sample.read(Math.max(0, entry.getCompressedSize()));
+                }
+            }
+            try (Metrics.Sample sample = Metrics.start(Metrics.Phase.WRITE)) {
+                zos.finish();
+                zos.flush();
+                sample.written(counting.getCount());
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Errore durante la lettura del template: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Restituisce il matcher dei segnaposto del template, costruito alla prima richiesta con {@link #scan(String)} e
+     * ricostruito quando il file viene modificato. La cache ha una voce per template, qualunque sia l'insieme di
+     * chiavi dei record con cui viene compilato.
+     */
+    private PlaceholderMatcher matcherFor(String templatePath) throws IOException {
+        File file = new File(templatePath);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        TemplateMatcher cached = matchers.get(templatePath);
+        if (cached == null || cached.lastModified() != lastModified || cached.length() != length) {
+            PlaceholderMatcher matcher = PlaceholderMatcher.forKeys(scan(templatePath).placeholders());
+            cached = new TemplateMatcher(lastModified, length, matcher);
+            matchers.put(templatePath, cached);
+        }
+        return cached.matcher();
+    }
+
+    /**
+     * Copia una parte XML sostituendo i segnaposto contenuti nei {@code w:t}.
+     * @param in Lo stream della parte originale.
+     * @param out Lo stream della parte generata (non viene chiuso).
+     * @param matcher Il matcher delle chiavi da sostituire.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @throws XMLStreamException Se la parte non è un XML valido.
+     */
+    void transform(InputStream in, OutputStream out, PlaceholderMatcher matcher, Map<String, String> replace)
+            throws XMLStreamException {
+        transform(in, out, matcher, match -> replace.get(match.key()));
+    }
+
+    /**
+     * Copia una parte XML sostituendo i segnaposto contenuti nei {@code w:t} con il testo restituito dalla funzione.
+     * @param in Lo stream della parte originale.
+     * @param out Lo stream della parte generata (non viene chiuso).
+     * @param matcher Il matcher dei segnaposto.
+     * @param replacement La funzione che restituisce il testo da scrivere al posto di ogni occorrenza.
+     * @throws XMLStreamException Se la parte non è un XML valido.
+     */
+    void transform(InputStream in, OutputStream out, PlaceholderMatcher matcher,
+                   Function<PlaceholderMatcher.Match, String> replacement) throws XMLStreamException {
+        try {
+            transform(in, out, matcher, replacement, null);
+        } catch (IOException e) {
+            // Senza righe ripetute non viene letta alcuna sorgente
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copia una parte XML sostituendo i segnaposto e ripetendo le righe di tabella marcate con {@code {{#nome}}}.
+     * @param in Lo stream della parte originale.
+     * @param out Lo stream della parte generata (non viene chiuso).
+     * @param matcher Il matcher dei segnaposto.
+     * @param replacement La funzione che restituisce il testo da scrivere al posto di ogni occorrenza.
+     * @param rows I record delle righe ripetute, oppure null per trattare le righe marcate come le altre.
+     * @throws XMLStreamException Se la parte non è un XML valido.
+     * @throws IOException Se i record di una riga ripetuta non possono essere letti.
+     */
+    void transform(InputStream in, OutputStream out, PlaceholderMatcher matcher,
+                   Function<PlaceholderMatcher.Match, String> replacement, TableRows rows)
+            throws XMLStreamException, IOException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in, "UTF-8");
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, "UTF-8");
+        ParagraphWriter paragraphs = new ParagraphWriter(writer, matcher, replacement);
+
+        // Eventi della riga di tabella corrente, se le righe marcate vanno ripetute
+        List<XMLEvent> row = new ArrayList<>();
+        int rowDepth = 0;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (rows != null && !paragraphs.inParagraph()
+                    && (rowDepth > 0 || event.isStartElement() && event.asStartElement().getName().equals(ROW))) {
+                if (event.isStartElement() && event.asStartElement().getName().equals(ROW)) {
+                    rowDepth++;
+                }
+                row.add(event);
+                if (event.isEndElement() && event.asEndElement().getName().equals(ROW) && --rowDepth == 0) {
+                    writeRow(row, paragraphs, writer, replacement, rows);
+                    row.clear();
+                }
+            } else {
+                paragraphs.add(event);
+            }
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    /**
+     * Scrive una riga di tabella: le righe marcate vengono scritte una volta per ogni record, le altre come sono.
+     * Se non ci sono record la riga viene scritta una volta con i segnaposto vuoti, perché una tabella senza righe
+     * non è valida.
+     */
+    private void writeRow(List<XMLEvent> row, ParagraphWriter paragraphs, XMLEventWriter writer,
+                          Function<PlaceholderMatcher.Match, String> replacement, TableRows rows)
+            throws XMLStreamException, IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i + 1 < row.size(); i++) {
+            if (row.get(i).isStartElement() && row.get(i).asStartElement().getName().equals(TEXT)
+                    && row.get(i + 1).isCharacters()) {
+                text.append(row.get(i + 1).asCharacters().getData());
+            }
+        }
+        String name = repeatingRowName(text);
+        if (name == null) {
+            for (XMLEvent event : row) {
+                paragraphs.add(event);
+            }
+            return;
+        }
+
+        RecordSource source = rows.rows(name);
+        int[] written = {0};
+        if (source != null) {
+            try {
+                source.forEach(record -> {
+                    try {
+                        writeRowCopy(row, writer, replacement, record, false);
+                        written[0]++;
+                    } catch (XMLStreamException e) {
+                        throw new UncheckedIOException(new IOException(e.getMessage(), e));
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        if (written[0] == 0) {
+            writeRowCopy(row, writer, replacement, Map.of(), true);
+        }
+    }
+
+    /**
+     * Scrive una copia della riga: i segnaposto prendono il valore del record o, se il record non lo contiene,
+     * quello del documento; il marcatore viene rimosso.
+     */
+    private void writeRowCopy(List<XMLEvent> row, XMLEventWriter writer,
+                              Function<PlaceholderMatcher.Match, String> replacement, Map<String, String> record,
+                              boolean blank) throws XMLStreamException {
+        ParagraphWriter copy = new ParagraphWriter(writer, PlaceholderMatcher.any(), match -> {
+            if (repeatingRowName(match.key()) != null) {
+                return "";
+            }
+            String value = record.get(match.key());
+            if (value == null) {
+                value = replacement.apply(match);
+            }
+            return value != null ? value : blank ? "" : match.key();
+        });
+        for (XMLEvent event : row) {
+            copy.add(event);
+        }
+    }
+
+    /**
+     * Scrive gli eventi di una parte, trattenendo quelli di ogni paragrafo fino alla sua chiusura per applicare le
+     * sostituzioni al testo completo del paragrafo.
+     */
+    private final class ParagraphWriter {
+        private final XMLEventWriter writer;
+        private final PlaceholderMatcher matcher;
+        private final Function<PlaceholderMatcher.Match, String> replacement;
+        // Eventi del paragrafo corrente: vengono scritti solo alla chiusura del paragrafo più esterno
+        private final List<XMLEvent> buffer = new ArrayList<>();
+        private int depth;
+
+        private ParagraphWriter(XMLEventWriter writer, PlaceholderMatcher matcher,
+                                Function<PlaceholderMatcher.Match, String> replacement) {
+            this.writer = writer;
+            this.matcher = matcher;
+            this.replacement = replacement;
+        }
+
+        private boolean inParagraph() {
+            return depth > 0;
+        }
+
+        private void add(XMLEvent event) throws XMLStreamException {
+            if (event.isStartElement() && event.asStartElement().getName().equals(PARAGRAPH)) {
+                depth++;
+            }
+
+            if (depth == 0) {
+                writer.add(event);
+            } else {
+                buffer.add(event);
+            }
+
+            if (event.isEndElement() && event.asEndElement().getName().equals(PARAGRAPH)) {
+                depth--;
+                if (depth == 0) {
+                    rewriteParagraph(buffer, matcher, replacement);
+                    for (XMLEvent buffered : buffer) {
+                        writer.add(buffered);
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applica le sostituzioni al testo di un paragrafo, modificando solo gli eventi dei {@code w:t} coinvolti.
+     */
+    private void rewriteParagraph(List<XMLEvent> events, PlaceholderMatcher matcher,
+                                  Function<PlaceholderMatcher.Match, String> replacement) {
+        // Posizione dell'apertura di ogni w:t e del relativo testo (-1 se il w:t è vuoto)
+        List<int[]> texts = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            XMLEvent event = events.get(i);
+            if (event.isStartElement() && event.asStartElement().getName().equals(TEXT)) {
+                int characters = i + 1 < events.size() && events.get(i + 1).isCharacters() ? i + 1 : -1;
+                texts.add(new int[]{i, characters});
+            }
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+
+        String[] segments = new String[texts.size()];
+        for (int i = 0; i < segments.length; i++) {
+            int characters = texts.get(i)[1];
+            segments[i] = characters >= 0 ? events.get(characters).asCharacters().getData() : "";
+        }
+
+        String[] rewritten = matcher.rewrite(segments, replacement);
+        if (rewritten == null) {
+            return;
+        }
+        // A ritroso, così che gli eventi inseriti non spostino le posizioni ancora da elaborare
+        for (int i = segments.length - 1; i >= 0; i--) {
+            if (rewritten[i] == segments[i]) {
+                continue;
+            }
+            int start = texts.get(i)[0];
+            int characters = texts.get(i)[1];
+            events.set(start, preserveSpace(events.get(start).asStartElement()));
+            if (characters >= 0) {
+                events.set(characters, eventFactory.createCharacters(rewritten[i]));
+            } else if (!rewritten[i].isEmpty()) {
+                events.add(start + 1, eventFactory.createCharacters(rewritten[i]));
+            }
+        }
+    }
+
+    /**
+     * Aggiunge {@code xml:space="preserve"} a un {@code w:t}, così che gli spazi dei valori inseriti non vadano persi.
+     */
+    private StartElement preserveSpace(StartElement element) {
+        if (element.getAttributeByName(XML_SPACE) != null) {
+            return element;
+        }
+        List<Attribute> attributes = new ArrayList<>();
+        Iterator<Attribute> it = element.getAttributes();
+        while (it.hasNext()) {
+            attributes.add(it.next());
+        }
+        attributes.add(eventFactory.createAttribute(XML_SPACE, "preserve"));
+        return eventFactory.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+}
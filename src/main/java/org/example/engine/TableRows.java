@@ -0,0 +1,21 @@
+package org.example.engine;
+
+import java.io.IOException;
+
+/**
+ * Sorgente dei record con cui ripetere le righe di tabella di un template.
+ * Una riga che contiene il marcatore {@code {{#nome}}} viene scritta una volta per ogni record restituito per
+ * {@code nome}; nelle copie i segnaposto prendono i valori del record.
+ */
+@FunctionalInterface
+public interface TableRows {
+
+    /**
+     * Restituisce i record di una riga ripetuta.
+     * @param name Il nome indicato nel marcatore, ad esempio {@code comune} per {@code {{#comune}}}.
+     * @return La sorgente dei record, letti uno alla volta durante la scrittura della tabella, oppure null se la riga
+     * non ha record.
+     * @throws IOException Se il nome non è valido.
+     */
+    RecordSource rows(String name) throws IOException;
+}
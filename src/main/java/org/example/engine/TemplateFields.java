@@ -0,0 +1,13 @@
+package org.example.engine;
+
+import java.util.Set;
+
+/**
+ * Campi di un template Word, trovati con un'unica lettura del file (vedi {@link StreamingFillEngine#scan(String)}).
+ *
+ * @param placeholders I segnaposto del corpo, delle intestazioni e dei piè di pagina, comprensivi delle parentesi
+ *                     graffe, nell'ordine in cui compaiono.
+ * @param repeatingRows true se il template contiene righe di tabella da ripetere, marcate con {@code {{#nome}}}.
+ */
+public record TemplateFields(Set<String> placeholders, boolean repeatingRows) {
+}
@@ -1,68 +1,270 @@
 package org.example.engine;
 
 import org.apache.poi.xwpf.usermodel.*;
+import org.example.database.ClientRecord;
+import org.example.database.ClientSnapshot;
+import org.example.database.ConnectionPool;
 import org.example.database.DatabaseOperation;
-import org.example.utils.StringUtils;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTBookmark;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
 
-import javax.swing.*;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * La classe WordReplacer permette di effettuare sostituzioni di testo all'interno di file Word utilizzando segnalibri
  * e parametri specifici presi da un database.
  */
-public class WordReplacer extends JFrame {
+public class WordReplacer {
+
+    /**
+     * Segnaposto delle colonne di gst_clienti ({@link ColumnMapping#ALL}); solo questi vengono compilati nei template.
+     */
+    private static final PlaceholderMatcher REPLACE_MATCHER =
+            PlaceholderMatcher.forKeys(ColumnMapping.ALL.getPlaceholders());
+
+    /**
+     * Segnalibri letti dai moduli restituiti dalle scuole.
+     */
+    public static final List<String> DEFAULT_BOOKMARKS = List.of("indirizzo", "istituzione", "dir_gen");
+
+    /**
+     * Numero massimo di template compilati conservati: ognuno tiene in memoria fino a un documento parsato per thread.
+     */
+    static final int MAX_COMPILED_TEMPLATES = 4;
 
     private String filePath;
     private final List<String> bookmarksArray;
-    private Hashtable<String, String> replace;
-    private Connection conn;
+    private volatile ConnectionPool pool;
     private String scuola;
+    private volatile ClientSnapshot snapshot;
+    private Engine engine = Engine.POI;
+    // Template compilati in ordine di utilizzo: oltre il limite il meno recente viene chiuso
+    private final Map<String, CompiledTemplate> compiledTemplates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledTemplate> eldest) {
+            if (size() <= MAX_COMPILED_TEMPLATES) {
+                return false;
+            }
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+    };
+    private final StreamingFillEngine streamingEngine = new StreamingFillEngine();
+    private final Map<String, SplicedTemplate> splicedTemplates = new ConcurrentHashMap<>();
+    // Data di modifica dei template che non è stato possibile precompilare, per non ritentare finché non cambiano
+    private final Map<String, Long> notSpliceable = new ConcurrentHashMap<>();
+    // Campi dei template, con la data di modifica a cui si riferiscono
+    private final Map<String, FieldScan> templateFields = new ConcurrentHashMap<>();
+
+    private record FieldScan(long lastModified, TemplateFields fields, ColumnMapping mapping) {
+    }
+
+    /**
+     * Motori disponibili per la generazione dei documenti.
+     */
+    public enum Engine {
+        /**
+         * Template compilato con Apache POI e riutilizzato per ogni record ({@link CompiledTemplate}).
+         */
+        POI,
+        /**
+         * Riscrittura in streaming dell'XML del documento, con memoria costante ({@link StreamingFillEngine}).
+         * Indicato per template di grandi dimensioni o per molte generazioni in parallelo.
+         */
+        STREAMING,
+        /**
+         * Template precompilato su disco e ricomposto a livello di byte, senza leggere XML ({@link SplicedTemplate}).
+         * I template che non possono essere precompilati vengono generati con {@link #POI}.
+         */
+        SPLICE
+    }
 
     /**
      * Costruttore della classe WordReplacer.
-     * @param conn La connessione al database per le operazioni di query.
+     * @param pool Il pool da cui prendere una connessione per ogni operazione sul database, oppure null se il
+     *             database non è ancora disponibile.
      */
-    public WordReplacer(Connection conn) {
-        bookmarksArray = new ArrayList<>();
-        bookmarksArray.add("indirizzo");
-        bookmarksArray.add("istituzione");
-        bookmarksArray.add("dir_gen");
-        replace = new Hashtable<>();
-        this.conn = conn;
+    public WordReplacer(ConnectionPool pool) {
+        bookmarksArray = new ArrayList<>(DEFAULT_BOOKMARKS);
+        this.pool = pool;
     }
 
     /**
      * Crea una tabella di sostituzione per il testo basata sulle informazioni della scuola.
+     * Se è impostato uno snapshot locale il record viene letto da quello, senza interrogare il database;
+     * altrimenti vengono lette solo le colonne usate dal template, e nessuna query viene eseguita se il template non
+     * ne usa alcuna.
      * @param scuola La denominazione della scuola usata per recuperare i dati dal database.
+     * @param mapping Le colonne usate dal template (vedi {@link #getColumnMapping(String)}).
      * @return Un hashtable con i segnaposto e i valori da sostituire.
+     * @throws IOException Se il record non può essere letto dal database.
      */
-    private Hashtable<String, String> createReplace(String scuola) {
-        Hashtable<String, String> replace = new Hashtable<>();
-        DatabaseOperation sql = new DatabaseOperation(this.conn);
+    Hashtable<String, String> createReplace(String scuola, ColumnMapping mapping) throws IOException {
+        ClientSnapshot current = this.snapshot;
+        if (current != null) {
+            return mapping.replace(scuola, current.get(scuola));
+        }
+        if (mapping.isEmpty()) {
+            return new Hashtable<>();
+        }
 
-        Hashtable<String, String> conditions = new Hashtable<>();
-        conditions.put("denominazione", scuola);
+        try (Connection connection = borrowConnection()) {
+            DatabaseOperation sql = new DatabaseOperation(connection);
+            return mapping.replace(scuola, sql.selectClient("gst_clienti", scuola, mapping.getColumns()));
+        } catch (SQLException e) {
+            throw new IOException("Lettura di " + scuola + " non riuscita: " + e.getMessage(), e);
+        }
+    }
 
-        ArrayList<Object> results = sql.selectFromTable("gst_clienti", conditions);
+    /**
+     * Crea una tabella di sostituzione con tutte le colonne di un record già caricato della tabella gst_clienti,
+     * per le sorgenti che non conoscono il template (vedi {@link ColumnMapping#replace(String, ClientRecord)}).
+     * @param scuola La denominazione della scuola.
+     * @param client Il record della scuola, oppure null se la scuola non è presente nel database.
+     * @return Un hashtable con i segnaposto e i valori da sostituire.
+     */
+    static Hashtable<String, String> createReplace(String scuola, ClientRecord client) {
+        return ColumnMapping.ALL.replace(scuola, client);
+    }
 
-        for (Object row : results) {
-            Object[] data = (Object[]) row;
+    /**
+     * Crea la tabella di sostituzione di una copia di una riga ripetuta: ogni colonna del record è disponibile come
+     * segnaposto ({@code {{comune}}}, {@code {{cap}}}, ...), con lo stesso formato di
+     * {@link #createReplace(String, ClientRecord)}.
+     * @param client Il record della tabella gst_clienti.
+     * @return Un hashtable con i segnaposto e i valori da sostituire.
+     */
+    static Hashtable<String, String> createRowReplace(ClientRecord client) {
+        return createReplace(client.denominazione() != null ? client.denominazione() : "", client);
+    }
 
-            // Accedi ai valori del database e li inserisci nella tabella di sostituzione.
-            String indirizzo = (String) data[4];
-            replace.put("{{denominazione}}", scuola);
-            replace.put("{{indirizzo}}", StringUtils.capitalizeFirstLetter(indirizzo));
+    /**
+     * Restituisce i record delle righe ripetute dei documenti di una scuola: una riga marcata con
+     * {@code {{#colonna}}}, ad esempio {@code {{#comune}}} o {@code {{#Ambito}}}, viene ripetuta per ogni scuola
+     * con lo stesso valore della colonna. I record vengono letti dallo snapshot locale, se impostato, altrimenti in
+     * streaming dal database, con una connessione del pool presa per la sola lettura.
+     * @param scuola La denominazione della scuola.
+     * @return I record delle righe ripetute.
+     */
+    public TableRows tableRows(String scuola) {
+        ClientSnapshot current = this.snapshot;
+        ConnectionPool connections = this.pool;
+        return name -> {
+            int column = DatabaseOperation.clientColumn(name);
+            if (column < 0) {
+                throw new IOException("Colonna sconosciuta nella riga ripetuta {{#" + name + "}}");
+            }
+            return current != null
+                    ? new RelatedRecordSource(current, scuola, column)
+                    : new RelatedRecordSource(connections, scuola, column);
+        };
+    }
+
+    /**
+     * Restituisce i campi del template, letti alla prima richiesta e ricordati finché il file non viene modificato.
+     * @param templatePath Il percorso del file template.
+     * @return I segnaposto del template e la presenza di righe ripetute.
+     * @throws IOException Se il template non può essere letto.
+     */
+    public TemplateFields getTemplateFields(String templatePath) throws IOException {
+        return scan(templatePath).fields();
+    }
+
+    /**
+     * Restituisce le colonne di gst_clienti usate dal template, per leggere dal database solo quelle.
+     * @param templatePath Il percorso del file template.
+     * @return L'associazione tra i segnaposto del template e le colonne.
+     * @throws IOException Se il template non può essere letto.
+     */
+    public ColumnMapping getColumnMapping(String templatePath) throws IOException {
+        return scan(templatePath).mapping();
+    }
+
+    /**
+     * Indica se il template contiene righe di tabella da ripetere.
+     * @param templatePath Il percorso del file template.
+     * @return true se il template contiene almeno una riga marcata con {@code {{#colonna}}}.
+     * @throws IOException Se il template non può essere letto.
+     */
+    public boolean hasRepeatingRows(String templatePath) throws IOException {
+        return scan(templatePath).fields().repeatingRows();
+    }
+
+    private FieldScan scan(String templatePath) throws IOException {
+        long lastModified = new File(templatePath).lastModified();
+        FieldScan scan = templateFields.get(templatePath);
+        if (scan == null || scan.lastModified() != lastModified) {
+            TemplateFields fields = streamingEngine.scan(templatePath);
+            scan = new FieldScan(lastModified, fields, ColumnMapping.forPlaceholders(fields.placeholders()));
+            templateFields.put(templatePath, scan);
         }
+        return scan;
+    }
+
+    /**
+     * Restituisce il pool di connessioni usato per recuperare i dati delle scuole.
+     * @return Il pool, oppure null se il database non è disponibile.
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Imposta il pool di connessioni usato per recuperare i dati delle scuole.
+     * @param pool Il pool da cui prendere una connessione per ogni operazione.
+     */
+    public void setPool(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Prende in prestito una connessione dal pool, da chiudere al termine dell'operazione.
+     * @return La connessione.
+     * @throws SQLException Se il database non è disponibile o nessuna connessione si libera in tempo.
+     */
+    Connection borrowConnection() throws SQLException {
+        ConnectionPool connections = this.pool;
+        if (connections == null) {
+            throw new SQLException("Database non disponibile");
+        }
+        return connections.borrow();
+    }
+
+    /**
+     * Restituisce lo snapshot locale da cui vengono letti i dati delle scuole.
+     * @return Lo snapshot, oppure null se i dati vengono letti dal database.
+     */
+    public ClientSnapshot getSnapshot() {
+        return snapshot;
+    }
 
-        return replace;
+    /**
+     * Imposta lo snapshot locale da cui leggere i dati delle scuole al posto del database.
+     * @param snapshot Lo snapshot, oppure null per tornare a interrogare il database.
+     */
+    public void setSnapshot(ClientSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Restituisce il motore usato per la generazione dei documenti.
+     * @return Il motore corrente.
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Imposta il motore usato per la generazione dei documenti.
+     * @param engine Il motore da usare.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
     }
 
     /**
@@ -104,64 +306,168 @@ public class WordReplacer extends JFrame {
      * @throws IOException Se si verifica un errore durante la lettura o la scrittura del file.
      */
     public void replaceTextInWordFile(String destinationPath, String fileName) throws IOException {
-        this.replace = this.createReplace(this.getScuola());
-        File destinationFile = new File(destinationPath, fileName);
+        replaceTextInWordFile(this.filePath, this.getScuola(), new File(destinationPath, fileName));
+    }
 
-        try (FileInputStream fis = new FileInputStream(this.filePath);
-             XWPFDocument document = new XWPFDocument(fis)) {
+    /**
+     * Genera il documento per una singola scuola senza modificare lo stato dell'istanza,
+     * in modo da poter essere invocato in parallelo da più thread (vedi {@link BatchReplacer} e {@link GenerationScheduler}).
+     * @param templatePath Il percorso del file template.
+     * @param scuola La denominazione della scuola.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura del file.
+     */
+    public void replaceTextInWordFile(String templatePath, String scuola, File destinationFile) throws IOException {
+        fill(templatePath, createReplace(scuola, getColumnMapping(templatePath)), tableRows(scuola), destinationFile);
+    }
 
-            // Sostituzione del testo nei paragrafi e nelle tabelle
-            replaceTextInParagraphs(document);
-            replaceTextInTables(document);
+    /**
+     * Genera il documento per una singola scuola e lo scrive sullo stream indicato, ad esempio una voce di un archivio.
+     * @param templatePath Il percorso del file template.
+     * @param scuola La denominazione della scuola.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la lettura del template o la scrittura.
+     */
+    public void replaceTextInWordFile(String templatePath, String scuola, OutputStream out) throws IOException {
+        fill(templatePath, createReplace(scuola, getColumnMapping(templatePath)), tableRows(scuola), out);
+    }
 
-            // Salvataggio del documento
-            try (FileOutputStream fos = new FileOutputStream(destinationFile)) {
-                document.write(fos);
-            }
+    /**
+     * Genera un documento dal template applicando una tabella di sostituzione già pronta.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la lettura del template o la scrittura.
+     */
+    void fill(String templatePath, Map<String, String> replace, OutputStream out) throws IOException {
+        fill(templatePath, replace, null, out);
+    }
+
+    /**
+     * Genera un documento dal template applicando una tabella di sostituzione già pronta e ripetendo le righe
+     * marcate con i record indicati. I template con righe ripetute vengono sempre generati in streaming
+     * ({@link Engine#STREAMING}), così che le righe vengano scritte man mano che i record arrivano dal database.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param rows I record delle righe ripetute, oppure null per lasciare le righe marcate come sono.
+     * @param out Lo stream di destinazione (non viene chiuso).
+     * @throws IOException Se si verifica un errore durante la lettura del template o la scrittura.
+     */
+    void fill(String templatePath, Map<String, String> replace, TableRows rows, OutputStream out)
+            throws IOException {
+        if (rows != null && hasRepeatingRows(templatePath)) {
+            streamingEngine.fill(templatePath, replace, rows, out);
+            return;
         }
+        SplicedTemplate spliced = engine == Engine.SPLICE ? getSplicedTemplate(templatePath) : null;
+        if (spliced != null) {
+            spliced.fill(replace, out);
+        } else if (engine == Engine.STREAMING) {
+            streamingEngine.fill(templatePath, replace, out);
+        } else {
+            getCompiledTemplate(templatePath).fill(replace, out);
+        }
+    }
 
+    /**
+     * Genera un documento dal template applicando una tabella di sostituzione già pronta.
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura del file.
+     */
+    void fill(String templatePath, Map<String, String> replace, File destinationFile) throws IOException {
+        fill(templatePath, replace, null, destinationFile);
     }
 
     /**
-     * Sostituisce il testo nei paragrafi del documento.
-     * @param document Il documento Word nel quale effettuare la sostituzione.
+     * Genera un documento dal template applicando una tabella di sostituzione già pronta e ripetendo le righe
+     * marcate con i record indicati (vedi {@link #fill(String, Map, TableRows, OutputStream)}).
+     * @param templatePath Il percorso del file template.
+     * @param replace La tabella dei segnaposto e dei valori da sostituire.
+     * @param rows I record delle righe ripetute, oppure null per lasciare le righe marcate come sono.
+     * @param destinationFile Il file di destinazione.
+     * @throws IOException Se si verifica un errore durante la lettura o la scrittura del file.
      */
-    private void replaceTextInParagraphs(XWPFDocument document) {
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            replaceTextInRuns(paragraph);
+    void fill(String templatePath, Map<String, String> replace, TableRows rows, File destinationFile)
+            throws IOException {
+        if (rows != null && hasRepeatingRows(templatePath)) {
+            streamingEngine.fill(templatePath, replace, rows, destinationFile);
+            return;
+        }
+        SplicedTemplate spliced = engine == Engine.SPLICE ? getSplicedTemplate(templatePath) : null;
+        if (spliced != null) {
+            spliced.fill(replace, destinationFile);
+        } else if (engine == Engine.STREAMING) {
+            streamingEngine.fill(templatePath, replace, destinationFile);
+        } else {
+            getCompiledTemplate(templatePath).fill(replace, destinationFile);
         }
     }
 
     /**
-     * Sostituisce il testo nelle tabelle del documento Word.
-     * @param document Il documento Word nel quale effettuare la sostituzione nelle tabelle.
+     * Restituisce il template compilato per il percorso indicato, compilandolo alla prima richiesta
+     * o quando il file è stato modificato dopo l'ultima compilazione. Vengono conservati solo gli ultimi
+     * {@link #MAX_COMPILED_TEMPLATES} template usati: quelli sostituiti o meno recenti vengono chiusi, senza
+     * interrompere le generazioni ancora in corso (vedi {@link CompiledTemplate#close()}).
+     * @param templatePath Il percorso del file template.
+     * @return Il template compilato.
+     * @throws IOException Se si verifica un errore durante la lettura del file.
      */
-    private void replaceTextInTables(XWPFDocument document) {
-        for (XWPFTable table : document.getTables()) {
-            for (XWPFTableRow row : table.getRows()) {
-                for (XWPFTableCell cell : row.getTableCells()) {
-                    for (XWPFParagraph paragraph : cell.getParagraphs()) {
-                        replaceTextInRuns(paragraph);
-                    }
+    public CompiledTemplate getCompiledTemplate(String templatePath) throws IOException {
+        synchronized (compiledTemplates) {
+            CompiledTemplate template = compiledTemplates.get(templatePath);
+            if (template == null || template.isStale()) {
+                if (template != null) {
+                    compiledTemplates.remove(templatePath);
+                    closeQuietly(template);
                 }
+                template = CompiledTemplate.compile(templatePath, REPLACE_MATCHER);
+                compiledTemplates.put(templatePath, template);
             }
+            return template;
+        }
+    }
+
+    private static void closeQuietly(CompiledTemplate template) {
+        try {
+            template.close();
+        } catch (IOException e) {
+            System.out.println("Chiusura del template non riuscita: " + e.getMessage());
         }
     }
 
     /**
-     * Sostituisce il testo nei run all'interno di un paragrafo.
-     * @param paragraph Il paragrafo nel quale sostituire il testo.
+     * Restituisce il template precompilato per il percorso indicato, leggendolo o compilandolo alla prima richiesta
+     * o quando il file è stato modificato (vedi {@link SplicedTemplate#load(String)}).
+     * @param templatePath Il percorso del file template.
+     * @return Il template precompilato, oppure null se il template non può essere precompilato e va generato con
+     * Apache POI.
      */
-    private void replaceTextInRuns(XWPFParagraph paragraph) {
-        for (XWPFRun run : paragraph.getRuns()) {
-            String text = run.getText(0);
-            if (text != null) {
-                for (Map.Entry<String, String> entry : replace.entrySet()) {
-                    if (text.contains(entry.getKey())) {
-                        text = text.replace(entry.getKey(), entry.getValue());
-                    }
-                }
-                run.setText(text, 0);
+    public SplicedTemplate getSplicedTemplate(String templatePath) {
+        SplicedTemplate template = splicedTemplates.get(templatePath);
+        if (template != null && !template.isStale()) {
+            return template;
+        }
+        synchronized (splicedTemplates) {
+            template = splicedTemplates.get(templatePath);
+            if (template != null && !template.isStale()) {
+                return template;
+            }
+            long lastModified = new File(templatePath).lastModified();
+            if (Objects.equals(notSpliceable.get(templatePath), lastModified)) {
+                return null;
+            }
+            try {
+                template = SplicedTemplate.load(templatePath);
+                splicedTemplates.put(templatePath, template);
+                notSpliceable.remove(templatePath);
+                return template;
+            } catch (IOException e) {
+                System.out.println("Template non precompilabile, generazione con Apache POI: " + e.getMessage());
+                splicedTemplates.remove(templatePath);
+                notSpliceable.put(templatePath, lastModified);
+                return null;
             }
         }
     }
@@ -171,6 +477,17 @@ public class WordReplacer extends JFrame {
      * @throws IOException Se si verifica un errore durante la lettura del file.
      */
     public void getValueBookmarks() throws IOException {
+        getValueBookmarks(filePath);
+    }
+
+    /**
+     * Recupera e stampa il testo associato ai segnalibri del file Word indicato,
+     * senza modificare lo stato dell'istanza.
+     * @param filePath Il percorso del file da leggere.
+     * @return Una mappa che associa i nomi dei segnalibri ai rispettivi testi.
+     * @throws IOException Se si verifica un errore durante la lettura del file.
+     */
+    public Map<String, String> getValueBookmarks(String filePath) throws IOException {
         try (FileInputStream fis = new FileInputStream(filePath);
              XWPFDocument document = new XWPFDocument(fis)) {
 
@@ -179,59 +496,24 @@ public class WordReplacer extends JFrame {
             for (Map.Entry<String, String> entry : bookmarks.entrySet()) {
                 System.out.println("Text in bookmark '" + entry.getKey() + "': " + entry.getValue());
             }
+            return bookmarks;
         }
     }
 
     /**
-     * Recupera il testo associato ai segnalibri specificati all'interno del documento Word, incluse le tabelle.
+     * Recupera il testo associato ai segnalibri specificati all'interno del documento Word, comprese tabelle,
+     * caselle di testo, intestazioni e piè di pagina.
+     * Il documento viene percorso una sola volta con {@link DocumentWalker} e per ogni segnalibro viene raccolto
+     * il testo compreso tra {@code w:bookmarkStart} e il relativo {@code w:bookmarkEnd} (vedi {@link BookmarkVisitor}).
      * @param document Il documento Word dal quale estrarre i segnalibri.
      * @param bookmarkNames La lista di nomi dei segnalibri da cercare.
      * @return Una mappa che associa i nomi dei segnalibri ai rispettivi testi.
+     * @throws IOException Se il documento non può essere letto.
      */
-    private static Map<String, String> getBookmarksText(XWPFDocument document, List<String> bookmarkNames) {
-        Map<String, String> bookmarks = new HashMap<>();
-
-        // Inizializza la mappa con i nomi dei segnalibri
-        for (String bookmarkName : bookmarkNames) {
-            bookmarks.put(bookmarkName, null);
-        }
-
-        // Cerca i segnalibri nei paragrafi
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            checkParagraphForBookmarks(paragraph, bookmarks);
-        }
-
-        // Cerca i segnalibri nelle tabelle
-        for (XWPFTable table : document.getTables()) {
-            for (XWPFTableRow row : table.getRows()) {
-                for (XWPFTableCell cell : row.getTableCells()) {
-                    for (XWPFParagraph paragraph : cell.getParagraphs()) {
-                        checkParagraphForBookmarks(paragraph, bookmarks);
-                    }
-                }
-            }
-        }
-
-        return bookmarks;
-    }
-
-    /**
-     * Controlla un paragrafo per la presenza di segnalibri e aggiorna la mappa.
-     * @param paragraph Il paragrafo da controllare.
-     * @param bookmarks La mappa dei segnalibri e dei loro testi.
-     */
-    private static void checkParagraphForBookmarks(XWPFParagraph paragraph, Map<String, String> bookmarks) {
-        for (XWPFRun run : paragraph.getRuns()) {
-            CTP ctp = paragraph.getCTP();
-            if (ctp.getBookmarkStartList() != null) {
-                for (CTBookmark bookmark : ctp.getBookmarkStartList()) {
-                    String name = bookmark.getName();
-                    if (bookmarks.containsKey(name)) {
-                        bookmarks.put(name, run.toString());
-                    }
-                }
-            }
-        }
+    public static Map<String, String> getBookmarksText(XWPFDocument document, List<String> bookmarkNames) throws IOException {
+        BookmarkVisitor visitor = new BookmarkVisitor(bookmarkNames);
+        DocumentWalker.walk(document, visitor);
+        return visitor.getValues();
     }
 
 }
@@ -0,0 +1,104 @@
+package org.example.engine.zip;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Voce di un archivio ZIP già compressa, pronta per essere accodata da {@link RawZipWriter}.
+ * La compressione avviene nel thread che crea la voce, così che più voci possano essere compresse in parallelo
+ * mentre la scrittura nell'archivio resta sequenziale.
+ *
+ * @param name il nome della voce nell'archivio.
+ * @param method il metodo di compressione: {@link #STORED} oppure {@link #DEFLATED}.
+ * @param crc il CRC32 del contenuto non compresso.
+ * @param size la dimensione del contenuto non compresso.
+ * @param data il contenuto compresso (deflate senza intestazione) oppure il contenuto originale se STORED.
+ */
+public record CompressedEntry(String name, int method, long crc, long size, byte[] data) {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    /**
+     * Comprime un contenuto.
+     *
+     * @param name il nome della voce nell'archivio.
+     * @param content il contenuto.
+     * @param length il numero di byte validi di content.
+     * @param level il livello di compressione: 0 per salvare il contenuto senza comprimerlo (STORED),
+     *              da 1 a 9 oppure {@link Deflater#DEFAULT_COMPRESSION} per comprimerlo con deflate.
+     * @return la voce compressa.
+     */
+    public static CompressedEntry compress(String name, byte[] content, int length, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        if (level == Deflater.NO_COMPRESSION) {
+            return new CompressedEntry(name, STORED, crc.getValue(), length, Arrays.copyOf(content, length));
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(content, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, length / 2)];
+            int written = 0;
+            while (!deflater.finished()) {
+                if (written == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                written += deflater.deflate(buffer, written, buffer.length - written);
+            }
+            // Se la compressione non riduce il contenuto conviene salvarlo così com'è
+            if (written >= length) {
+                return new CompressedEntry(name, STORED, crc.getValue(), length, Arrays.copyOf(content, length));
+            }
+            return new CompressedEntry(name, DEFLATED, crc.getValue(), length, Arrays.copyOf(buffer, written));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Restituisce il contenuto non compresso della voce, verificandone il CRC.
+     *
+     * @return il contenuto.
+     * @throws IOException se i dati compressi sono danneggiati.
+     */
+    public byte[] decompress() throws IOException {
+        byte[] content;
+        if (method == STORED) {
+            content = data;
+        } else {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                content = new byte[Math.toIntExact(size)];
+                int read = 0;
+                while (read < content.length && !inflater.finished()) {
+                    int n = inflater.inflate(content, read, content.length - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != content.length) {
+                    throw new IOException("Voce troncata: " + name);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Voce danneggiata: " + name, e);
+            } finally {
+                inflater.end();
+            }
+        }
+        CRC32 check = new CRC32();
+        check.update(content);
+        if (check.getValue() != crc) {
+            throw new IOException("CRC non valido: " + name);
+        }
+        return content;
+    }
+}
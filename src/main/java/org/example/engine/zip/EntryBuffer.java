@@ -0,0 +1,29 @@
+package org.example.engine.zip;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Buffer in memoria del contenuto di una voce, che viene compresso senza copiarlo.
+ */
+public final class EntryBuffer extends ByteArrayOutputStream {
+
+    /**
+     * Costruttore della classe EntryBuffer.
+     *
+     * @param size la capacità iniziale in byte.
+     */
+    public EntryBuffer(int size) {
+        super(size);
+    }
+
+    /**
+     * Comprime il contenuto scritto finora.
+     *
+     * @param name il nome della voce nell'archivio.
+     * @param level il livello di compressione, come in {@link CompressedEntry#compress(String, byte[], int, int)}.
+     * @return la voce compressa.
+     */
+    public synchronized CompressedEntry compress(String name, int level) {
+        return CompressedEntry.compress(name, buf, count, level);
+    }
+}
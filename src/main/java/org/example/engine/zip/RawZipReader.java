@@ -0,0 +1,108 @@
+package org.example.engine.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lettura delle voci di un archivio ZIP in memoria senza decomprimerle, per copiarle così come sono in un altro
+ * archivio con {@link RawZipWriter}: dati compressi, CRC e dimensioni vengono presi dalla directory centrale e
+ * dalle intestazioni locali dell'archivio originale.
+ * Sono supportati i soli metodi STORED e DEFLATED, senza cifratura né record ZIP64: i pacchetti Office non li usano.
+ */
+public final class RawZipReader {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+    private RawZipReader() {
+    }
+
+    /**
+     * Legge le voci di un archivio, nell'ordine della directory centrale; le cartelle vengono ignorate.
+     *
+     * @param archive il contenuto dell'archivio.
+     * @return le voci con il contenuto ancora compresso.
+     * @throws IOException se l'archivio non è valido o usa funzionalità non supportate.
+     */
+    public static List<CompressedEntry> read(byte[] archive) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfCentralDirectory(buffer);
+        int count = buffer.getShort(end + 10) & MAX_16;
+        long centralOffset = buffer.getInt(end + 16) & MAX_32;
+        if (count == MAX_16 || centralOffset == MAX_32) {
+            throw new IOException("Archivio ZIP64 non supportato");
+        }
+
+        List<CompressedEntry> entries = new ArrayList<>(count);
+        int position = (int) centralOffset;
+        try {
+            for (int i = 0; i < count; i++) {
+                if (buffer.getInt(position) != CENTRAL_HEADER) {
+                    throw new IOException("Directory centrale dell'archivio danneggiata");
+                }
+                int flags = buffer.getShort(position + 8) & MAX_16;
+                int method = buffer.getShort(position + 10) & MAX_16;
+                long crc = buffer.getInt(position + 16) & MAX_32;
+                long compressedSize = buffer.getInt(position + 20) & MAX_32;
+                long size = buffer.getInt(position + 24) & MAX_32;
+                int nameLength = buffer.getShort(position + 28) & MAX_16;
+                int extraLength = buffer.getShort(position + 30) & MAX_16;
+                int commentLength = buffer.getShort(position + 32) & MAX_16;
+                long localOffset = buffer.getInt(position + 42) & MAX_32;
+                String name = new String(archive, position + 46, nameLength, StandardCharsets.UTF_8);
+                position += 46 + nameLength + extraLength + commentLength;
+
+                if (name.endsWith("/")) {
+                    continue;
+                }
+                if ((flags & FLAG_ENCRYPTED) != 0) {
+                    throw new IOException("Voce cifrata non supportata: " + name);
+                }
+                if (method != CompressedEntry.STORED && method != CompressedEntry.DEFLATED) {
+                    throw new IOException("Metodo di compressione " + method + " non supportato: " + name);
+                }
+                if (compressedSize == MAX_32 || size == MAX_32 || localOffset == MAX_32) {
+                    throw new IOException("Voce ZIP64 non supportata: " + name);
+                }
+
+                // Il nome e i campi extra dell'intestazione locale possono differire da quelli della directory centrale
+                int local = (int) localOffset;
+                if (buffer.getInt(local) != LOCAL_HEADER) {
+                    throw new IOException("Intestazione locale danneggiata: " + name);
+                }
+                int data = local + 30 + (buffer.getShort(local + 26) & MAX_16) + (buffer.getShort(local + 28) & MAX_16);
+                if (data + compressedSize > archive.length) {
+                    throw new IOException("Voce troncata: " + name);
+                }
+                byte[] content = Arrays.copyOfRange(archive, data, data + (int) compressedSize);
+                entries.add(new CompressedEntry(name, method, crc, size, content));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Archivio ZIP danneggiato", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Cerca il record di fine della directory centrale, che può essere seguito da un commento di al più 64 KB.
+     */
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+        int last = buffer.capacity() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        for (int i = last; i >= 0 && i >= last - MAX_16; i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                return i;
+            }
+        }
+        throw new IOException("Il file non è un archivio ZIP");
+    }
+}
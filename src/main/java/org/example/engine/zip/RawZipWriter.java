@@ -0,0 +1,199 @@
+package org.example.engine.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scrittura di un archivio ZIP a partire da voci già compresse ({@link CompressedEntry}).
+ * A differenza di {@link java.util.zip.ZipOutputStream}, che comprime il contenuto durante la scrittura e quindi
+ * in un solo thread, questa classe scrive soltanto intestazioni e dati: la compressione può avvenire in parallelo
+ * in altri thread. Le dimensioni e il CRC sono noti prima di scrivere ogni voce, quindi non servono i data descriptor.
+ * Se l'archivio supera i 65535 file o i 4 GB vengono scritti i record ZIP64.
+ * I metodi sono sincronizzati e possono essere invocati da più thread.
+ */
+public class RawZipWriter implements Closeable {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private final OutputStream out;
+    private final List<Central> entries = new ArrayList<>();
+    private final int dosTime;
+    private final int dosDate;
+    private long position;
+    private boolean closed;
+
+    /**
+     * Voce già scritta, da riportare nella directory centrale.
+     */
+    private record Central(byte[] name, int method, long crc, long compressedSize, long size, long offset) {
+    }
+
+    /**
+     * Costruttore della classe RawZipWriter.
+     *
+     * @param out lo stream dell'archivio, chiuso da {@link #close()}.
+     */
+    public RawZipWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        LocalDateTime now = LocalDateTime.now();
+        this.dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() / 2;
+        this.dosDate = Math.max(0, now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    /**
+     * Accoda una voce all'archivio.
+     *
+     * @param entry la voce compressa.
+     * @throws IOException se la voce non può essere scritta o supera i 4 GB.
+     */
+    public synchronized void write(CompressedEntry entry) throws IOException {
+        if (closed) {
+            throw new IOException("Archivio già chiuso");
+        }
+        if (entry.size() > MAX_32 || entry.data().length > MAX_32) {
+            throw new IOException("Voce troppo grande per l'archivio: " + entry.name());
+        }
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        long offset = position;
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(30 + name.length);
+        writeInt(header, LOCAL_HEADER);
+        writeShort(header, VERSION);
+        writeShort(header, FLAG_UTF8);
+        writeShort(header, entry.method());
+        writeShort(header, dosTime);
+        writeShort(header, dosDate);
+        writeInt(header, entry.crc());
+        writeInt(header, entry.data().length);
+        writeInt(header, entry.size());
+        writeShort(header, name.length);
+        writeShort(header, 0);
+        header.write(name);
+
+        header.writeTo(out);
+        out.write(entry.data());
+        position += header.size() + entry.data().length;
+        entries.add(new Central(name, entry.method(), entry.crc(), entry.data().length, entry.size(), offset));
+    }
+
+    /**
+     * Restituisce il numero di voci scritte.
+     *
+     * @return il numero di voci.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Scrive la directory centrale e chiude l'archivio.
+     *
+     * @throws IOException se la scrittura non riesce.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            long centralOffset = position;
+            ByteArrayOutputStream central = new ByteArrayOutputStream();
+            for (Central entry : entries) {
+                boolean zip64 = entry.offset > MAX_32;
+                writeInt(central, CENTRAL_HEADER);
+                writeShort(central, zip64 ? VERSION_ZIP64 : VERSION);
+                writeShort(central, zip64 ? VERSION_ZIP64 : VERSION);
+                writeShort(central, FLAG_UTF8);
+                writeShort(central, entry.method);
+                writeShort(central, dosTime);
+                writeShort(central, dosDate);
+                writeInt(central, entry.crc);
+                writeInt(central, entry.compressedSize);
+                writeInt(central, entry.size);
+                writeShort(central, entry.name.length);
+                writeShort(central, zip64 ? 12 : 0);
+                writeShort(central, 0); // commento
+                writeShort(central, 0); // disco
+                writeShort(central, 0); // attributi interni
+                writeInt(central, 0);   // attributi esterni
+                writeInt(central, zip64 ? MAX_32 : entry.offset);
+                central.write(entry.name);
+                if (zip64) {
+                    writeShort(central, 0x0001);
+                    writeShort(central, 8);
+                    writeLong(central, entry.offset);
+                }
+                if (central.size() >= 64 * 1024) {
+                    position += central.size();
+                    central.writeTo(out);
+                    central.reset();
+                }
+            }
+            position += central.size();
+            central.writeTo(out);
+            central.reset();
+            long centralSize = position - centralOffset;
+
+            boolean zip64 = entries.size() > MAX_16 || centralOffset > MAX_32 || centralSize > MAX_32;
+            if (zip64) {
+                long zip64Offset = position;
+                writeInt(central, ZIP64_END_OF_CENTRAL_DIRECTORY);
+                writeLong(central, 44);
+                writeShort(central, VERSION_ZIP64);
+                writeShort(central, VERSION_ZIP64);
+                writeInt(central, 0);
+                writeInt(central, 0);
+                writeLong(central, entries.size());
+                writeLong(central, entries.size());
+                writeLong(central, centralSize);
+                writeLong(central, centralOffset);
+
+                writeInt(central, ZIP64_LOCATOR);
+                writeInt(central, 0);
+                writeLong(central, zip64Offset);
+                writeInt(central, 1);
+            }
+            writeInt(central, END_OF_CENTRAL_DIRECTORY);
+            writeShort(central, 0);
+            writeShort(central, 0);
+            writeShort(central, Math.min(entries.size(), MAX_16));
+            writeShort(central, Math.min(entries.size(), MAX_16));
+            writeInt(central, Math.min(centralSize, MAX_32));
+            writeInt(central, Math.min(centralOffset, MAX_32));
+            writeShort(central, 0);
+            central.writeTo(out);
+        }
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write(value >>> 8 & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        writeShort(out, (int) (value & 0xFFFF));
+        writeShort(out, (int) (value >>> 16 & 0xFFFF));
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, value & MAX_32);
+        writeInt(out, value >>> 32);
+    }
+}
@@ -0,0 +1,122 @@
+package org.example.engine.zip;
+
+import org.example.utils.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Destinazione dei documenti generati in blocco: un unico archivio ZIP invece di un file per documento.
+ * Ogni documento viene generato in memoria e compresso nel thread che lo ha generato, quindi in parallelo con gli
+ * altri; nell'archivio viene poi accodato il risultato già compresso. Nessun file intermedio viene scritto su disco.
+ * I documenti Word sono già compressi al loro interno: il livello 0 (STORED) è di solito il più conveniente.
+ * I metodi possono essere invocati da più thread.
+ */
+public class ZipArchiveSink implements Closeable {
+
+    /**
+     * Livello di compressione predefinito.
+     */
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private final Path path;
+    private final int level;
+    private final RawZipWriter writer;
+    private final Set<String> names = new HashSet<>();
+
+    /**
+     * Contenuto di una voce, scritto sullo stream indicato.
+     */
+    @FunctionalInterface
+    public interface Content {
+        /**
+         * Scrive il contenuto.
+         * @param out Lo stream su cui scrivere (non va chiuso).
+         * @throws IOException Se il contenuto non può essere generato.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Costruttore della classe ZipArchiveSink. Crea l'archivio, e le cartelle che lo contengono, sostituendo
+     * un eventuale archivio esistente.
+     * @param path Il percorso dell'archivio.
+     * @param level Il livello di compressione: 0 per STORED, da 1 a 9, oppure {@link #DEFAULT_LEVEL}.
+     * @throws IOException Se l'archivio non può essere creato.
+     * @throws IllegalArgumentException Se il livello non è valido.
+     */
+    public ZipArchiveSink(Path path, int level) throws IOException {
+        if (level != DEFAULT_LEVEL && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Livello di compressione non valido: " + level);
+        }
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.path = path;
+        this.level = level;
+        this.writer = new RawZipWriter(Files.newOutputStream(path));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Genera una voce e la aggiunge all'archivio. Se esiste già una voce con lo stesso nome viene aggiunto
+     * un numero progressivo, ad esempio {@code Scuola (2).docx}.
+     * @param name Il nome della voce.
+     * @param content Il contenuto della voce.
+     * @return Il nome con cui la voce è stata aggiunta.
+     * @throws IOException Se il contenuto non può essere generato o scritto.
+     */
+    public String add(String name, Content content) throws IOException {
+        EntryBuffer buffer = new EntryBuffer(64 * 1024);
+        content.writeTo(buffer);
+        String entryName = uniqueName(name);
+        CompressedEntry entry;
+        try (Metrics.Sample ignored = Metrics.start(Metrics.Phase.COMPRESS).detail(entryName)) {
+            entry = buffer.compress(entryName, level);
+        }
+        writer.write(entry);
+        return entryName;
+    }
+
+    private synchronized String uniqueName(String name) {
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 2; !names.add(candidate); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+
+    /**
+     * Restituisce il numero di voci aggiunte.
+     * @return Il numero di voci.
+     */
+    public int size() {
+        return writer.size();
+    }
+
+    /**
+     * Completa l'archivio scrivendo la directory centrale.
+     * @throws IOException Se l'archivio non può essere completato.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.gui;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Ricerca eseguita fuori dall'event dispatch thread.
+ * Le richieste ravvicinate vengono accorpate (debounce): la ricerca parte solo quando l'utente smette di digitare
+ * per qualche istante, una ricerca ancora in corso viene annullata da quella successiva e il risultato viene
+ * consegnato sull'EDT solo se corrisponde all'ultima richiesta.
+ */
+public class DebouncedSearch {
+
+    private static final int DEBOUNCE_MILLIS = 150;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "school-search");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Supplier<SchoolIndex> index;
+    private final int limit;
+    private final Consumer<List<String>> onResult;
+    private final Timer timer;
+    private String pendingQuery = "";
+    private Future<?> running;
+    private long generation;
+
+    /**
+     * Costruttore della classe DebouncedSearch.
+     * @param index Il fornitore dell'indice corrente (può restituire null se l'indice non è ancora pronto).
+     * @param limit Il numero massimo di risultati.
+     * @param onResult Il consumatore dei risultati, invocato sull'EDT.
+     */
+    public DebouncedSearch(Supplier<SchoolIndex> index, int limit, Consumer<List<String>> onResult) {
+        this.index = index;
+        this.limit = limit;
+        this.onResult = onResult;
+        this.timer = new Timer(DEBOUNCE_MILLIS, e -> start());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Richiede una ricerca; va invocato sull'EDT a ogni modifica del testo.
+     * @param query Il testo da cercare.
+     */
+    public void request(String query) {
+        pendingQuery = query;
+        timer.restart();
+    }
+
+    private void start() {
+        SchoolIndex current = index.get();
+        if (current == null) {
+            return;
+        }
+        if (running != null) {
+            running.cancel(true);
+        }
+        long id = ++generation;
+        String query = pendingQuery;
+        running = EXECUTOR.submit(() -> {
+            List<String> result = current.search(query, limit);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                // Scarta i risultati di ricerche superate da una richiesta successiva
+                if (id == generation) {
+                    onResult.accept(result);
+                }
+            });
+        });
+    }
+}
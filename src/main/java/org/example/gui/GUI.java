@@ -1,7 +1,19 @@
 package org.example.gui;
 
+import org.example.database.BookmarkWriteBack;
+import org.example.database.ClientCursor;
+import org.example.database.ClientRecord;
+import org.example.database.ClientSnapshot;
+import org.example.database.DatabaseConnection;
 import org.example.database.DatabaseOperation;
+import org.example.engine.BatchReplacer;
+import org.example.engine.BatchResult;
+import org.example.engine.BookmarkExtractor;
+import org.example.engine.GenerationJob;
+import org.example.engine.GenerationScheduler;
 import org.example.engine.WordReplacer;
+import org.example.engine.zip.ZipArchiveSink;
+import org.example.utils.PhaseTimer;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -12,11 +24,17 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * GUI per popolare documenti con dati da un database.
@@ -32,27 +50,56 @@ public class GUI extends JFrame {
     private JTextField filePathField;
     private JTextField fileNameField;
     private JTextField destinationPathField;
+    private JTextField fileNamePatternField;
+    private JCheckBox archiveCheckBox;
     private JComboBox<String> scuolaDropdown;
-    private DefaultComboBoxModel<String> dropdownModel;
+    private ResultComboBoxModel dropdownModel;
     private JTextField searchField;
+    private JButton replaceButton;
+    private JButton batchButton;
     private WordReplacer wordReplacer;
-    private Connection conn;
-    private DatabaseOperation sql;
     private ArrayList<String> scuole = new ArrayList<>();
+    private volatile SchoolIndex schoolIndex;
+    private DebouncedSearch search;
+    private DebouncedSearch searchRead;
+
+    // Numero massimo di scuole restituite da una ricerca e numero di scuole aggiunte al dropdown per pagina
+    private static final int RESULT_LIMIT = 5000;
+    private static final int PAGE_SIZE = 50;
+
+    // Numero di scuole lette dal database per ogni blocco durante il caricamento iniziale
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    // Record aggiornati per transazione e attesa massima di una connessione per l'aggiornamento da cartella
+    private static final int WRITE_BACK_CHUNK = 500;
+    private static final long WRITE_BACK_BORROW_MILLIS = 30_000;
+
+    // Lavori di generazione e lettura eseguiti in background
+    private final GenerationScheduler scheduler = new GenerationScheduler(
+            Integer.getInteger("jobs.concurrency", 2), Integer.getInteger("jobs.queue", 20));
+
+    // Barra di stato per il caricamento in background
+    private JLabel statusLabel;
+    private JProgressBar progressBar;
 
     // Componenti per "Lettura dati"
     private JTextField uploadFilePathField;
     private JComboBox<String> scuolaDropdownRead;
+    private ResultComboBoxModel dropdownModelRead;
     private JTextField searchFieldRead;
+    private JButton readButton;
+    private JButton writeBackButton;
+    private DatabaseConnection database;
 
     /**
      * Costruttore per la classe GUI.
-     * Inizializza la connessione al database e carica le scuole.
+     * Mostra subito l'interfaccia; la connessione al database e il caricamento delle scuole
+     * avvengono in background, con l'avanzamento indicato nella barra di stato.
      *
-     * @param conn Connessione al database
+     * @param database Database da cui caricare le scuole
+     * @param timer Cronometro dell'avvio, su cui registrare le fasi del caricamento
      */
-    public GUI(Connection conn) {
-        this.conn = conn;
+    public GUI(DatabaseConnection database, PhaseTimer timer) {
 
         // Imposta look and feel moderno
         try {
@@ -63,7 +110,7 @@ public class GUI extends JFrame {
         }
 
         setTitle("Popola documenti - EUservice");
-        setSize(1100, 600);
+        setSize(1100, 750);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
@@ -85,18 +132,220 @@ public class GUI extends JFrame {
         switchPanel.add(switchToPopolaFogliButton);
         switchPanel.add(switchToLetturaDatiButton);
 
+        // Barra di stato con l'avanzamento del caricamento
+        statusLabel = new JLabel("Connessione al database...");
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
+        statusPanel.setBorder(new EmptyBorder(5, 10, 5, 10));
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(progressBar, BorderLayout.EAST);
+
+        // Elenco dei lavori in coda e in corso, sopra la barra di stato
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(new JobsPanel(scheduler), BorderLayout.CENTER);
+        scheduler.addListener(this::showOutcome);
+        southPanel.add(statusPanel, BorderLayout.SOUTH);
+
         add(switchPanel, BorderLayout.NORTH);
         add(mainPanel, BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+
+        // Le azioni vengono abilitate quando i dati delle scuole (snapshot o database) sono disponibili
+        wordReplacer = new WordReplacer(null);
+        replaceButton.setEnabled(false);
+        batchButton.setEnabled(false);
+        readButton.setEnabled(false);
+        writeBackButton.setEnabled(false);
+        this.database = database;
+        timer.mark("interfaccia");
+        loadInBackground(database, timer);
+    }
+
+    /**
+     * Apre la connessione e carica l'elenco delle scuole in background.
+     * Se esiste uno snapshot locale di gst_clienti le scuole vengono mostrate subito da quello, che poi viene
+     * aggiornato con i soli record nuovi o modificati; se il database non è raggiungibile, o l'aggiornamento non
+     * riesce, si lavora con lo snapshot già caricato.
+     * Senza snapshot le scuole compaiono nel dropdown a blocchi, man mano che arrivano dal database, e al termine
+     * del caricamento viene scritto lo snapshot per gli avvii successivi.
+     * L'indice di ricerca viene sempre costruito fuori dall'EDT.
+     */
+    private void loadInBackground(DatabaseConnection database, PhaseTimer timer) {
+        Path snapshotPath = ClientSnapshot.defaultPath();
+
+        new SwingWorker<SchoolIndex, List<String>>() {
+            private final List<String> loaded = new ArrayList<>();
+            private ClientSnapshot snapshot;
+            private String offline;
+
+            @Override
+            protected SchoolIndex doInBackground() throws Exception {
+                snapshot = openSnapshot(snapshotPath);
+                if (snapshot != null) {
+                    wordReplacer.setSnapshot(snapshot);
+                    List<String> names = snapshot.names();
+                    timer.mark("snapshot");
+                    SchoolIndex index = new SchoolIndex(names);
+                    timer.mark("indice");
+                    SwingUtilities.invokeLater(() -> {
+                        applyIndex(index, names);
+                        replaceButton.setEnabled(true);
+                        readButton.setEnabled(true);
+                        statusLabel.setText(names.size() + " scuole caricate dallo snapshot, aggiornamento in corso...");
+                    });
+                }
+
+                // Connessione dedicata al caricamento, restituita al pool al termine: con MySQL la lettura in
+                // streaming la occupa fino alla fine, mentre i lavori avviati nel frattempo prendono la propria
+                Connection connection;
+                try {
+                    connection = database.getConnection();
+                } catch (SQLException e) {
+                    if (snapshot == null) {
+                        throw e;
+                    }
+                    offline = "database non raggiungibile: " + e.getMessage();
+                    return null;
+                }
+                List<Object[]> records = new ArrayList<>();
+                Map<Integer, Long> checksums;
+                try (connection) {
+                    timer.mark("connessione");
+                    // La generazione prende dal pool una connessione per ogni operazione
+                    wordReplacer.setPool(database.getPool());
+                    SwingUtilities.invokeLater(() -> {
+                        replaceButton.setEnabled(true);
+                        readButton.setEnabled(true);
+                        writeBackButton.setEnabled(true);
+                        if (snapshot == null) {
+                            statusLabel.setText("Caricamento scuole...");
+                        }
+                    });
+
+                    if (snapshot != null) {
+                        ClientSnapshot refreshed;
+                        try {
+                            refreshed = snapshot.refresh(new DatabaseOperation(connection));
+                        } catch (SQLException | IOException e) {
+                            // Si continua a lavorare con lo snapshot già caricato
+                            offline = "aggiornamento non riuscito: " + e.getMessage();
+                            return null;
+                        }
+                        timer.mark("aggiornamento snapshot");
+                        if (refreshed == snapshot) {
+                            return null;
+                        }
+                        snapshot = refreshed;
+                        wordReplacer.setSnapshot(refreshed);
+                        loaded.addAll(refreshed.names());
+                        SchoolIndex index = new SchoolIndex(loaded);
+                        timer.mark("indice");
+                        return index;
+                    }
+
+                    DatabaseOperation sql = new DatabaseOperation(connection);
+                    checksums = ClientSnapshot.checksums(sql);
+                    try (ClientCursor cursor = sql.openCursor("gst_clienti", LOAD_PAGE_SIZE)) {
+                        List<String> names = new ArrayList<>(LOAD_PAGE_SIZE);
+                        for (ClientRecord client = cursor.next(); client != null; client = cursor.next()) {
+                            if (records.isEmpty()) {
+                                timer.mark("primo blocco");
+                            }
+                            records.add(client.toArray());
+                            names.add(client.denominazione());
+                            if (names.size() == LOAD_PAGE_SIZE) {
+                                loaded.addAll(names);
+                                publish(names);
+                                names = new ArrayList<>(LOAD_PAGE_SIZE);
+                            }
+                        }
+                        if (!names.isEmpty()) {
+                            loaded.addAll(names);
+                            publish(names);
+                        }
+                    }
+                }
+                timer.mark("elenco scuole");
+
+                SchoolIndex index = new SchoolIndex(loaded);
+                timer.mark("indice");
+
+                try {
+                    snapshot = ClientSnapshot.write(records, checksums, snapshotPath);
+                    wordReplacer.setSnapshot(snapshot);
+                    timer.mark("snapshot");
+                } catch (IOException e) {
+                    System.out.println("Snapshot non salvato in " + snapshotPath + ": " + e.getMessage());
+                }
+                return index;
+            }
+
+            @Override
+            protected void process(List<List<String>> pages) {
+                for (List<String> page : pages) {
+                    scuole.addAll(page);
+                }
+                statusLabel.setText("Caricate " + scuole.size() + " scuole...");
+                // Finché l'indice non è pronto il dropdown mostra le prime scuole arrivate
+                if (dropdownModel.getSize() < PAGE_SIZE && searchField.getText().isEmpty()) {
+                    updateDropdown(List.copyOf(scuole.subList(0, Math.min(RESULT_LIMIT, scuole.size()))));
+                }
+            }
+
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                try {
+                    SchoolIndex index = get();
+                    if (index != null) {
+                        applyIndex(index, loaded);
+                    }
+                    if (offline != null) {
+                        statusLabel.setText(schoolIndex.size() + " scuole dallo snapshot del "
+                                + DateFormat.getDateTimeInstance().format(new Date(snapshot.getCreatedAt()))
+                                + " (" + offline + ")");
+                    } else {
+                        statusLabel.setText(schoolIndex.size() + " scuole caricate");
+                    }
+                    System.out.println("Tempi di avvio - " + timer.summary());
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(null, cause.getMessage());
+                    System.exit(0);
+                }
+            }
+        }.execute();
+    }
 
-        wordReplacer = new WordReplacer(this.conn);
-        sql = new DatabaseOperation(conn);
-        ArrayList<Object> denominazioni = sql.selectFromTable("gst_clienti", null);
-        for (Object obj : denominazioni) {
-            scuole.add((String) obj); // Cast a String
+    /**
+     * Apre lo snapshot locale di gst_clienti, se presente.
+     * @return Lo snapshot, oppure null se non esiste o non è leggibile.
+     */
+    private static ClientSnapshot openSnapshot(Path path) {
+        try {
+            if (!ClientSnapshot.exists(path)) {
+                return null;
+            }
+            return ClientSnapshot.open(path);
+        } catch (IOException e) {
+            System.out.println("Snapshot ignorato: " + e.getMessage());
+            return null;
         }
+    }
 
-        // Carica i primi 10 elementi nel dropdown
-        updateDropdown(scuole.subList(0, Math.min(10, scuole.size())));
+    /**
+     * Rende disponibile l'indice di ricerca delle scuole e applica le ricerche digitate nel frattempo.
+     * Va invocato sull'EDT.
+     */
+    private void applyIndex(SchoolIndex index, List<String> names) {
+        schoolIndex = index;
+        scuole = new ArrayList<>(names);
+        batchButton.setEnabled(true);
+        filterScuole();
+        if (!searchFieldRead.getText().isEmpty()) {
+            filterScuoleRead();
+        }
     }
 
     private JPanel createPopolaFogliPanel() {
@@ -113,14 +362,22 @@ public class GUI extends JFrame {
 
         JButton browseButton = new JButton("Sfoglia");
         JButton destinationButton = new JButton("Scegli destinazione");
-        JButton replaceButton = new JButton("Popola documento");
+        replaceButton = new JButton("Popola documento");
+        batchButton = new JButton("Popola in blocco");
+
+        fileNamePatternField = new JTextField(BatchReplacer.DEFAULT_FILE_NAME_PATTERN, 30);
+        fileNamePatternField.setBorder(new RoundedBorder(15));
+        archiveCheckBox = new JCheckBox("Unico archivio ZIP");
+        archiveCheckBox.setToolTipText("Genera i documenti in blocco in un archivio .zip nella cartella di destinazione");
 
         // Campo di ricerca e dropdown per le scuole
         searchField = new JTextField(20);
         searchField.setBorder(new RoundedBorder(15));
-        dropdownModel = new DefaultComboBoxModel<>();
+        dropdownModel = new ResultComboBoxModel(PAGE_SIZE);
         scuolaDropdown = new JComboBox<>(dropdownModel);
         scuolaDropdown.setPreferredSize(new Dimension(200, 30));
+        dropdownModel.installPaging(scuolaDropdown);
+        search = new DebouncedSearch(() -> schoolIndex, RESULT_LIMIT, this::updateDropdown);
 
         // Listener per il filtraggio delle scuole durante la digitazione
         searchField.getDocument().addDocumentListener(new DocumentListener() {
@@ -163,27 +420,66 @@ public class GUI extends JFrame {
             }
         });
 
-        // Listener per popolare il documento con i dati selezionati
+        // Listener per popolare il documento con i dati selezionati: il documento viene generato in background
         replaceButton.addActionListener(e -> {
             String filePath = filePathField.getText();
             String fileName = fileNameField.getText();
             String destinationPath = destinationPathField.getText();
 
             if (!filePath.isEmpty() && !destinationPath.isEmpty()) {
-                wordReplacer.setFilePath(filePath);
-                wordReplacer.setScuola(Objects.requireNonNull(scuolaDropdown.getSelectedItem()).toString());
+                String scuola = Objects.requireNonNull(scuolaDropdown.getSelectedItem()).toString();
+                File destinationFile = new File(destinationPath, fileName);
 
-                try {
-                    wordReplacer.replaceTextInWordFile(destinationPath, fileName);
-                    JOptionPane.showMessageDialog(null, "Documento popolato correttamente!");
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(null, "Errore: " + ex.getMessage());
-                }
+                submit(fileName + " - " + scuola, job -> {
+                    wordReplacer.replaceTextInWordFile(filePath, scuola, destinationFile);
+                    return "Documento popolato correttamente!";
+                });
             } else {
                 JOptionPane.showMessageDialog(null, "Completa tutti i campi prima di continuare.");
             }
         });
 
+        // Listener per popolare un documento per ogni scuola che corrisponde alla ricerca
+        batchButton.addActionListener(e -> {
+            String filePath = filePathField.getText();
+            String destinationPath = destinationPathField.getText();
+
+            if (filePath.isEmpty() || destinationPath.isEmpty()) {
+                JOptionPane.showMessageDialog(null, "Completa tutti i campi prima di continuare.");
+                return;
+            }
+
+            List<String> selezionate = filterScuole(searchField.getText());
+            int conferma = JOptionPane.showConfirmDialog(null,
+                    "Generare " + selezionate.size() + " documenti?", "Popola in blocco", JOptionPane.YES_NO_OPTION);
+            if (conferma != JOptionPane.YES_OPTION) {
+                return;
+            }
+
+            BatchReplacer batchReplacer = new BatchReplacer(wordReplacer);
+            batchReplacer.setFileNamePattern(fileNamePatternField.getText());
+            boolean archive = archiveCheckBox.isSelected();
+
+            submit("In blocco: " + new File(filePath).getName() + " (" + selezionate.size() + " scuole)", job -> {
+                batchReplacer.setProgressListener(job::setProgress);
+                BatchResult result;
+                if (archive) {
+                    // Archivio con il nome del template, livello di compressione configurabile con -Dzip.level
+                    String name = new File(filePath).getName().replaceFirst("\\.[^.]*$", "") + ".zip";
+                    try (ZipArchiveSink sink = new ZipArchiveSink(Path.of(destinationPath, name),
+                            Integer.getInteger("zip.level", ZipArchiveSink.DEFAULT_LEVEL))) {
+                        result = batchReplacer.replace(filePath, selezionate, sink);
+                    }
+                } else {
+                    result = batchReplacer.replace(filePath, selezionate, destinationPath);
+                }
+                System.out.println(result);
+                System.out.println(result.getMetrics().summary());
+                job.checkCancelled();
+                return result.toString();
+            });
+        });
+
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(5, 5, 5, 5);
         gbc.anchor = GridBagConstraints.WEST;
@@ -240,9 +536,26 @@ public class GUI extends JFrame {
 
         gbc.gridx = 0;
         gbc.gridy = 5;
+        panel.add(new JLabel("Pattern nomi (in blocco):"), gbc);
+
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        panel.add(fileNamePatternField, gbc);
+
+        gbc.gridx = 3;
+        gbc.gridwidth = 1;
+        panel.add(archiveCheckBox, gbc);
+
+        // Pulsanti di generazione, singola e in blocco
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(replaceButton);
+        buttonPanel.add(batchButton);
+
+        gbc.gridx = 0;
+        gbc.gridy = 6;
         gbc.gridwidth = 4;
         gbc.anchor = GridBagConstraints.CENTER;
-        panel.add(replaceButton, gbc);
+        panel.add(buttonPanel, gbc);
 
         return panel;
     }
@@ -255,14 +568,17 @@ public class GUI extends JFrame {
         uploadFilePathField.setBorder(new RoundedBorder(15));
 
         JButton browseUploadButton = new JButton("Scegli file da cui leggere dati");
-        JButton readButton = new JButton("Leggi file");
+        readButton = new JButton("Leggi file");
+        writeBackButton = new JButton("Aggiorna database da cartella");
 
         // Filtro e dropdown per le scuole
         searchFieldRead = new JTextField(20);
         searchFieldRead.setBorder(new RoundedBorder(15));
-        DefaultComboBoxModel<String> dropdownModelRead = new DefaultComboBoxModel<>();
+        dropdownModelRead = new ResultComboBoxModel(PAGE_SIZE);
         scuolaDropdownRead = new JComboBox<>(dropdownModelRead);
         scuolaDropdownRead.setPreferredSize(new Dimension(200, 30));
+        dropdownModelRead.installPaging(scuolaDropdownRead);
+        searchRead = new DebouncedSearch(() -> schoolIndex, RESULT_LIMIT, this::updateDropdownRead);
 
         // Listener per il filtraggio delle scuole durante la digitazione
         searchFieldRead.getDocument().addDocumentListener(new DocumentListener() {
@@ -296,29 +612,37 @@ public class GUI extends JFrame {
             }
         });
 
-        // Listener per leggere i dati dal file
+        // Listener per leggere i dati dal file: la lettura avviene in background
         readButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 String uploadFilePath = uploadFilePathField.getText();
-                String selectedSchool = Objects.requireNonNull(scuolaDropdownRead.getSelectedItem()).toString();
 
                 if (!uploadFilePath.isEmpty()) {
-                    wordReplacer.setFilePath(uploadFilePath);
-                    wordReplacer.setScuola(Objects.requireNonNull(scuolaDropdown.getSelectedItem()).toString());
-
-                    try {
-                        wordReplacer.getValueBookmarks();
-                        JOptionPane.showMessageDialog(null, "Dati letti correttamente!");
-                    } catch (IOException ex) {
-                        JOptionPane.showMessageDialog(null, "Errore: " + ex.getMessage());
-                    }
+                    submit("Lettura " + new File(uploadFilePath).getName(), job -> {
+                        Map<String, String> bookmarks = wordReplacer.getValueBookmarks(uploadFilePath);
+                        return "Dati letti correttamente! (" + bookmarks.size() + " segnalibri)";
+                    });
                 } else {
                     JOptionPane.showMessageDialog(null, "Completa tutti i campi prima di continuare.");
                 }
             }
         });
 
+        // Listener per aggiornare gst_clienti con i segnalibri dei moduli di una cartella, in background
+        writeBackButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser fileChooser = new JFileChooser();
+                fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if (fileChooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+                    return;
+                }
+                Path folder = fileChooser.getSelectedFile().toPath();
+                submit("Aggiornamento da " + folder.getFileName(), job -> updateFromFolder(job, folder));
+            }
+        });
+
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(5, 5, 5, 5);
         gbc.anchor = GridBagConstraints.WEST;
@@ -356,39 +680,77 @@ public class GUI extends JFrame {
         gbc.gridy = 3;
         gbc.gridwidth = 4;
         gbc.anchor = GridBagConstraints.CENTER;
-        panel.add(readButton, gbc);
+        JPanel readButtons = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 0));
+        readButtons.add(readButton);
+        readButtons.add(writeBackButton);
+        panel.add(readButtons, gbc);
 
         return panel;
     }
 
-    private void updateDropdown(List<String> filteredScuole) {
-        dropdownModel.removeAllElements();
-        for (String scuola : filteredScuole) {
-            dropdownModel.addElement(scuola);
+    /**
+     * Legge i segnalibri dai moduli di una cartella e aggiorna i record di gst_clienti, associati ai documenti
+     * tramite il nome del file. L'aggiornamento usa una connessione del pool, così da non interferire con gli altri
+     * lavori che usano la connessione principale.
+     */
+    private String updateFromFolder(GenerationJob job, Path folder) throws Exception {
+        BookmarkExtractor extractor = new BookmarkExtractor(WordReplacer.DEFAULT_BOOKMARKS);
+        try (Connection connection = database.getPool().borrow(WRITE_BACK_BORROW_MILLIS)) {
+            BookmarkWriteBack writeBack = new BookmarkWriteBack(
+                    connection, BookmarkWriteBack.DEFAULT_MAPPING, "denominazione");
+            BatchResult extracted = extractor.extractAll(folder,
+                    (document, values) -> writeBack.add(BookmarkWriteBack.documentKey(document), values));
+            job.checkCancelled();
+            BookmarkWriteBack.Result result = writeBack.apply(WRITE_BACK_CHUNK);
+            String message = result.toString();
+            if (!extracted.getFailures().isEmpty()) {
+                message += "\nDocumenti non letti: " + extracted.getFailures().size();
+            }
+            return message;
         }
     }
 
+    /**
+     * Accoda un lavoro; l'esito viene mostrato al termine. Se la coda è piena l'utente viene avvisato subito.
+     * @param name Il nome del lavoro, mostrato nell'elenco dei lavori.
+     * @param task L'attività da eseguire in background.
+     */
+    private void submit(String name, GenerationJob.Task task) {
+        try {
+            scheduler.submit(name, task);
+        } catch (RejectedExecutionException ex) {
+            JOptionPane.showMessageDialog(null, ex.getMessage());
+        }
+    }
+
+    /**
+     * Mostra l'esito di un lavoro completato o fallito; i lavori annullati non mostrano alcun messaggio.
+     */
+    private void showOutcome(GenerationJob job) {
+        if (job.getState() == GenerationJob.State.COMPLETED) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, job.getMessage()));
+        } else if (job.getState() == GenerationJob.State.FAILED) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Errore: " + job.getMessage()));
+        }
+    }
+
+    private void updateDropdown(List<String> filteredScuole) {
+        dropdownModel.setResults(filteredScuole);
+    }
+
     private void filterScuole() {
-        String searchTerm = searchField.getText().toLowerCase();
-        List<String> filteredScuole = scuole.stream()
-                .filter(s -> s.toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
-        updateDropdown(filteredScuole);
+        search.request(searchField.getText());
+    }
+
+    private List<String> filterScuole(String text) {
+        return schoolIndex.search(text, Integer.MAX_VALUE);
     }
 
     private void filterScuoleRead() {
-        String searchTerm = searchFieldRead.getText().toLowerCase();
-        List<String> filteredScuole = scuole.stream()
-                .filter(s -> s.toLowerCase().contains(searchTerm))
-                .collect(Collectors.toList());
-        updateDropdownRead(filteredScuole);
+        searchRead.request(searchFieldRead.getText());
     }
 
     private void updateDropdownRead(List<String> filteredScuole) {
-        DefaultComboBoxModel<String> model = (DefaultComboBoxModel<String>) scuolaDropdownRead.getModel();
-        model.removeAllElements();
-        for (String scuola : filteredScuole) {
-            model.addElement(scuola);
-        }
+        dropdownModelRead.setResults(filteredScuole);
     }
 }
@@ -0,0 +1,133 @@
+package org.example.gui;
+
+import org.example.engine.GenerationJob;
+import org.example.engine.GenerationScheduler;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pannello con l'elenco dei lavori di generazione: nome, stato, avanzamento e messaggio di ogni lavoro,
+ * con un pulsante per annullare il lavoro selezionato.
+ * Gli aggiornamenti arrivano dai thread dello scheduler e vengono riportati sull'EDT.
+ */
+public class JobsPanel extends JPanel {
+
+    private static final String[] COLUMNS = {"Lavoro", "Stato", "Avanzamento", "Dettagli"};
+
+    private final JobTableModel model = new JobTableModel();
+    private final JTable table = new JTable(model);
+
+    /**
+     * Costruttore della classe JobsPanel.
+     * @param scheduler Lo scheduler di cui mostrare i lavori.
+     */
+    public JobsPanel(GenerationScheduler scheduler) {
+        super(new BorderLayout(5, 5));
+        setBorder(new EmptyBorder(5, 10, 5, 10));
+
+        table.setRowHeight(22);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(2).setCellRenderer(new ProgressRenderer());
+        JScrollPane scroller = new JScrollPane(table);
+        scroller.setPreferredSize(new Dimension(0, 120));
+
+        JButton cancelButton = new JButton("Annulla");
+        cancelButton.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row >= 0) {
+                model.getJob(table.convertRowIndexToModel(row)).cancel();
+            }
+        });
+        JButton clearButton = new JButton("Rimuovi terminati");
+        clearButton.addActionListener(e -> model.removeDone());
+
+        JPanel buttons = new JPanel(new GridLayout(2, 1, 0, 5));
+        buttons.add(cancelButton);
+        buttons.add(clearButton);
+        JPanel east = new JPanel(new BorderLayout());
+        east.add(buttons, BorderLayout.NORTH);
+
+        add(scroller, BorderLayout.CENTER);
+        add(east, BorderLayout.EAST);
+
+        scheduler.addListener(job -> SwingUtilities.invokeLater(() -> model.update(job)));
+    }
+
+    /**
+     * Modello della tabella dei lavori, aggiornato solo sull'EDT.
+     */
+    private static class JobTableModel extends AbstractTableModel {
+
+        private final List<GenerationJob> jobs = new ArrayList<>();
+
+        GenerationJob getJob(int row) {
+            return jobs.get(row);
+        }
+
+        void update(GenerationJob job) {
+            int row = jobs.indexOf(job);
+            if (row < 0) {
+                jobs.add(job);
+                fireTableRowsInserted(jobs.size() - 1, jobs.size() - 1);
+            } else {
+                fireTableRowsUpdated(row, row);
+            }
+        }
+
+        void removeDone() {
+            if (jobs.removeIf(GenerationJob::isDone)) {
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return jobs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            GenerationJob job = jobs.get(row);
+            return switch (column) {
+                case 0 -> job.getName();
+                case 1 -> job.getState();
+                case 2 -> job.getProgress();
+                default -> job.getMessage();
+            };
+        }
+    }
+
+    /**
+     * Mostra l'avanzamento di un lavoro come barra di progresso.
+     */
+    private static class ProgressRenderer extends JProgressBar implements TableCellRenderer {
+
+        ProgressRenderer() {
+            super(0, 100);
+            setStringPainted(true);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            setValue(value instanceof Integer ? (Integer) value : 0);
+            return this;
+        }
+    }
+}
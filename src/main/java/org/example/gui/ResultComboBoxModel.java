@@ -0,0 +1,107 @@
+package org.example.gui;
+
+import javax.swing.*;
+import javax.swing.plaf.basic.ComboPopup;
+import java.util.List;
+
+/**
+ * Modello per i dropdown delle scuole basato su una lista di risultati immutabile.
+ * Un nuovo risultato sostituisce il precedente con un unico evento di modifica, invece di un evento per ogni
+ * elemento rimosso o aggiunto. Il dropdown espone i risultati una pagina alla volta: le pagine successive vengono
+ * aggiunte con {@link #loadMore()} quando l'utente scorre fino in fondo all'elenco.
+ */
+public class ResultComboBoxModel extends AbstractListModel<String> implements ComboBoxModel<String> {
+
+    private final int pageSize;
+    private List<String> results = List.of();
+    private int visible;
+    private Object selectedItem;
+
+    /**
+     * Costruttore della classe ResultComboBoxModel.
+     * @param pageSize Il numero di risultati aggiunti al dropdown per ogni pagina.
+     */
+    public ResultComboBoxModel(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Sostituisce i risultati mostrati e seleziona il primo.
+     * @param results I nuovi risultati (la lista non deve essere modificata in seguito).
+     */
+    public void setResults(List<String> results) {
+        this.results = results;
+        this.visible = Math.min(pageSize, results.size());
+        this.selectedItem = results.isEmpty() ? null : results.get(0);
+        fireContentsChanged(this, -1, -1);
+    }
+
+    /**
+     * Indica se ci sono risultati non ancora mostrati nel dropdown.
+     * @return true se è possibile caricare un'altra pagina.
+     */
+    public boolean hasMore() {
+        return visible < results.size();
+    }
+
+    /**
+     * Aggiunge al dropdown la pagina successiva di risultati.
+     */
+    public void loadMore() {
+        if (!hasMore()) {
+            return;
+        }
+        int from = visible;
+        visible = Math.min(results.size(), visible + pageSize);
+        fireIntervalAdded(this, from, visible - 1);
+    }
+
+    @Override
+    public int getSize() {
+        return visible;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return results.get(index);
+    }
+
+    @Override
+    public void setSelectedItem(Object item) {
+        if ((selectedItem != null && !selectedItem.equals(item)) || (selectedItem == null && item != null)) {
+            selectedItem = item;
+            fireContentsChanged(this, -1, -1);
+        }
+    }
+
+    @Override
+    public Object getSelectedItem() {
+        return selectedItem;
+    }
+
+    /**
+     * Collega il modello a un dropdown: la pagina successiva viene caricata quando la lista del popup
+     * arriva in fondo. Viene impostato anche un valore prototipo, così che il dropdown non debba misurare
+     * tutti gli elementi per calcolare la propria larghezza.
+     * @param comboBox Il dropdown che usa questo modello.
+     */
+    public void installPaging(JComboBox<String> comboBox) {
+        comboBox.setPrototypeDisplayValue("Istituto Comprensivo Statale");
+        Object popup = comboBox.getUI().getAccessibleChild(comboBox, 0);
+        if (!(popup instanceof ComboPopup)) {
+            return;
+        }
+        JList<?> list = ((ComboPopup) popup).getList();
+        JScrollPane scroller = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, list);
+        if (scroller == null) {
+            return;
+        }
+        scroller.getVerticalScrollBar().addAdjustmentListener(e -> {
+            BoundedRangeModel range = scroller.getVerticalScrollBar().getModel();
+            if (!e.getValueIsAdjusting() && hasMore()
+                    && range.getValue() + range.getExtent() >= range.getMaximum() - Math.max(0, list.getFixedCellHeight())) {
+                loadMore();
+            }
+        });
+    }
+}
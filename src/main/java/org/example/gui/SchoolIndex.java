@@ -0,0 +1,145 @@
+package org.example.gui;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Indice di ricerca sui nomi delle scuole.
+ * I nomi vengono normalizzati una sola volta (minuscole e senza accenti) e indicizzati per trigrammi:
+ * una ricerca verifica solo i nomi che contengono il trigramma più raro della query invece di scorrere
+ * l'intero elenco. I risultati sono ordinati mettendo prima i nomi che iniziano con la query, poi quelli in cui
+ * la query è l'inizio di una parola, infine le altre corrispondenze.
+ */
+public class SchoolIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final List<String> names;
+    private final String[] normalized;
+    private final Map<Long, int[]> trigrams;
+
+    /**
+     * Costruisce l'indice sui nomi indicati.
+     * @param names I nomi delle scuole, nell'ordine in cui vanno mostrati a parità di rilevanza.
+     */
+    public SchoolIndex(List<String> names) {
+        this.names = List.copyOf(names);
+        this.normalized = new String[this.names.size()];
+
+        Map<Long, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = normalize(this.names.get(i));
+            String name = normalized[i];
+            Set<Long> seen = new HashSet<>();
+            for (int j = 0; j + 3 <= name.length(); j++) {
+                long trigram = trigram(name, j);
+                if (seen.add(trigram)) {
+                    postings.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+
+        this.trigrams = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<Long, List<Integer>> entry : postings.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            trigrams.put(entry.getKey(), array);
+        }
+    }
+
+    /**
+     * Restituisce il numero di nomi indicizzati.
+     * @return La dimensione dell'indice.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Converte un testo in minuscolo e senza accenti, come i nomi indicizzati.
+     * @param text Il testo da normalizzare.
+     * @return Il testo normalizzato.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Cerca i nomi che contengono il testo indicato.
+     * Se il thread viene interrotto la ricerca termina subito restituendo una lista vuota.
+     * @param query Il testo da cercare.
+     * @param limit Il numero massimo di risultati.
+     * @return I nomi trovati, ordinati per rilevanza.
+     */
+    public List<String> search(String query, int limit) {
+        String q = normalize(query).trim();
+        if (q.isEmpty()) {
+            return names.subList(0, Math.min(limit, names.size()));
+        }
+
+        // Classifica limitata ai migliori risultati: in testa il peggiore, da scartare per primo
+        PriorityQueue<int[]> best = new PriorityQueue<>(
+                Comparator.<int[]>comparingInt(r -> -r[0]).thenComparingInt(r -> -r[1]));
+
+        int checked = 0;
+        for (int id : candidates(q)) {
+            if ((++checked & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+                return List.of();
+            }
+            int pos = normalized[id].indexOf(q);
+            if (pos < 0) {
+                continue;
+            }
+            int rank = pos == 0 ? 0 : (Character.isLetterOrDigit(normalized[id].charAt(pos - 1)) ? 2 : 1);
+            best.add(new int[]{rank, id});
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<int[]> ranked = new ArrayList<>(best);
+        ranked.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> r[1]));
+        List<String> result = new ArrayList<>(ranked.size());
+        for (int[] r : ranked) {
+            result.add(names.get(r[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Restituisce i nomi da verificare per la query: quelli del trigramma più raro,
+     * oppure tutti i nomi se la query è più corta di tre caratteri.
+     */
+    private int[] candidates(String q) {
+        if (q.length() < 3) {
+            int[] all = new int[normalized.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] rarest = null;
+        for (int j = 0; j + 3 <= q.length(); j++) {
+            int[] ids = trigrams.get(trigram(q, j));
+            if (ids == null) {
+                return new int[0];
+            }
+            if (rarest == null || ids.length < rarest.length) {
+                rarest = ids;
+            }
+        }
+        return rarest;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
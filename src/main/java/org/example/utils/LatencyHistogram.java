@@ -0,0 +1,144 @@
+package org.example.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma delle latenze con intervalli logaritmici: ogni potenza di due di nanosecondi è divisa in quattro
+ * intervalli, per cui i percentili hanno un errore massimo del 25% con una memoria fissa e senza lock.
+ * La durata massima viene registrata a parte, senza approssimazione.
+ * I valori vengono registrati da più thread; {@link #snapshot()} restituisce una copia su cui calcolare le statistiche.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Registra una durata.
+     * @param nanos La durata in nanosecondi.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(1, nanos)));
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Restituisce una copia dei valori registrati finora.
+     * @return Le statistiche dell'istogramma.
+     */
+    public Stats snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Stats(copy, count, total.sum(), max.get());
+    }
+
+    private static int bucket(long nanos) {
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = exponent < 2 ? 0 : (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        int exponent = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        if (exponent < 2) {
+            return 1L << (exponent + 1);
+        }
+        return (1L << exponent) + ((long) (sub + 1) << (exponent - 2));
+    }
+
+    /**
+     * Statistiche di un istogramma in un certo istante.
+     */
+    public static final class Stats {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Stats(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Restituisce la durata media.
+         * @return La media in nanosecondi, 0 se non ci sono valori.
+         */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Stima un percentile.
+         * @param percentile Il percentile, da 0 a 100.
+         * @return Il limite superiore dell'intervallo che contiene il percentile, in nanosecondi.
+         */
+        public long percentileNanos(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        /**
+         * Restituisce la durata massima.
+         * Per le statistiche di un intervallo ({@link #since(Stats)}) il valore è esatto se il massimo è stato
+         * registrato nell'intervallo; altrimenti è la stima dell'istogramma, senza superare il
+         * massimo registrato prima.
+         * @return Il massimo in nanosecondi, 0 se non ci sono valori.
+         */
+        public long getMaxNanos() {
+            return count == 0 ? 0 : maxNanos;
+        }
+
+        /**
+         * Restituisce le statistiche dei valori registrati dopo quelle indicate.
+         * @param earlier Le statistiche dello stesso istogramma in un istante precedente.
+         * @return La differenza tra le due statistiche.
+         */
+        public Stats since(Stats earlier) {
+            long[] delta = new long[counts.length];
+            int highest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+                if (delta[i] > 0) {
+                    highest = i;
+                }
+            }
+            // Un massimo più alto di quello precedente è stato registrato nell'intervallo, quindi è il suo massimo
+            long deltaMax = maxNanos > earlier.maxNanos || highest < 0
+                    ? maxNanos : Math.min(upperBound(highest), maxNanos);
+            return new Stats(delta, count - earlier.count, totalNanos - earlier.totalNanos, deltaMax);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package org.example.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche della generazione dei documenti, raccolte per tutta l'applicazione: un istogramma delle latenze per ogni
+ * fase ({@link Phase}), il numero di query al database e i byte letti e scritti.
+ * Ogni fase misurata viene anche emessa come evento JFR ({@code org.example.Phase}), così che una registrazione
+ * ({@code -XX:StartFlightRecording}) mostri dove va il tempo documento per documento; al termine di ogni esecuzione
+ * in blocco viene emesso un evento {@code org.example.Batch} con i totali.
+ * <p>
+ * Per il riepilogo di una singola esecuzione si prende un {@link #snapshot()} all'inizio e si calcola la differenza
+ * alla fine con {@link Snapshot#since(Snapshot)}, come fa {@link #run(String)}; i lavori eseguiti contemporaneamente
+ * compaiono in entrambi i riepiloghi.
+ */
+public final class Metrics {
+
+    /**
+     * Fasi della generazione di un documento.
+     */
+    public enum Phase {
+        /** Query al database, compreso il tunnel SSH. */
+        QUERY("query"),
+        /** Lettura e parsing del template ({@code XWPFDocument}). */
+        PARSE("parse"),
+        /** Sostituzione dei segnaposto. */
+        REPLACE("replace"),
+        /** Scrittura del documento generato. */
+        WRITE("write"),
+        /** Compressione del documento in un archivio ZIP. */
+        COMPRESS("compress");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Map<Phase, LatencyHistogram> HISTOGRAMS = new EnumMap<>(Phase.class);
+    private static final LongAdder ROUND_TRIPS = new LongAdder();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    static {
+        for (Phase phase : Phase.values()) {
+            HISTOGRAMS.put(phase, new LatencyHistogram());
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Evento JFR di una fase.
+     */
+    @Name("org.example.Phase")
+    @Label("Fase di generazione")
+    @Category({"WordManipulating", "Generazione"})
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Fase")
+        String phase;
+
+        @Label("Dettaglio")
+        @Description("Documento generato o query eseguita")
+        String detail;
+
+        @Label("Byte")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * Evento JFR di un'esecuzione in blocco.
+     */
+    @Name("org.example.Batch")
+    @Label("Generazione in blocco")
+    @Category({"WordManipulating", "Generazione"})
+    @StackTrace(false)
+    static final class BatchEvent extends Event {
+        @Label("Template")
+        String template;
+
+        @Label("Documenti")
+        int documents;
+
+        @Label("Errori")
+        int failures;
+
+        @Label("Query al database")
+        long roundTrips;
+
+        @Label("Byte letti")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Byte scritti")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    /**
+     * Misura di una fase in corso, da chiudere al termine della fase (tipicamente con try-with-resources).
+     */
+    public static final class Sample implements AutoCloseable {
+        private final Phase phase;
+        private final long start = System.nanoTime();
+        private final PhaseEvent event = new PhaseEvent();
+        private String detail;
+        private long bytes;
+
+        private Sample(Phase phase, String detail) {
+            this.phase = phase;
+            this.detail = detail;
+            event.begin();
+        }
+
+        /**
+         * Registra dei byte letti durante la fase.
+         * @param count Il numero di byte.
+         * @return Questa misura.
+         */
+        public Sample read(long count) {
+            BYTES_READ.add(count);
+            bytes += count;
+            return this;
+        }
+
+        /**
+         * Registra dei byte scritti durante la fase.
+         * @param count Il numero di byte.
+         * @return Questa misura.
+         */
+        public Sample written(long count) {
+            BYTES_WRITTEN.add(count);
+            bytes += count;
+            return this;
+        }
+
+        public Sample detail(String detail) {
+            this.detail = detail;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            HISTOGRAMS.get(phase).record(System.nanoTime() - start);
+            if (phase == Phase.QUERY) {
+                ROUND_TRIPS.increment();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.getLabel();
+                event.detail = detail;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Inizia la misura di una fase.
+     * @param phase La fase.
+     * @return La misura, da chiudere al termine della fase.
+     */
+    public static Sample start(Phase phase) {
+        return new Sample(phase, null);
+    }
+
+    /**
+     * Inizia la misura di una query al database, che conta come una query eseguita.
+     * @param sql Il testo della query, riportato nell'evento JFR.
+     * @return La misura, da chiudere al termine della query.
+     */
+    public static Sample query(String sql) {
+        return new Sample(Phase.QUERY, sql);
+    }
+
+    /**
+     * Esecuzione in blocco in corso: raccoglie le metriche dall'inizio dell'esecuzione ed emette l'evento JFR
+     * {@code org.example.Batch} quando termina.
+     */
+    public static final class Run {
+        private final String template;
+        private final Snapshot start = snapshot();
+        private final BatchEvent event = new BatchEvent();
+
+        private Run(String template) {
+            this.template = template;
+            event.begin();
+        }
+
+        /**
+         * Termina l'esecuzione.
+         * @param documents Il numero di documenti richiesti.
+         * @param failures Il numero di documenti non generati.
+         * @return Le metriche dell'esecuzione.
+         */
+        public Snapshot finish(int documents, int failures) {
+            Snapshot run = snapshot().since(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.template = template;
+                event.documents = documents;
+                event.failures = failures;
+                event.roundTrips = run.getRoundTrips();
+                event.bytesRead = run.getBytesRead();
+                event.bytesWritten = run.getBytesWritten();
+                event.commit();
+            }
+            return run;
+        }
+    }
+
+    /**
+     * Inizia un'esecuzione in blocco.
+     * @param template Il percorso del template, riportato nell'evento JFR.
+     * @return L'esecuzione, da terminare con {@link Run#finish(int, int)}.
+     */
+    public static Run run(String template) {
+        return new Run(template);
+    }
+
+    /**
+     * Restituisce lo stato attuale delle metriche.
+     * @return Una copia delle metriche raccolte dall'avvio.
+     */
+    public static Snapshot snapshot() {
+        Map<Phase, LatencyHistogram.Stats> phases = new EnumMap<>(Phase.class);
+        for (Map.Entry<Phase, LatencyHistogram> entry : HISTOGRAMS.entrySet()) {
+            phases.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new Snapshot(phases, ROUND_TRIPS.sum(), BYTES_READ.sum(), BYTES_WRITTEN.sum());
+    }
+
+    /**
+     * Metriche in un certo istante, oppure di un intervallo se ottenute con {@link #since(Snapshot)}.
+     */
+    public static final class Snapshot {
+        private final Map<Phase, LatencyHistogram.Stats> phases;
+        private final long roundTrips;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        private Snapshot(Map<Phase, LatencyHistogram.Stats> phases, long roundTrips, long bytesRead, long bytesWritten) {
+            this.phases = phases;
+            this.roundTrips = roundTrips;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public LatencyHistogram.Stats getPhase(Phase phase) {
+            return phases.get(phase);
+        }
+
+        public long getRoundTrips() {
+            return roundTrips;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Restituisce le metriche registrate dopo quelle indicate.
+         * @param earlier Le metriche in un istante precedente.
+         * @return Le metriche dell'intervallo.
+         */
+        public Snapshot since(Snapshot earlier) {
+            Map<Phase, LatencyHistogram.Stats> delta = new EnumMap<>(Phase.class);
+            for (Map.Entry<Phase, LatencyHistogram.Stats> entry : phases.entrySet()) {
+                delta.put(entry.getKey(), entry.getValue().since(earlier.phases.get(entry.getKey())));
+            }
+            return new Snapshot(delta, roundTrips - earlier.roundTrips, bytesRead - earlier.bytesRead,
+                    bytesWritten - earlier.bytesWritten);
+        }
+
+        /**
+         * Restituisce il riepilogo leggibile delle metriche, una riga per ogni fase misurata.
+         * @return Il riepilogo.
+         */
+        public String summary() {
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "Query al database: %d, letti %s, scritti %s", roundTrips, bytes(bytesRead), bytes(bytesWritten)));
+            for (Map.Entry<Phase, LatencyHistogram.Stats> entry : phases.entrySet()) {
+                LatencyHistogram.Stats stats = entry.getValue();
+                if (stats.getCount() == 0) {
+                    continue;
+                }
+                sb.append(String.format(Locale.ROOT,
+                        "%n%-9s n=%-7d totale=%8.1f ms  media=%7.3f ms  p50=%7.3f  p95=%7.3f  p99=%7.3f  max=%7.3f ms",
+                        entry.getKey().getLabel(), stats.getCount(), millis(stats.getTotalNanos()),
+                        millis(stats.getMeanNanos()), millis(stats.percentileNanos(50)),
+                        millis(stats.percentileNanos(95)), millis(stats.percentileNanos(99)),
+                        millis(stats.getMaxNanos())));
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Restituisce le metriche in formato JSON, su una sola riga.
+         * @return L'oggetto JSON.
+         */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{");
+            sb.append("\"roundTrips\":").append(roundTrips);
+            sb.append(",\"bytesRead\":").append(bytesRead);
+            sb.append(",\"bytesWritten\":").append(bytesWritten);
+            sb.append(",\"phases\":{");
+            boolean first = true;
+            for (Map.Entry<Phase, LatencyHistogram.Stats> entry : phases.entrySet()) {
+                LatencyHistogram.Stats stats = entry.getValue();
+                if (stats.getCount() == 0) {
+                    continue;
+                }
+                sb.append(first ? "" : ",").append(StringUtils.jsonQuote(entry.getKey().getLabel()));
+                sb.append(String.format(Locale.ROOT,
+                        ":{\"count\":%d,\"totalMillis\":%.3f,\"meanMillis\":%.3f,\"p50Millis\":%.3f,"
+                                + "\"p95Millis\":%.3f,\"p99Millis\":%.3f,\"maxMillis\":%.3f}",
+                        stats.getCount(), millis(stats.getTotalNanos()), millis(stats.getMeanNanos()),
+                        millis(stats.percentileNanos(50)), millis(stats.percentileNanos(95)),
+                        millis(stats.percentileNanos(99)), millis(stats.getMaxNanos())));
+                first = false;
+            }
+            sb.append("}}");
+            return sb.toString();
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+
+        private static String bytes(long bytes) {
+            if (bytes < 1024 * 1024) {
+                return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+            }
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+}
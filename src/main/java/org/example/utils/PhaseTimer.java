@@ -0,0 +1,58 @@
+package org.example.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cronometro a fasi: registra la durata di ogni fase rispetto alla fase precedente
+ * e produce un riepilogo leggibile, ad esempio per i tempi di avvio dell'applicazione.
+ */
+public class PhaseTimer {
+
+    private final long start = System.nanoTime();
+    private long last = start;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Registra la fine di una fase.
+     * @param phase Il nome della fase appena conclusa.
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.merge(phase, now - last, Long::sum);
+        last = now;
+    }
+
+    /**
+     * Restituisce il tempo trascorso dalla creazione del cronometro.
+     * @return Il tempo totale in millisecondi.
+     */
+    public synchronized long elapsedMillis() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Restituisce la durata delle fasi registrate, nell'ordine in cui sono state concluse.
+     * @return Una mappa che associa il nome di ogni fase alla sua durata in millisecondi.
+     */
+    public synchronized Map<String, Long> getPhasesMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            millis.put(entry.getKey(), entry.getValue() / 1_000_000);
+        }
+        return millis;
+    }
+
+    /**
+     * Restituisce il riepilogo delle fasi registrate.
+     * @return Una riga con la durata di ogni fase e il totale, in millisecondi.
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : phases.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue() / 1_000_000).append(" ms, ");
+        }
+        sb.append("totale: ").append(elapsedMillis()).append(" ms");
+        return sb.toString();
+    }
+}
@@ -9,5 +9,43 @@ public class StringUtils {
         }
         return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
     }
-}
 
+    // Metodo per usare una stringa come nome di file, sostituendo con '_' i caratteri non ammessi da Windows
+    public static String safeFileName(String str) {
+        return str.replaceAll("[\\\\/:*?\"<>|]", "_");
+    }
+
+    // Metodo per scrivere una stringa come valore JSON, tra virgolette e con i caratteri speciali protetti
+    public static String jsonQuote(String str) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // Metodo per scrivere un valore CSV, tra virgolette solo se contiene separatori, virgolette o ritorni a capo
+    public static String csvQuote(String str) {
+        if (str == null) {
+            return "";
+        }
+        if (str.indexOf(',') < 0 && str.indexOf(';') < 0 && str.indexOf('"') < 0
+                && str.indexOf('\n') < 0 && str.indexOf('\r') < 0) {
+            return str;
+        }
+        return "\"" + str.replace("\"", "\"\"") + "\"";
+    }
+}